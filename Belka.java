@@ -25,6 +25,8 @@ public class Belka
      * <li> Create menus
      * <li> Create main frame
      * <li> Create {@link BelkaManager} object
+     * <li> Run script file given by option -script
+     * <li> Or start {@link BelkaServer} if option -daemon is given
      * <li> Pass program control to {@link BelkaManager}
      * </ul>
      */
@@ -35,16 +37,46 @@ public class Belka
 
 	// Processing input
 	boolean useGraphics = true;
+	String scriptFileName = null;
+	int daemonPort = -1;
+	int n_threads  = Runtime.getRuntime().availableProcessors();
 	ArrayList<String> arrListFileNames = new ArrayList<String>(4);
 	for (int i = 0;i < args.length;i++) {
 	    String word = args[i];
 	    if (word.startsWith("-")) {
 		if (word.equalsIgnoreCase("-nodisplay")) useGraphics = false;
+		if (word.equalsIgnoreCase("-script")) {
+		    if (i + 1 < args.length) scriptFileName = args[++i];
+		    else System.err.println("No file for option -script!");
+		}
+		if (word.equalsIgnoreCase("-daemon")) {
+		    daemonPort = 0;
+		    if (i + 1 < args.length && !args[i + 1].startsWith("-"))
+			try { daemonPort = Integer.parseInt(args[++i]); }
+			catch (Exception e) {
+			    System.err.println("Wrong port '" + args[i] + "'!");
+			    return;
+			}
+		}
+		if (word.equalsIgnoreCase("-threads") && i + 1 < args.length)
+		    try { n_threads = Integer.parseInt(args[++i]); }
+		    catch (Exception e) {
+			System.err.println("Wrong number of threads '" +
+					   args[i] + "'!");
+			return;
+		    }
 	    } else {
 		arrListFileNames.add(word);
 	    }
 	}
 
+	// Serving scripts of clients, no graphics is needed
+	if (daemonPort >= 0) {
+	    System.setProperty("java.awt.headless","true");
+	    new BelkaServer(daemonPort,n_threads).run();
+	    return;
+	}
+
 	// Saving filenames in an array
 	int nFileNames = arrListFileNames.size();
 	String[] fileNames = new String[nFileNames];
@@ -98,6 +130,12 @@ public class Belka
 	    manager = new BelkaManager(null,fileNames);
 	}
 	
+	// Running script file. Without graphics it is a batch run, so exit
+	if (scriptFileName != null) {
+	    manager.runScriptFile(scriptFileName);
+	    if (!useGraphics) System.exit(0);
+	}
+
 	// Processing user input commands
 	manager.run();
     }
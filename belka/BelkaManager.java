@@ -162,11 +162,19 @@ public class BelkaManager implements ActionListener
 	for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
 	    mol.disassemble();
 	moleculeList_ = lastMolecule_ = null;
+	selectionCache_.clear();
     }
 
     // Flags
     private boolean connectFlag_ = true;
 
+    // Structures loaded from PDB database
+    private StructureCache pdbCache_ = new StructureCache(PDB_URL);
+
+    // Sets of atoms of recently used selections and defined selections
+    private SelectionCache selectionCache_ =
+	new SelectionCache(SelectionCache.DEFAULT_SIZE);
+
 
     // User input
     private String userInput_ = null;
@@ -214,6 +222,13 @@ public class BelkaManager implements ActionListener
     // Flag to indicate whether program is allowed to exit java VM
     private boolean allowExit_ = true;
 
+    /**
+     * Sets whether exit command can stop java VM.
+     *
+     * @param allow flag allowing exit.
+     */
+    void setAllowExit(boolean allow) { allowExit_ = allow; }
+
     // Main componenet to draw on
     private Container mainComponent_ = null;
     /**
@@ -317,32 +332,13 @@ public class BelkaManager implements ActionListener
 
 	StringBuffer mess = new StringBuffer();
 
-	if (script.startsWith("[")) {
-	    int begin = 0;
-	    int count = 0;
-	    int len = script.length();
-	    for (int i = 0;i < len;i++) {
-		char c = script.charAt(i);
-		if (c == '[') {
-		    if (count == 0) begin = i;
-		    count++;
-		} else if (c == ']') {
-		    count--;
-		    if (count == 0)
-			try {
-			    mess.append(runCommand(script.substring(begin + 1,
-								    i),
-						   false));
-			} catch (Exception e) {
-			    System.err.println(e.toString());
-			}
-		} else {
-		    if (count == 0 && !Character.isWhitespace(c)) break;
-		}
-	    }
-	} else
+	// Several commands are run without updating the view
+	ArrayList<String> commands = new ArrayList<String>(4);
+	CommandScript.split(script,commands);
+	boolean update = !script.startsWith("[");
+	for (int i = 0;i < commands.size();i++)
 	    try {
-		mess.append(runCommand(script,true));
+		mess.append(runCommand(commands.get(i),update));
 	    } catch (Exception e) {
 		System.err.println(e.toString());
 	    }
@@ -384,7 +380,25 @@ public class BelkaManager implements ActionListener
 	StringWriter ret = new StringWriter();
 	PrintWriter  wr  = new PrintWriter(ret);
 
-	CommandParser commParser = new CommandParser(command.trim());
+	runCommand(new CommandParser(command.trim()),update,wr);
+	wr.flush();
+
+	return ret.toString();
+    }
+
+    /**
+     * Runs the command given by its parser and updates screen view
+     * depending on value of update. Messages are printed to the writer.
+     *
+     * @param commParser parser of the command.
+     * @param update flag specifying whether screen must be updated.
+     * @param wr writer to print messages to.
+     *
+     * @return value of the command or _ERROR_VAL if command failed.
+     */
+    private int runCommand(CommandParser commParser,boolean update,
+			   PrintWriter wr) throws Exception
+    {
 	int commandVal = commParser.parseCommand();
 
 	// Finding command to execute.
@@ -480,6 +494,12 @@ public class BelkaManager implements ActionListener
 		if (n_sel == 1) wr.println(n_sel + " atom selected.");
 		else            wr.println(n_sel + " atoms selected.");
 	    } else commandVal = CommandParser._ERROR_VAL;
+	} else if (commandVal == CommandParser.DEFINE_VAL) {
+	    int n_def = proceedToDefineCommand(commParser);
+	    if (n_def >= 0) {
+		if (n_def == 1) wr.println(n_def + " atom defined.");
+		else            wr.println(n_def + " atoms defined.");
+	    } else commandVal = CommandParser._ERROR_VAL;
 	} else if (commandVal == CommandParser.ASSIGN_VAL) {
 	    int n_assigned = proceedToAssignCommand(commParser);
 	    if (n_assigned >= 0) {
@@ -561,6 +581,13 @@ public class BelkaManager implements ActionListener
 	    String res = proceedToCompareCommand(commParser);
 	    if (res == null) commandVal = CommandParser._ERROR_VAL;
 	    else if (!res.equals("")) wr.print(res);
+	} else if (commandVal == CommandParser.RUN_VAL) {
+	    int n_run = proceedToRunCommand(commParser,wr);
+	    if (n_run >= 0) {
+		if (update)
+		    for (int m = 0;m < molPanels_.length;m++)
+			molPanels_[m].updateMoleculeView();
+	    } else commandVal = CommandParser._ERROR_VAL;
 	} else if (commandVal == CommandParser._NONE_VAL) {
 	    // Do nothing.
 	} else { // Unknown command
@@ -576,7 +603,145 @@ public class BelkaManager implements ActionListener
 	    wr.println("Too long line skiped: \"" + left + "\".");
 	}
 
-	return ret.toString();
+	return commandVal;
+    }
+
+    // Maximal depth of scripts running other scripts
+    static final int MAX_SCRIPT_DEPTH = 16;
+
+    // Current depth of running scripts
+    private int scriptDepth_ = 0;
+
+    /**
+     * Runs commands from the script file and updates screen view once
+     * after all commands are done. Each command is printed before its
+     * messages. Meant for batch mode.
+     *
+     * @param fileName name of the script file.
+     *
+     * @return number of run commands, negative if script can't be read.
+     */
+    public int runScriptFile(String fileName)
+    {
+	PrintWriter wr = new PrintWriter(System.out);
+	int ret = runScriptFile(fileName,wr,null);
+	wr.flush();
+	for (int m = 0;m < molPanels_.length;m++)
+	    molPanels_[m].updateMoleculeView();
+	return ret;
+    }
+
+    /**
+     * Reads the script file and runs its commands without updating screen
+     * view. See {@link #runScript(CommandScript,PrintWriter,PrintWriter)}.
+     *
+     * @return number of run commands, negative if script can't be read.
+     */
+    int runScriptFile(String fileName,PrintWriter wr,PrintWriter timesWr)
+    {
+	CommandScript script = readScript(fileName);
+	if (script == null) return -1;
+	return runScript(script,wr,timesWr);
+    }
+
+    /**
+     * Runs commands of the script without updating screen view. Messages
+     * are printed to the writer. If writer for times is given, line,
+     * execution time in seconds and text of each command are printed to
+     * it.
+     *
+     * @return number of run commands, negative if script can't be run.
+     */
+    int runScript(CommandScript script,PrintWriter wr,PrintWriter timesWr)
+    {
+	if (scriptDepth_ >= MAX_SCRIPT_DEPTH) {
+	    System.err.println("Too many nested scripts.");
+	    return -1;
+	}
+
+	long start = System.nanoTime();
+	int n_commands = script.getNCommands();
+	scriptDepth_++;
+	try {
+	    for (int i = 0;i < n_commands;i++) {
+		wr.println(INVITATION_LINE + script.getCommand(i));
+		wr.flush(); // Command goes before its diagnostics
+		long t = System.nanoTime();
+		try {
+		    runCommand(script.getParser(i),false,wr);
+		} catch (Exception e) {
+		    System.err.println(e.toString());
+		}
+		script.setTime(i,System.nanoTime() - t);
+		wr.flush();
+	    }
+	} finally {
+	    scriptDepth_--;
+	}
+	double time = (System.nanoTime() - start)*1e-9;
+
+	if (timesWr != null)
+	    for (int i = 0;i < n_commands;i++)
+		timesWr.printf(Locale.US,"%d\t%.6f\t%s\n",script.getLine(i),
+			       script.getTime(i)*1e-9,script.getCommand(i));
+	if (n_commands == 1) wr.print(n_commands + " command run");
+	else                 wr.print(n_commands + " commands run");
+	wr.printf(" in %.3f s.\n",time);
+	return n_commands;
+    }
+
+    /**
+     * Returns script read from the file. Null if file can't be read.
+     */
+    CommandScript readScript(String fileName)
+    {
+	try {
+	    Reader reader = null;
+	    URL fileURL = tryReadURL(fileName);
+	    if (fileURL != null) {
+		reader = new InputStreamReader(fileURL.openStream());
+	    } else {
+		File file = tryReadFile(fileName);
+		if (file == null) return null;
+		reader = new FileReader(file);
+	    }
+	    BufferedReader in = new BufferedReader(reader);
+	    CommandScript ret = new CommandScript(in);
+	    in.close();
+	    return ret;
+	} catch (Exception e) {
+	    System.err.println("Can't read script from '" + fileName + "'.");
+	}
+	return null;
+    }
+
+    /**
+     * Runs script file given by the command. If output redirection is
+     * given, execution times of commands are printed to the file.
+     *
+     * @return number of run commands, negative if error happens.
+     */
+    int proceedToRunCommand(CommandParser commParser,PrintWriter wr)
+    {
+	commParser.parseCommand();
+	String fileName = commParser.getParsedWord();
+	if (fileName.length() == 0) {
+	    System.err.println("No script file given.");
+	    return -1;
+	}
+
+	String timesFile = commParser.getOutputFileName();
+	if (timesFile == null || timesFile.length() == 0)
+	    return runScriptFile(fileName,wr,null);
+
+	StringWriter times = new StringWriter();
+	PrintWriter timesWr = new PrintWriter(times);
+	int ret = runScriptFile(fileName,wr,timesWr);
+	timesWr.flush();
+	if (ret >= 0)
+	    printToFile(timesFile,times.toString(),
+			commParser.outputFileAppend());
+	return ret;
     }
 
     /**
@@ -585,30 +750,17 @@ public class BelkaManager implements ActionListener
     private double[] center_ = new double[3];
     private void centerMolecules()
     {
-	double x_center = 0, y_center = 0, z_center = 0;
+	double[] sum = {0,0,0};
 	int n_atoms = 0;
 	for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
-	    for (Chain c = mol.chainList();c != null;c = c.next())
-		for (Assembly s = c.assemblyList();s != null;s = s.next())
-		    for (Atom a = s.atomList();a != null;a = a.next()) {
-			x_center += a.getDerivedX();
-			y_center += a.getDerivedY();
-			z_center += a.getDerivedZ();
-			n_atoms++;
-		    }
+	    n_atoms += mol.sumDerivedCoordinates(sum);
 	if (n_atoms == 0) return;
 	double inv = 1./n_atoms;
-	x_center *= inv;
-	y_center *= inv;
-	z_center *= inv;
+	double x_center = sum[0]*inv;
+	double y_center = sum[1]*inv;
+	double z_center = sum[2]*inv;
 	for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
-	    for (Chain c = mol.chainList();c != null;c = c.next())
-		for (Assembly s = c.assemblyList();s != null;s = s.next())
-		    for (Atom a = s.atomList();a != null;a = a.next()) {
-			a.setDerivedX(a.getDerivedX() - x_center);
-			a.setDerivedY(a.getDerivedY() - y_center);
-			a.setDerivedZ(a.getDerivedZ() - z_center);
-		    }
+	    mol.shiftDerivedCoordinates(-x_center,-y_center,-z_center);
 	center_[0] += x_center;
 	center_[1] += y_center;
 	center_[2] += z_center;
@@ -633,16 +785,17 @@ public class BelkaManager implements ActionListener
 		   commandVal == CommandParser.TRUE_VAL ||
 		   commandVal == CommandParser.YES_VAL  ||
 		   commandVal == CommandParser.VDW_VAL) {
-	    for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
-		for (Chain c = mol.chainList();c != null;c = c.next())
-		    for (Assembly s = c.assemblyList();s != null;s = s.next())
-			for (Atom a = s.atomList();a != null;a = a.next()) {
-			    if (!a.isSelected()) continue;
-			    Element elem = a.getElement();
-			    if (elem == null) continue;
-			    a.setRadius(elem.getVDWRadius());
-			    n_set++;
-			}
+	    for (Molecule mol = moleculeList_;mol != null;mol = mol.next()) {
+		AtomIndex index = mol.atomIndex();
+		for (int i = mol.nextSelectedAtom(0);i >= 0;
+		     i = mol.nextSelectedAtom(i + 1)) {
+		    Atom a = index.getAtom(i);
+		    Element elem = a.getElement();
+		    if (elem == null) continue;
+		    a.setRadius(elem.getVDWRadius());
+		    n_set++;
+		}
+	    }
 	    return n_set;
 	} else if (commandVal == CommandParser._INTEGER_NUM_VAL) {
 	    rad = commParser.getParsedInt()*RASMOL_INT_TO_ANGSTROM;
@@ -653,14 +806,14 @@ public class BelkaManager implements ActionListener
 	} else return -1;
 
 	// Setting radius
-	for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
-	    for (Chain c = mol.chainList();c != null;c = c.next())
-		for (Assembly s = c.assemblyList();s != null;s = s.next())
-		    for (Atom a = s.atomList();a != null;a = a.next()) {
-			if (!a.isSelected()) continue;
-			a.setRadius(rad);
-			n_set++;
-		    }
+	for (Molecule mol = moleculeList_;mol != null;mol = mol.next()) {
+	    AtomIndex index = mol.atomIndex();
+	    for (int i = mol.nextSelectedAtom(0);i >= 0;
+		 i = mol.nextSelectedAtom(i + 1)) {
+		index.getAtom(i).setRadius(rad);
+		n_set++;
+	    }
+	}
 	return n_set;
     }
 
@@ -780,16 +933,17 @@ public class BelkaManager implements ActionListener
 	    }
 	// Parsing color for atoms
 	} else if (commandVal == CommandParser.CPK_VAL) {
-	    for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
-		for (Chain c = mol.chainList();c != null;c = c.next())
-		    for (Assembly s = c.assemblyList();s != null;s = s.next())
-			for (Atom a = s.atomList();a != null;a = a.next()) {
-			    if (!a.isSelected()) continue;
-			    Element elem = a.getElement();
-			    if (elem == null) continue;
-			    a.setColor(elem.getColor());
-			    n_set++;
-			}
+	    for (Molecule mol = moleculeList_;mol != null;mol = mol.next()) {
+		AtomIndex index = mol.atomIndex();
+		for (int i = mol.nextSelectedAtom(0);i >= 0;
+		     i = mol.nextSelectedAtom(i + 1)) {
+		    Atom a = index.getAtom(i);
+		    Element elem = a.getElement();
+		    if (elem == null) continue;
+		    a.setColor(elem.getColor());
+		    n_set++;
+		}
+	    }
 	} else if (commandVal == CommandParser.SHAPELY_VAL) {
 	    for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
 		for (Chain c = mol.chainList();c != null;c = c.next())
@@ -1023,36 +1177,45 @@ public class BelkaManager implements ActionListener
 
 	// Selecting atoms
 	int n_sel = 0;
-	for (Molecule mol = moleculeList_;mol != null;mol = mol.next()) {
-	    if (!selExpr.moleculeMaySatisfy(mol)) {
-		mol.selectAllAtoms(false);
-		continue;
-	    }
-	    for (Chain c = mol.chainList();c != null;c = c.next()) {
-		if (!selExpr.chainMaySatisfy(c)) {
-		    c.selectAllAtoms(false);
-		    continue;
-		}
-		for (Assembly s = c.assemblyList();s != null;s = s.next()) {
-		    if (!selExpr.assemblyMaySatisfy(s)) {
-			s.selectAllAtoms(false);
-			continue;
-		    }
-		    for (Atom a = s.atomList();a != null;a = a.next()) {
-			if (!selExpr.atomMaySatisfy(a) || 
-			    !selExpr.satisfy(mol,c,s,a)) {
-			    a.setSelected(false);
-			    continue;
-			}
-			a.setSelected(true);
-			n_sel++;
-		    }
-		}
-	    }
-	}
+	for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
+	    n_sel += selExpr.select(mol);
 	return n_sel;
     }
 
+    /**
+     * Defines selection by name, the name can be used in later selections.
+     * Returns number of atoms satisfying the selection. Negative if error
+     * happend.
+     */
+    int proceedToDefineCommand(CommandParser commParser)
+    {
+	if (commParser.parseCommand() != CommandParser._EXPRESSION_VAL) {
+	    System.err.println("Name of selection is expected.");
+	    return -1;
+	}
+	String name = commParser.getParsedWord();
+	boolean ok = Character.isLetter(name.charAt(0));
+	for (int i = 0;i < name.length();i++) {
+	    char c = name.charAt(i);
+	    if (!Character.isLetterOrDigit(c) && c != '_') ok = false;
+	}
+	if (!ok) {
+	    System.err.println("Bad name of selection '" + name + "'.");
+	    return -1;
+	}
+	if (!commParser.hasMoreInput()) return -1;
+
+	SelectExpression selExpr = parseSelection(commParser);
+	if (selExpr == null) return -1;
+	selectionCache_.define(name,selExpr);
+
+	// Counting atoms, sets are kept in the cache
+	int n_def = 0;
+	for (Molecule mol = moleculeList_;mol != null;mol = mol.next())
+	    n_def += selExpr.countSatisfying(mol);
+	return n_def;
+    }
+
     /**
      * Parse complex selection expressions. Returns null if error happends.
      *
@@ -1065,6 +1228,8 @@ public class BelkaManager implements ActionListener
 	// Parsing expressions
 	boolean isNot = false, andBool = false,orBool = false;
 	SelectExpression selExpr = null,newExpr = null;
+	double  radius = -1; // Radius of 'within' waiting for its expression
+	boolean withinNot = false;
 	int commandVal = commParser.parseCommand();
 	for (;commandVal != CommandParser._NONE_VAL;
 	     commandVal = commParser.parseCommand()) {
@@ -1075,16 +1240,33 @@ public class BelkaManager implements ActionListener
 		if (isNot) return null;
 		isNot = true;
 	    } else if (commandVal == CommandParser.AND_VAL) {
-		if (orBool || isNot) return null;
+		if (orBool || isNot || radius >= 0) return null;
 		andBool = true;
 	    } else if (commandVal == CommandParser.OR_VAL) {
-		if (andBool || isNot) return null;
+		if (andBool || isNot || radius >= 0) return null;
 		orBool = true;
+	    } else if (commandVal == CommandParser.WITHIN_VAL) {
+		if (radius >= 0) return null;
+		commandVal = commParser.parseCommand();
+		if (commandVal == CommandParser._INTEGER_NUM_VAL)
+		    radius = commParser.getParsedInt();
+		else if (commandVal == CommandParser._DOUBLE_NUM_VAL)
+		    radius = commParser.getParsedDouble();
+		else return null;
+		if (radius < 0) return null;
+		if (commParser.parseCommand() != CommandParser.OF_VAL)
+		    return null;
+		withinNot = isNot;
+		isNot     = false;
 	    } else if (commandVal == CommandParser.ALL_VAL) {
 		newExpr =
 		    new SelectExpression(null,null,null,null,null,isNot);
 	    } else if (commandVal == CommandParser._EXPRESSION_VAL) {
-		newExpr =
+		SelectExpression defined =
+		    selectionCache_.getDefined(commParser.getParsedWord());
+		if (defined != null)
+		    newExpr = new SelectExpression(defined,isNot);
+		else newExpr =
 		    new SelectExpression(commParser.getParsedMolName(),
 					 commParser.getParsedChainIds(),
 					 commParser.getParsedAssemblyName(),
@@ -1098,28 +1280,9 @@ public class BelkaManager implements ActionListener
 					 Integer.toString(assNum),
 					 null,isNot);
 	    } else if (commandVal == CommandParser._INTEGER_RANGE_VAL) {
-		int start = commParser.getParsedIntRangeStart();
-		int end   = commParser.getParsedIntRangeEnd();
-		if (end < start) { // Swap numbers if end < start
-		    int tmp = end;
-		    end = start;
-		    start = tmp;
-		}
-		// Creating all as sub-expression
-		SelectExpression subExpr = null;
-		for (int i = start;i <= end;i++) {
-		    newExpr = new SelectExpression(null,null,null,
-						   Integer.toString(i),
-						   null,false);
-		    if (subExpr == null) subExpr = newExpr;
-		    else {
-			newExpr.setNextOr(subExpr);
-			subExpr = newExpr;
-		    }
-		}
-
-		// Creating new expression with sub-expression
-		newExpr = new SelectExpression(subExpr,isNot);
+		newExpr = new SelectExpression(isNot);
+		newExpr.setAssemblyRange(commParser.getParsedIntRangeStart(),
+					 commParser.getParsedIntRangeEnd());
 	    } else if (commandVal == CommandParser.SELECTED_VAL) {
  		int att = Atom.getSelectedAttribute();
  		newExpr = new SelectExpression(isNot);
@@ -1135,9 +1298,13 @@ public class BelkaManager implements ActionListener
 		    Assembly.getGroupAttribute(commParser.getParsedInt());
 		newExpr = new SelectExpression(isNot);
 		newExpr.setAssemblyAttribute(att);
-	    } else return selExpr;
+	    } else break;
 
 	    if (newExpr != null) {
+		if (radius >= 0) {
+		    newExpr = new SelectExpression(radius,newExpr,withinNot);
+		    radius  = -1;
+		}
 		if (selExpr == null) selExpr = newExpr;
 		else {
 		    if (andBool)     newExpr.setNextAnd(selExpr);
@@ -1151,7 +1318,9 @@ public class BelkaManager implements ActionListener
 		orBool  = false;
 	    }
 	}
+	if (radius >= 0) return null; // 'within' without expression
 
+	if (selExpr != null) selExpr.setCache(selectionCache_);
 	return selExpr;
     }
 
@@ -1197,37 +1366,36 @@ public class BelkaManager implements ActionListener
     }
 
     /**
-     * The function reads provided pdb-codes and parses files from PDB
-     * database.
+     * The function reads provided pdb-codes and loads structures from PDB
+     * database or from local cache, if it is set.
      * Returns number of molecules loaded.
      */
     int proceedToPDBLoadCommand(MolPanel panel,CommandParser commParser)
     {
         ArrayList<String> codes = new ArrayList<String>(4);
 
-	commParser.parseCommand();
+	LoadFilter filter = parseLoadFilter(commParser,
+					    commParser.parseCommand());
+	if (filter == null) return -1;
 	String word = commParser.getParsedWord();
 	while (word.length() > 0) {
-	    codes.add(word);
+	    if (word.length() != 4)
+		System.err.println(word + " is not 4 characters long. " +
+				   "Skipping.");
+	    else codes.add(word);
 	    commParser.parseCommand();
 	    word = commParser.getParsedWord();
 	}
 	
-	// Parsing input files
+	// Loading structures, all missing in cache are fetched at once
 	int n_loaded = 0;
 	int n_codes = codes.size();
+	Molecule[][] loaded = pdbCache_.load(codes.toArray(new String[n_codes]),
+					     filter);
 	for (int c = 0;c < n_codes;c++) {
-	    String code = codes.get(c).toString();
-	    if (code.length() != 4) {
-		System.err.println(code + " is not 4 characters long. " +
-				   "Skipping.");
-		continue;
-	    }
-	    String name = PDB_URL + "/" + code.substring(1,3) + "/pdb" + code +
-		".ent.gz";
-	    Molecule mols[] = parseFile(name,new PDBParser());
+	    Molecule mols[] = loaded[c];
 	    if (mols == null) {
-		System.err.println("Structure with code '" + code +
+		System.err.println("Structure with code '" + codes.get(c) +
 				   "' not loaded.");
 		continue;
 	    }
@@ -1251,6 +1419,54 @@ public class BelkaManager implements ActionListener
 	return n_loaded;
     }
 
+    /**
+     * Parses options of load commands starting from the given command and
+     * returns filter of atoms to load. The options are:
+     * <code> model n[-m] </code>, <code> chain ids </code>,
+     * <code> backbone </code>, <code> trace </code> (CA atoms only),
+     * <code> altloc </code> (first alternative location only),
+     * <code> nowater </code> and <code> record name </code> (record of
+     * FASTA-file, can be repeated). The parser is left at the first word
+     * after the options.
+     *
+     * Returns null if options are not correct.
+     */
+    LoadFilter parseLoadFilter(CommandParser commParser,int commandVal)
+    {
+	LoadFilter ret = new LoadFilter();
+	while (true) {
+	    if (commandVal == CommandParser.MODEL_VAL) {
+		commandVal = commParser.parseCommand();
+		if (commandVal == CommandParser._INTEGER_NUM_VAL) {
+		    int model = commParser.getParsedInt();
+		    ret.setModels(model,model);
+		} else if (commandVal == CommandParser._INTEGER_RANGE_VAL) {
+		    ret.setModels(commParser.getParsedIntRangeStart(),
+				  commParser.getParsedIntRangeEnd());
+		} else return null;
+	    } else if (commandVal == CommandParser.CHAIN_VAL) {
+		commParser.parseCommand();
+		String ids = commParser.getParsedWord();
+		if (ids.length() == 0) return null;
+		ret.setChains(ids);
+	    } else if (commandVal == CommandParser.BACKBONE_VAL) {
+		ret.setAtoms(LoadFilter.BACKBONE_ATOMS);
+	    } else if (commandVal == CommandParser.TRACE_VAL) {
+		ret.setAtoms(LoadFilter.CA_ATOMS);
+	    } else if (commandVal == CommandParser.ALTLOC_VAL) {
+		ret.setFirstAlternativeOnly(true);
+	    } else if (commandVal == CommandParser.NOWATER_VAL) {
+		ret.setSkipWater(true);
+	    } else if (commandVal == CommandParser.RECORD_VAL) {
+		commParser.parseCommand();
+		String name = commParser.getParsedWord();
+		if (name.length() == 0) return null;
+		ret.addRecord(name);
+	    } else return ret;
+	    commandVal = commParser.parseCommand();
+	}
+    }
+
     /**
      * The function reads provided filenames and parses files.
      * Returns number of molecules loaded.
@@ -1271,9 +1487,11 @@ public class BelkaManager implements ActionListener
 	    userFormat = FormatResolver.FORMAT_GROUP;
 	}
 
-	// File format is recognized => next token is file name
+	// File format is recognized => next token is option or file name
 	if (userFormat != FormatResolver.FORMAT_UNKNOWN)
-	    commParser.parseCommand();
+	    commandVal = commParser.parseCommand();
+	LoadFilter filter = parseLoadFilter(commParser,commandVal);
+	if (filter == null) return -1;
 	String word = commParser.getParsedWord();
 	while (word.length() > 0) {
 	    fileNames.add(word);
@@ -1292,10 +1510,16 @@ public class BelkaManager implements ActionListener
 	    if (format == FormatResolver.FORMAT_PDB ||
 		format == FormatResolver.FORMAT_FASTA) {
 		Molecule mols[] = null;
-		if (format == FormatResolver.FORMAT_PDB)
-		    mols = parseFile(fileName,new PDBParser());
-		else if (format == FormatResolver.FORMAT_FASTA)
-		    mols = parseFile(fileName,new FASTAParser());
+		if (format == FormatResolver.FORMAT_PDB) {
+		    PDBParser parser = new PDBParser();
+		    parser.setLoadFilter(filter);
+		    mols = parseFile(fileName,parser);
+		}
+		else if (format == FormatResolver.FORMAT_FASTA) {
+		    FASTAParser parser = new FASTAParser();
+		    parser.setLoadFilter(filter);
+		    mols = parseFile(fileName,parser);
+		}
 		if (mols == null) continue;
 		
 		for (int i = 0;i < mols.length;i++) {
@@ -1642,6 +1866,7 @@ public class BelkaManager implements ActionListener
 			m = prev_mol.next();
 		    }
 		}
+	    if (ret > 0) selectionCache_.clear(); // Drop unloaded molecules
 	    return ret;
 	} else return -1;
     }
@@ -1718,6 +1943,28 @@ public class BelkaManager implements ActionListener
 		       commandVal == CommandParser.NO_VAL) {
 		connectFlag_ = false;
 	    } else return false;
+	} else if (commandVal == CommandParser.CACHE_VAL) {
+	    commandVal = commParser.parseCommand();
+	    String dir = commParser.getParsedWord();
+	    if (commandVal == CommandParser.OFF_VAL   ||
+		commandVal == CommandParser.FALSE_VAL ||
+		commandVal == CommandParser.NO_VAL) {
+		pdbCache_.setDirectory(null);
+	    } else if (dir.length() > 0) {
+		return pdbCache_.setDirectory(new File(dir));
+	    } else return false;
+	} else if (commandVal == CommandParser.CACHESIZE_VAL) {
+	    commandVal = commParser.parseCommand();
+	    if (commandVal != CommandParser._INTEGER_NUM_VAL) return false;
+	    int mbytes = commParser.getParsedInt();
+	    if (mbytes < 0) return false;
+	    pdbCache_.setMaxSize((long)mbytes << 20);
+	} else if (commandVal == CommandParser.PDBURL_VAL) {
+	    commParser.parseCommand();
+	    String url = commParser.getParsedWord();
+	    if (url.length() == 0) return false;
+	    while (url.endsWith("/")) url = url.substring(0,url.length() - 1);
+	    pdbCache_.setSource(url);
 	} else return false;
 
 	return true;
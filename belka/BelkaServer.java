@@ -0,0 +1,228 @@
+package belka;
+
+//--- Java imports ---
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.concurrent.*;
+
+//--- Application imports ---
+import belka.chem.*;
+
+/**
+ * Object of this class runs scripts sent by local clients, so that many
+ * jobs are done in one java VM without paying its start up for each job.
+ * The server listens on a port of the loopback interface. A client sends
+ * a script, in the format of script files (see {@link CommandScript}),
+ * and closes its output. The first line of the script must be the key
+ * that the server writes at start up to a file readable only by its user
+ * (see {@link #getKeyFile}), so that other users of the host can't run
+ * commands on behalf of the server. The script is run in a new workspace without
+ * graphics and messages of the commands are sent back on the same
+ * connection, which is then closed. Diagnostics that commands print to
+ * standard output and error streams are sent on the connection too.
+ * Exit command does not stop the server. Connections are served by a
+ * pool of threads.
+ *
+ * @author Alexej Abyzov
+ */
+public class BelkaServer
+{
+    // Time in milliseconds to wait for the script from a client
+    static final int READ_TIMEOUT = 60000;
+
+    // Number of random bytes in the key
+    static final int KEY_BYTES = 16;
+
+    // Port to listen on
+    private int port_ = 0;
+
+    // Number of threads serving clients
+    private int n_threads_ = 1;
+
+    // Stream of the connection served by the thread. Threads started while
+    // serving connection (e.g. by parsers) write to the same connection.
+    private static final InheritableThreadLocal<PrintStream> route_ =
+	new InheritableThreadLocal<PrintStream>();
+
+    // Error stream of the server itself
+    private PrintStream console_ = System.err;
+
+    // Key clients must send before their script
+    private byte[] key_ = null;
+
+    /**
+     * Object constructor.
+     *
+     * @param port port to listen on. If 0, any free port is used.
+     * @param n_threads number of threads serving clients.
+     */
+    public BelkaServer(int port,int n_threads)
+    {
+	port_      = port;
+	n_threads_ = n_threads;
+	if (n_threads_ < 1) n_threads_ = 1;
+    }
+
+    /**
+     * Accepts connections and passes them to the threads. Function returns
+     * only if server can't listen on the port.
+     */
+    public void run()
+    {
+	ServerSocket server = null;
+	try {
+	    server = new ServerSocket(port_,50,
+				      InetAddress.getByName("127.0.0.1"));
+	} catch (Exception e) {
+	    System.err.println("Can't listen on port " + port_ + ".");
+	    return;
+	}
+	File keyFile = getKeyFile(server.getLocalPort());
+	if (!writeKey(keyFile)) {
+	    System.err.println("Can't write key to file '" +
+			       keyFile.getPath() + "'.");
+	    try { server.close(); } catch (Exception e) {}
+	    return;
+	}
+	System.out.println("Belka server is listening on port " +
+			   server.getLocalPort() + ".");
+	System.out.println("Key is in file '" + keyFile.getPath() + "'.");
+
+	// Initializing static data, its messages are for the console
+	new BelkaManager(null,null);
+	Compound.getCompoundByName("Water");
+
+	// Standard streams are passed to connection of the thread
+	console_ = System.err;
+	System.setOut(new PrintStream(new RoutingStream(System.out),true));
+	System.setErr(new PrintStream(new RoutingStream(System.err),true));
+
+	ExecutorService pool = Executors.newFixedThreadPool(n_threads_);
+	while (true) {
+	    try {
+		final Socket socket = server.accept();
+		pool.execute(new Runnable() {
+			public void run() { serve(socket); }
+		    });
+	    } catch (Exception e) {
+		console_.println(e.toString());
+	    }
+	}
+    }
+
+    /**
+     * Returns file the key of the server listening on the port is written
+     * to. The file is in the home directory of the user.
+     *
+     * @param port port the server listens on.
+     * @return file with the key.
+     */
+    public static File getKeyFile(int port)
+    {
+	return new File(System.getProperty("user.home"),
+			".belka_daemon_" + port);
+    }
+
+    /**
+     * Generates new random key and writes it to the file, which only the
+     * user can read and write. The file is deleted when java VM exits.
+     *
+     * @return true if the key is written, false otherwise.
+     */
+    private boolean writeKey(File file)
+    {
+	byte[] bytes = new byte[KEY_BYTES];
+	new SecureRandom().nextBytes(bytes);
+	StringBuilder key = new StringBuilder(2*KEY_BYTES);
+	for (int i = 0;i < KEY_BYTES;i++)
+	    key.append(String.format("%02x",bytes[i] & 0xff));
+	try {
+	    // Permissions are set before the key is written
+	    if (file.exists() && !file.delete()) return false;
+	    if (!file.createNewFile()) return false;
+	    file.deleteOnExit();
+	    if (!file.setReadable(false,false) ||
+		!file.setWritable(false,false) ||
+		!file.setExecutable(false,false) ||
+		!file.setReadable(true,true)   ||
+		!file.setWritable(true,true)) return false;
+	    FileWriter fw = new FileWriter(file);
+	    try {
+		fw.write(key.toString());
+		fw.write('\n');
+	    } finally {
+		fw.close();
+	    }
+	} catch (Exception e) {
+	    return false;
+	}
+	key_ = key.toString().getBytes();
+	return true;
+    }
+
+    /**
+     * Reads script from the connection, runs it in a new workspace and
+     * sends back messages of the commands. Script is not run if the
+     * client has not sent the key.
+     */
+    void serve(Socket socket)
+    {
+	PrintWriter wr = null;
+	try {
+	    OutputStream out =
+		new BufferedOutputStream(socket.getOutputStream());
+	    PrintStream ps = new PrintStream(out);
+	    wr = new PrintWriter(ps);
+	    route_.set(ps);
+
+	    socket.setSoTimeout(READ_TIMEOUT);
+	    InputStream inStream = socket.getInputStream();
+	    BufferedReader in =
+		new BufferedReader(new InputStreamReader(inStream));
+	    String key = in.readLine();
+	    if (key == null ||
+		!MessageDigest.isEqual(key.trim().getBytes(),key_)) {
+		wr.println("Wrong key.");
+		return;
+	    }
+	    CommandScript script = new CommandScript(in);
+
+	    BelkaManager manager = new BelkaManager(null,null);
+	    manager.setAllowExit(false);
+	    manager.runScript(script,wr,null);
+	} catch (Exception e) {
+	    if (wr != null) wr.println(e.toString());
+	    else            console_.println(e.toString());
+	} finally {
+	    if (wr != null) wr.flush();
+	    route_.remove();
+	    try { socket.close(); } catch (Exception e) {}
+	}
+    }
+
+    // Stream writing to the connection served by the current thread or,
+    // if there is none, to the given stream
+    private static class RoutingStream extends OutputStream
+    {
+	private OutputStream default_ = null;
+
+	RoutingStream(OutputStream def) { default_ = def; }
+
+	private OutputStream target()
+	{
+	    OutputStream ret = route_.get();
+	    if (ret == null) return default_;
+	    return ret;
+	}
+
+	public void write(int b) throws IOException { target().write(b); }
+
+	public void write(byte[] b,int off,int len) throws IOException
+	{
+	    target().write(b,off,len);
+	}
+
+	public void flush() throws IOException { target().flush(); }
+    }
+}
@@ -1,10 +1,9 @@
 package belka;
 
-//--- Java imports ---
-import java.util.*;
-
 //--- Application imports ---
 import belka.mol.*;
+import belka.chem.*;
+import belka.geom.*;
 
 /**
  * The class contains set of static functions to perform some operations with
@@ -48,9 +47,9 @@ class BelkaUtil
 		    dist += dz*dz;
 		    if (dist > MAX_CA_DIST) continue;
 		    Bond newBond = Bond.create(a2,a);
-		    s.addBond(newBond);
+		    s.addNewBond(newBond);
 		    if (prev_s != null) {
-			prev_s.addBond(newBond);
+			prev_s.addNewBond(newBond);
 			ret++;
 		    }
 		}
@@ -58,11 +57,14 @@ class BelkaUtil
 	    }
     }
 
-    private final static int GRID_SIZE = 32;
-    private final static ArrayList<Atom>[][][] grid =
-	new ArrayList[GRID_SIZE][GRID_SIZE][GRID_SIZE];
     /**
      * The function creates bonds representing covalent bonds between atoms.
+     * Atoms of standard residues are bonded by templates of their
+     * compounds, consecutive residues are linked by their head and tail
+     * atoms. Other atoms, bridge atoms of templates and head and tail atoms
+     * at ends of chains are bonded to atoms found near them. Atoms of
+     * different chains of the same model are bonded only if one of them is
+     * a bridge atom or is not in a template.
      *
      * @param mol molecule to do the action on
      */
@@ -70,115 +72,122 @@ class BelkaUtil
     {
 	final double MAX_BOND_LENGTH = 2.4;
 
+	int n = mol.countAtoms();
+	Atom[]   atoms  = new Atom[n];
+	double[] covRad = new double[n];
+	char[]   altern = new char[n];
+	Chain[]  chain  = new Chain[n];
+	double[] coords = new double[3*n];
+	int[]    tind   = new int[n];     // Index in template
+	int[]    res    = new int[n];     // Residue of atom
+	boolean[] link  = new boolean[n]; // Atom bonds outside of template
+	boolean[] open  = new boolean[n]; // Atom needs search
+	int[]    same   = new int[n];     // Next atom with the same index
+	int[]    first  = new int[64];    // First atom with template index
+	int i = 0, r = 0;
 	for (Chain c = mol.chainList();c != null;c = c.next()) {
-	    // Initialize min and max
-	    double minX = 0, minY = 0, minZ = 0;
-	    double maxX = 0, maxY = 0, maxZ = 0;
-	    for (Assembly s = c.assemblyList();s != null;s = null)
-		for (Atom a = s.atomList();a != null;a = null) {
-		    minX = maxX = a.getX();
-		    minY = maxY = a.getY();
-		    minZ = maxZ = a.getZ();
-		}
-	    // Find min and max
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    double x = a.getX(),y = a.getY(), z = a.getZ();
-		    if (x < minX) minX = x; if (x > maxX) maxX = x;
-		    if (y < minY) minY = y; if (y > maxY) maxY = y;
-		    if (z < minZ) minZ = z; if (z > maxZ) maxZ = z;
+	    int prevTail = -1;
+	    for (Assembly s = c.assemblyList();s != null;s = s.next(),r++) {
+		BondTemplate t = null;
+		if (s.getCompound() != null)
+		    t = s.getCompound().getBondTemplate();
+		if (t != null) {
+		    if (first.length < t.countAtoms())
+			first = new int[t.countAtoms()];
+		    for (int k = 0;k < t.countAtoms();k++) first[k] = -1;
 		}
 
-	    // Calulate range on every axis
-	    int rangeX = (int)(maxX - minX + 1);
-	    int rangeY = (int)(maxY - minY + 1);
-	    int rangeZ = (int)(maxZ - minZ + 1);
-
-	    // Clear the grid 
-	    for (int i1 = 0;i1 < GRID_SIZE;i1++)
-		for (int i2 = 0;i2 < GRID_SIZE;i2++)
-		    for (int i3 = 0;i3 < GRID_SIZE;i3++)
-			grid[i1][i2][i3] = null;
-
-	    // Calculate bonds
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a1 = s.atomList();a1 != null;a1 = a1.next()) {
-		    
-		    // Get covalent radius
-		    double covRad1 = 0.3;
-		    if (a1.getElement() != null)
-			covRad1 = a1.getElement().getCovalentRadius();
-
-		    // Alternative
-		    char alt1 = a1.getAlternative();
-		    
-		    // Get coordinates
-		    double x = a1.getX(),y = a1.getY(), z = a1.getZ();
+		// Collecting atoms
+		for (Atom a = s.atomList();a != null;a = a.next(),i++) {
+		    atoms[i]  = a;
+		    covRad[i] = 0.3;
+		    if (a.getElement() != null)
+			covRad[i] = a.getElement().getCovalentRadius();
+		    altern[i] = a.getAlternative();
+		    chain[i]  = c;
+		    res[i]    = r;
+		    coords[3*i]     = a.getX();
+		    coords[3*i + 1] = a.getY();
+		    coords[3*i + 2] = a.getZ();
+		    tind[i] = -1;
+		    if (t != null) tind[i] = t.getAtomIndex(a.getName());
+		    link[i] = (tind[i] < 0 || t.isBridge(tind[i]));
+		    open[i] = link[i];
+		    if (tind[i] < 0) continue;
+		    same[i] = first[tind[i]];
+		    first[tind[i]] = i;
+		}
+		if (t == null) {
+		    prevTail = -1;
+		    continue;
+		}
 
-		    // Calculate start on grid
-		    double shiftX = x - minX - MAX_BOND_LENGTH;
-		    double shiftY = y - minY - MAX_BOND_LENGTH;
-		    double shiftZ = z - minZ - MAX_BOND_LENGTH;
-		    int startX = 0,startY = 0, startZ = 0;
-		    if (shiftX > 0) startX = (int)(GRID_SIZE*shiftX/rangeX);
-		    if (shiftY > 0) startY = (int)(GRID_SIZE*shiftY/rangeY);
-		    if (shiftZ > 0) startZ = (int)(GRID_SIZE*shiftZ/rangeZ);
+		// Bonding by template
+		for (int b = 0;b < t.countBonds();b++) {
+		    int f1 = first[t.getFAtomIndex(b)];
+		    int f2 = first[t.getSAtomIndex(b)];
+		    for (int i1 = f1;i1 >= 0;i1 = same[i1])
+			for (int i2 = f2;i2 >= 0;i2 = same[i2])
+			    bond(atoms,covRad,altern,coords,i1,i2);
+		}
 
-		    // Calculate start on grid
-		    shiftX += MAX_BOND_LENGTH + MAX_BOND_LENGTH;
-		    shiftY += MAX_BOND_LENGTH + MAX_BOND_LENGTH;
-		    shiftZ += MAX_BOND_LENGTH + MAX_BOND_LENGTH;
-		    int last = GRID_SIZE - 1;
-		    int endX = last,endY = last, endZ = last;
-		    if (shiftX < rangeX) endX = (int)(GRID_SIZE*shiftX/rangeX);
-		    if (shiftY < rangeY) endY = (int)(GRID_SIZE*shiftY/rangeY);
-		    if (shiftZ < rangeZ) endZ = (int)(GRID_SIZE*shiftZ/rangeZ);
+		// Linking to previous residue. Head and tail atoms which are
+		// not linked, e.g. at ends of cyclic peptides, are searched.
+		int head = -1;
+		if (t.getHeadIndex() >= 0) head = first[t.getHeadIndex()];
+		for (int i1 = head;i1 >= 0;i1 = same[i1]) {
+		    if (prevTail < 0) open[i1] = true;
+		    for (int i2 = prevTail;i2 >= 0;i2 = same[i2])
+			bond(atoms,covRad,altern,coords,i1,i2);
+		}
+		if (head >= 0)
+		    for (int i2 = prevTail;i2 >= 0;i2 = same[i2])
+			open[i2] = link[i2];
+		prevTail = -1;
+		if (t.getTailIndex() >= 0) prevTail = first[t.getTailIndex()];
+		for (int i2 = prevTail;i2 >= 0;i2 = same[i2]) open[i2] = true;
+	    }
+	}
+	int n_open = 0;
+	for (i = 0;i < n;i++) if (open[i]) n_open++;
+	if (n_open == 0) return;
 
-		    for (int ix = startX;ix <= endX;ix++)
-			for (int iy = startY;iy <= endY;iy++)
-			    for (int iz = startZ;iz <= endZ;iz++) {
-				ArrayList<Atom> atoms = grid[ix][iy][iz];
-				if (atoms == null) continue;
-				int n = atoms.size();
-				for (int i = 0;i < n;i++) {
-				    Atom a2 = (Atom)atoms.get(i);
-				    if (a2 == null) continue;
-				    char alt2 = a2.getAlternative();
-				    if (alt1 != ' ' && alt2 != ' ' &&
-					alt1 != alt2) continue;
-				    double covRad2 = 0.3;
-				    if (a2.getElement() != null)
-					covRad2 = a2.getElement().
-					    getCovalentRadius();
-				    double max  = covRad1 + covRad2 + 0.5;
-				    double max2 = max*max;
-				    double dx = x - a2.getX();
-				    double dy = y - a2.getY();
-				    double dz = z - a2.getZ();
-				    double dist2 = dx*dx;
-				    if (dist2 > max2) continue;
-				    dist2 += dy*dy;
-				    if (dist2 > max2) continue;
-				    dist2 += dz*dz;
-				    if (dist2 > max2) continue;
-				    Bond b = Bond.create(a1,a2);
-				    a1.addBond(b);
-				    a2.addBond(b);
-				}
-			    }
-		    shiftX -= MAX_BOND_LENGTH;
-		    shiftY -= MAX_BOND_LENGTH;
-		    shiftZ -= MAX_BOND_LENGTH;
-		    int gridX = (int)(GRID_SIZE*shiftX/rangeX);
-		    int gridY = (int)(GRID_SIZE*shiftY/rangeY);
-		    int gridZ = (int)(GRID_SIZE*shiftZ/rangeZ);
-		    ArrayList<Atom> atoms = grid[gridX][gridY][gridZ];
-		    if (atoms == null) {
-			atoms = new ArrayList<Atom>(2);
-			grid[gridX][gridY][gridZ] = atoms;
-		    }
-		    atoms.add(a1);
- 		}
+	// Searching for atoms near other atoms
+	CellList cells = new CellList(MAX_BOND_LENGTH);
+	int n_threads = Runtime.getRuntime().availableProcessors();
+	if (!cells.build(coords,n,n_threads)) return;
+	for (i = 0;i < n;i++) {
+	    if (!open[i]) continue;
+	    int[] near = cells.findWithin(coords[3*i],coords[3*i + 1],
+					  coords[3*i + 2],MAX_BOND_LENGTH);
+	    for (int k = 0;k < near.length;k++) {
+		int j = near[k];
+		if (j == i) continue;
+		if (open[j] && j < i) continue; // Done from other atom
+		if (tind[i] >= 0 && tind[j] >= 0 && res[i] == res[j])
+		    continue; // Bonded by template
+		if (chain[j] != chain[i] &&
+		    ((!link[i] && !link[j]) ||
+		     chain[j].getModel() != chain[i].getModel())) continue;
+		bond(atoms,covRad,altern,coords,i,j);
+	    }
 	}
     }
-}
\ No newline at end of file
+
+    // Bonds two atoms if they are close enough
+    private static void bond(Atom[] atoms,double[] covRad,char[] altern,
+			     double[] coords,int i1,int i2)
+    {
+	char alt1 = altern[i1], alt2 = altern[i2];
+	if (alt1 != ' ' && alt2 != ' ' && alt1 != alt2) return;
+	double max = covRad[i1] + covRad[i2] + 0.5;
+	double dx = coords[3*i1]     - coords[3*i2];
+	double dy = coords[3*i1 + 1] - coords[3*i2 + 1];
+	double dz = coords[3*i1 + 2] - coords[3*i2 + 2];
+	if (dx*dx + dy*dy + dz*dz > max*max) return;
+	if (i1 < i2) { int tmp = i1; i1 = i2; i2 = tmp; }
+	Bond b = Bond.create(atoms[i1],atoms[i2]);
+	atoms[i1].addNewBond(b);
+	atoms[i2].addNewBond(b);
+    }
+}
@@ -37,10 +37,10 @@ public class CommandParser
   	else               input_ = input;
 	firstToRead_ = 0;
 
-
-	// Checking for output redirection
-	StringTokenizer tokenizer = new StringTokenizer(input_);
-	while (tokenizer.hasMoreTokens()) {
+	// Checking for output redirection, only lines with '>' can have it
+	StringTokenizer tokenizer = null;
+	if (input_.indexOf('>') >= 0) tokenizer = new StringTokenizer(input_);
+	while (tokenizer != null && tokenizer.hasMoreTokens()) {
 	    String tok = tokenizer.nextToken();
 	    if (!tok.equals(">") && !tok.equals(">>")) continue;
 	    if (tok.equals(">>")) fileAppend_ = true;
@@ -59,6 +59,21 @@ public class CommandParser
 	    }
 	    break;
 	}
+
+	// Finding words of the input in one pass
+	for (int pos = skipSpaces(0);pos < input_.length();) {
+	    if (n_words_ == wordStart_.length) {
+		int[] tmp = new int[2*n_words_];
+		System.arraycopy(wordStart_,0,tmp,0,n_words_);
+		wordStart_ = tmp;
+		tmp = new int[2*n_words_];
+		System.arraycopy(wordEnd_,0,tmp,0,n_words_);
+		wordEnd_ = tmp;
+	    }
+	    wordStart_[n_words_] = pos;
+	    pos = wordEnd_[n_words_++] = wordEnd(pos);
+	    pos = skipSpaces(pos);
+	}
     }
     
     // Input line
@@ -101,6 +116,34 @@ public class CommandParser
     // Parsing index
     private int firstToRead_ = 0;
 
+    // Positions of the first character and of the character after the last
+    // one for words of the input, and index of the next word to parse
+    private int[] wordStart_ = new int[16], wordEnd_ = new int[16];
+    private int   n_words_ = 0, nextWord_ = 0;
+
+    // Returns position of the first not space character starting from pos
+    private int skipSpaces(int pos)
+    {
+	for (;pos < input_.length();pos++)
+	    if (!Character.isSpaceChar(input_.charAt(pos))) break;
+	return pos;
+    }
+
+    // Returns position after the end of the word starting at pos. Words
+    // are separated by spaces and ','; '!' and ',' at the start of a word
+    // are words by themselves.
+    private int wordEnd(int pos)
+    {
+	char inChar = input_.charAt(pos);
+	if (inChar == '!' || inChar == ',') return pos + 1;
+	for (;pos < input_.length();pos++) {
+	    inChar = input_.charAt(pos);
+	    if (inChar == ',') break;
+	    if (Character.isSpaceChar(inChar)) break;
+	}
+	return pos;
+    }
+
     // Parsed int
     private int parsedInt_ = 0;
     /**
@@ -163,11 +206,9 @@ public class CommandParser
      */
     public boolean hasMoreInput()
     {
-	if (firstToRead_ >= input_.length()) return false;
-	String tmp = input_.substring(firstToRead_,input_.length());
-	if (tmp == null)           return false;
-	if (tmp.trim().equals("")) return false;
-	return true;
+	for (int i = firstToRead_;i < input_.length();i++)
+	    if (input_.charAt(i) > ' ') return true;
+	return false;
     }
 
     /**
@@ -210,71 +251,39 @@ public class CommandParser
 	    return _ERROR_VAL; // Error while parsing of redirection in contr.
 
 	// Scroll to the next not space
-	for (;firstToRead_ < input_.length();firstToRead_++) {
-	    char inChar = input_.charAt(firstToRead_);
-	    if (!Character.isSpaceChar(inChar)) break;
-	}
-
-	if ((input_.length() - firstToRead_) == 0) return _NONE_VAL;
+	firstToRead_ = skipSpaces(firstToRead_);
+
+	if (firstToRead_ >= input_.length()) return _NONE_VAL;
+
+	// Taking the next word found in constructor, unless parsing index
+	// was moved inside of a word (e.g. by parsing of color)
+	while (nextWord_ < n_words_ && wordStart_[nextWord_] < firstToRead_)
+	    nextWord_++;
+	int end;
+	if (nextWord_ < n_words_ && wordStart_[nextWord_] == firstToRead_)
+	    end = wordEnd_[nextWord_++];
+	else
+	    end = wordEnd(firstToRead_);
+	char inChar = input_.charAt(firstToRead_);
+	word_ = input_.substring(firstToRead_,end);
+	firstToRead_ = end;
 
 	// Special case of '!'
-	if (input_.charAt(firstToRead_) == '!') {
-	    firstToRead_++;
-	    word_ = "!";
-	    return NOT_VAL;
-	}
+	if (inChar == '!') return NOT_VAL;
 
 	// Special case of ','
-	if (input_.charAt(firstToRead_) == ',') {
-	    firstToRead_++;
-	    word_ = ",";
-	    return OR_VAL;
-	}
-
-	for (;firstToRead_ < input_.length();firstToRead_++) {
-	    char inChar = input_.charAt(firstToRead_);
-	    if (inChar == ',') break;
-	    if (Character.isSpaceChar(inChar)) break;
-	    word_ += inChar;
-	}
+	if (inChar == ',') return OR_VAL;
 
 	// Scroll to the next not space
-	for (;firstToRead_ < input_.length();firstToRead_++) {
-	    char inChar = input_.charAt(firstToRead_);
-	    if (!Character.isSpaceChar(inChar)) break;
-	}
+	firstToRead_ = skipSpaces(firstToRead_);
 
 	int last_ind = word_.length() - 1;
 	char firstChar = Character.toLowerCase(word_.charAt(0));
 	char lastChar  = Character.toLowerCase(word_.charAt(last_ind));
 	int ret = _ERROR_VAL;
 	if (Character.isLetter(firstChar)) {
-	    if (firstChar == 'a') ret = parseACommand(word_.toLowerCase());
-	    if (firstChar == 'b') ret = parseBCommand(word_.toLowerCase());
-	    if (firstChar == 'c') ret = parseCCommand(word_.toLowerCase());
-	    if (firstChar == 'd') ret = parseDCommand(word_.toLowerCase());
-	    if (firstChar == 'e') ret = parseECommand(word_.toLowerCase());
-	    if (firstChar == 'f') ret = parseFCommand(word_.toLowerCase());
-	    if (firstChar == 'g') ret = parseGCommand(word_.toLowerCase());
-	    if (firstChar == 'h') ret = parseHCommand(word_.toLowerCase());
-	    if (firstChar == 'i') ret = parseICommand(word_.toLowerCase());
-	    if (firstChar == 'j') ret = parseJCommand(word_.toLowerCase());
-	    if (firstChar == 'k') ret = parseKCommand(word_.toLowerCase());
-	    if (firstChar == 'l') ret = parseLCommand(word_.toLowerCase());
-	    if (firstChar == 'm') ret = parseMCommand(word_.toLowerCase());
-	    if (firstChar == 'n') ret = parseNCommand(word_.toLowerCase());
-	    if (firstChar == 'o') ret = parseOCommand(word_.toLowerCase());
-	    if (firstChar == 'p') ret = parsePCommand(word_.toLowerCase());
-	    if (firstChar == 'q') ret = parseQCommand(word_.toLowerCase());
-	    if (firstChar == 'r') ret = parseRCommand(word_.toLowerCase());
-	    if (firstChar == 's') ret = parseSCommand(word_.toLowerCase());
-	    if (firstChar == 't') ret = parseTCommand(word_.toLowerCase());
-	    if (firstChar == 'u') ret = parseUCommand(word_.toLowerCase());
-	    if (firstChar == 'v') ret = parseVCommand(word_.toLowerCase());
-	    if (firstChar == 'w') ret = parseWCommand(word_.toLowerCase());
-	    if (firstChar == 'x') ret = parseXCommand(word_.toLowerCase());
-	    if (firstChar == 'y') ret = parseYCommand(word_.toLowerCase());
-	    if (firstChar == 'z') ret = parseZCommand(word_.toLowerCase());
+	    Integer val = KEYWORDS.get(word_.toLowerCase());
+	    if (val != null) ret = val;
 	}
 
  	if (ret != _ERROR_VAL) return ret;
@@ -334,6 +343,16 @@ public class CommandParser
 	return _ERROR_VAL;
     }
 
+    // Values of keywords by lower case word
+    private static final HashMap<String,Integer> KEYWORDS =
+	new HashMap<String,Integer>(512);
+
+    // Adds keyword to the table, the first value given to a word is kept
+    private static void keyword(String word,int val)
+    {
+	if (!KEYWORDS.containsKey(word)) KEYWORDS.put(word,val);
+    }
+
     public final static int ALICEBLUE_VAL    = 1000; // aliceblue
     public final static int ALIGN_SW_VAL     = 1001; // align_sw
     public final static int ALIGN_NW_VAL     = 1002; // align_nw
@@ -346,21 +365,21 @@ public class CommandParser
     public final static int AQUA_VAL         = 1009; // aqua
     public final static int AQUAMARINE_VAL   = 1010; // aquamarine
     public final static int AZURE_VAL        = 1011; // azure
-    int parseACommand(String command)
-    {
-	if (command.equals("aliceblue"))    return ALICEBLUE_VAL;
-	if (command.equals("align_sw"))     return ALIGN_SW_VAL;
-	if (command.equals("align_nw"))     return ALIGN_NW_VAL;
-	if (command.equals("aligned"))      return ALIGNED_VAL;
-	if (command.equals("all"))          return ALL_VAL;
-	if (command.equals("and"))          return AND_VAL;
-	if (command.equals("antiquewhite")) return ANTIQUEWHITE_VAL;
-	if (command.equals("assign"))       return ASSIGN_VAL;
-	if (command.equals("atom"))         return ATOM_VAL;
-	if (command.equals("aqua"))         return AQUA_VAL;
-	if (command.equals("aquamarine"))   return AQUAMARINE_VAL;
-	if (command.equals("azure"))        return AZURE_VAL;
-	return _ERROR_VAL;
+    public final static int ALTLOC_VAL       = 1012; // altloc
+    static {
+	keyword("aliceblue",     ALICEBLUE_VAL);
+	keyword("align_sw",      ALIGN_SW_VAL);
+	keyword("align_nw",      ALIGN_NW_VAL);
+	keyword("aligned",       ALIGNED_VAL);
+	keyword("all",           ALL_VAL);
+	keyword("altloc",        ALTLOC_VAL);
+	keyword("and",           AND_VAL);
+	keyword("antiquewhite",  ANTIQUEWHITE_VAL);
+	keyword("assign",        ASSIGN_VAL);
+	keyword("atom",          ATOM_VAL);
+	keyword("aqua",          AQUA_VAL);
+	keyword("aquamarine",    AQUAMARINE_VAL);
+	keyword("azure",         AZURE_VAL);
     }
 
     public final static int BACKBONE_VAL       = 2000; // backbone
@@ -373,19 +392,17 @@ public class CommandParser
     public final static int BLUEVIOLET_VAL     = 2007; // blueviolet
     public final static int BROWN_VAL          = 2008; // brown
     public final static int BURLYWOOD_VAL      = 2009; // burlywood
-    int parseBCommand(String command)
-    {
-	if (command.equals("backbone"))       return BACKBONE_VAL;
-	if (command.equals("background"))     return BACKGROUND_VAL;
-	if (command.equals("beige"))          return BEIGE_VAL;
-	if (command.equals("bisque"))         return BISQUE_VAL;
-	if (command.equals("black"))          return BLACK_VAL;
-	if (command.equals("blanchedalmond")) return BLANCHEDALMOND_VAL;
-	if (command.equals("blue"))           return BLUE_VAL;
-	if (command.equals("blueviolet"))     return BLUEVIOLET_VAL;
-	if (command.equals("brown"))          return BROWN_VAL;
-	if (command.equals("burlywood"))      return BURLYWOOD_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("backbone",        BACKBONE_VAL);
+	keyword("background",      BACKGROUND_VAL);
+	keyword("beige",           BEIGE_VAL);
+	keyword("bisque",          BISQUE_VAL);
+	keyword("black",           BLACK_VAL);
+	keyword("blanchedalmond",  BLANCHEDALMOND_VAL);
+	keyword("blue",            BLUE_VAL);
+	keyword("blueviolet",      BLUEVIOLET_VAL);
+	keyword("brown",           BROWN_VAL);
+	keyword("burlywood",       BURLYWOOD_VAL);
     }
 
     public final static int CADETBLUE_VAL      = 3000; // cadetblue
@@ -404,26 +421,28 @@ public class CommandParser
     public final static int CPK_VAL            = 3013; // cpk
     public final static int CRIMSON_VAL        = 3014; // crimson
     public final static int CYAN_VAL           = 3015; // cyan
-    int parseCCommand(String command)
-    {
-	if (command.equals("cadetblue"))      return CADETBLUE_VAL;
-	if (command.equals("cartoon"))        return CARTOONS_VAL;
-	if (command.equals("cartoons"))       return CARTOONS_VAL;
-	if (command.equals("center"))         return CENTER_VAL;
-	if (command.equals("chain"))          return CHAIN_VAL;
-	if (command.equals("chartreuse"))     return CHARTREUSE_VAL;
-	if (command.equals("chocolate"))      return CHOCOLATE_VAL;
-	if (command.equals("cluster"))        return CLUSTER_VAL;
-	if (command.equals("color"))          return COLOR_VAL;
-	if (command.equals("compare"))        return COMPARE_VAL;
-	if (command.equals("connect"))        return CONNECT_VAL;
-	if (command.equals("coral"))          return CORAL_VAL;
-	if (command.equals("cornflowerblue")) return CORNFLOWERBLUE_VAL;
-	if (command.equals("cornsilk"))       return CORNSILK_VAL;
-	if (command.equals("cpk"))            return CPK_VAL;
-	if (command.equals("crimson"))        return CRIMSON_VAL;
-	if (command.equals("cyan"))           return CYAN_VAL;
-	return _ERROR_VAL;
+    public final static int CACHE_VAL          = 3016; // cache
+    public final static int CACHESIZE_VAL      = 3017; // cachesize
+    static {
+	keyword("cache",           CACHE_VAL);
+	keyword("cachesize",       CACHESIZE_VAL);
+	keyword("cadetblue",       CADETBLUE_VAL);
+	keyword("cartoon",         CARTOONS_VAL);
+	keyword("cartoons",        CARTOONS_VAL);
+	keyword("center",          CENTER_VAL);
+	keyword("chain",           CHAIN_VAL);
+	keyword("chartreuse",      CHARTREUSE_VAL);
+	keyword("chocolate",       CHOCOLATE_VAL);
+	keyword("cluster",         CLUSTER_VAL);
+	keyword("color",           COLOR_VAL);
+	keyword("compare",         COMPARE_VAL);
+	keyword("connect",         CONNECT_VAL);
+	keyword("coral",           CORAL_VAL);
+	keyword("cornflowerblue",  CORNFLOWERBLUE_VAL);
+	keyword("cornsilk",        CORNSILK_VAL);
+	keyword("cpk",             CPK_VAL);
+	keyword("crimson",         CRIMSON_VAL);
+	keyword("cyan",            CYAN_VAL);
     }
 
     public final static int DARKBLUE_VAL       = 4000; // darkblue
@@ -449,44 +468,42 @@ public class CommandParser
     public final static int DISPLACEMENT_VAL   = 4020; // displacement
     public final static int DODGERBLUE_VAL     = 4021; // dodgerblue
     public final static int DRAG_VAL           = 4022; // drag
-    int parseDCommand(String command)
-    {
-	if (command.equals("darkblue"))       return DARKBLUE_VAL;
-	if (command.equals("darkcyan"))       return DARKCYAN_VAL;
-	if (command.equals("darkgoldenrod"))  return DARKGOLDENROD_VAL;
-	if (command.equals("darkgray"))       return DARKGRAY_VAL;
-	if (command.equals("darkgrey"))       return DARKGRAY_VAL;
-	if (command.equals("darkgreen"))      return DARKGREEN_VAL;
-	if (command.equals("darkkhaki"))      return DARKKHAKI_VAL;
-	if (command.equals("darkmagenta"))    return DARKMAGENTA_VAL;
-	if (command.equals("darkolivegreen")) return DARKOLIVEGREEN_VAL;
-	if (command.equals("darkorange"))     return DARKORANGE_VAL;
-	if (command.equals("darkorchid"))     return DARKORCHID_VAL;
-	if (command.equals("darkred"))        return DARKRED_VAL;
-	if (command.equals("darksalmon"))     return DARKSALMON_VAL;
-	if (command.equals("darkseagreen"))   return DARKSEAGREEN_VAL;
-	if (command.equals("darkslateblue"))  return DARKSLATEBLUE_VAL;
-	if (command.equals("darkslategray"))  return DARKSLATEGRAY_VAL;
-	if (command.equals("darkslategrey"))  return DARKSLATEGRAY_VAL;
-	if (command.equals("darkturquoise"))  return DARKTURQUOISE_VAL;
-	if (command.equals("darkviolet"))     return DARKVIOLET_VAL;
-	if (command.equals("deeppink"))       return DEEPPINK_VAL;
-	if (command.equals("deepskyblue"))    return DEEPSKYBLUE_VAL;
-	if (command.equals("dimgray"))        return DIMGRAY_VAL;
-	if (command.equals("dimgrey"))        return DIMGRAY_VAL;
-	if (command.equals("displacement"))   return DISPLACEMENT_VAL;
-	if (command.equals("dodgerblue"))     return DODGERBLUE_VAL;
-	if (command.equals("drag"))           return DRAG_VAL;
-	return _ERROR_VAL;
+    public final static int DEFINE_VAL         = 4023; // define
+    static {
+	keyword("darkblue",        DARKBLUE_VAL);
+	keyword("darkcyan",        DARKCYAN_VAL);
+	keyword("darkgoldenrod",   DARKGOLDENROD_VAL);
+	keyword("darkgray",        DARKGRAY_VAL);
+	keyword("darkgrey",        DARKGRAY_VAL);
+	keyword("darkgreen",       DARKGREEN_VAL);
+	keyword("darkkhaki",       DARKKHAKI_VAL);
+	keyword("darkmagenta",     DARKMAGENTA_VAL);
+	keyword("darkolivegreen",  DARKOLIVEGREEN_VAL);
+	keyword("darkorange",      DARKORANGE_VAL);
+	keyword("darkorchid",      DARKORCHID_VAL);
+	keyword("darkred",         DARKRED_VAL);
+	keyword("darksalmon",      DARKSALMON_VAL);
+	keyword("darkseagreen",    DARKSEAGREEN_VAL);
+	keyword("darkslateblue",   DARKSLATEBLUE_VAL);
+	keyword("darkslategray",   DARKSLATEGRAY_VAL);
+	keyword("darkslategrey",   DARKSLATEGRAY_VAL);
+	keyword("darkturquoise",   DARKTURQUOISE_VAL);
+	keyword("darkviolet",      DARKVIOLET_VAL);
+	keyword("deeppink",        DEEPPINK_VAL);
+	keyword("define",          DEFINE_VAL);
+	keyword("deepskyblue",     DEEPSKYBLUE_VAL);
+	keyword("dimgray",         DIMGRAY_VAL);
+	keyword("dimgrey",         DIMGRAY_VAL);
+	keyword("displacement",    DISPLACEMENT_VAL);
+	keyword("dodgerblue",      DODGERBLUE_VAL);
+	keyword("drag",            DRAG_VAL);
     }
 
     public final static int EXIT_VAL = 5000; // exit
     public final static int ECHO_VAL = 5001; // echo
-    int parseECommand(String command)
-    {
-	if (command.equals("exit"))      return EXIT_VAL;
-	else if (command.equals("echo")) return ECHO_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("exit",  EXIT_VAL);
+	keyword("echo",  ECHO_VAL);
     }
 
     public final static int FALSE_VAL       = 6000; // false
@@ -497,17 +514,15 @@ public class CommandParser
     public final static int FORESTGREEN_VAL = 6005; // forestgreen
     public final static int FROM_VAL        = 6006; // from
     public final static int FUCHSIA_VAL     = 6007; // fuchsia
-    int parseFCommand(String command)
-    {
-	if (command.equals("false"))       return FALSE_VAL;
-	if (command.equals("fasta"))       return FASTA_VAL;
-	if (command.equals("firebrick"))   return FIREBRICK_VAL;
-	if (command.equals("fit"))         return FIT_VAL;
-	if (command.equals("floralwhite")) return FLORALWHITE_VAL;
-	if (command.equals("forestgreen")) return FORESTGREEN_VAL;
-	if (command.equals("from"))        return FROM_VAL;
-	if (command.equals("fuchsia"))     return FUCHSIA_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("false",        FALSE_VAL);
+	keyword("fasta",        FASTA_VAL);
+	keyword("firebrick",    FIREBRICK_VAL);
+	keyword("fit",          FIT_VAL);
+	keyword("floralwhite",  FLORALWHITE_VAL);
+	keyword("forestgreen",  FORESTGREEN_VAL);
+	keyword("from",         FROM_VAL);
+	keyword("fuchsia",      FUCHSIA_VAL);
     }
 
     public final static int GAINSBORO_VAL   = 7000; // gainsboro
@@ -520,54 +535,44 @@ public class CommandParser
     public final static int GREENYELLOW_VAL = 7007; // greenyellow
     public final static int GROUP_VAL       = 7008; // group
     public final static int GROUPMOL_VAL    = 7009; // groupmol
-    int parseGCommand(String command)
-    {
-	if (command.equals("gainsboro"))   return GAINSBORO_VAL;
-	if (command.equals("get"))         return GET_VAL;
-	if (command.equals("ghostwhite"))  return GHOSTWHITE_VAL;
-	if (command.equals("gold"))        return GOLD_VAL;
-	if (command.equals("goldenrod"))   return GOLDENROD_VAL;
-	if (command.equals("gray"))        return GRAY_VAL;
-	if (command.equals("grey"))        return GRAY_VAL;
-	if (command.equals("green"))       return GREEN_VAL;
-	if (command.equals("greenyellow")) return GREENYELLOW_VAL;
-	if (command.equals("group"))       return GROUP_VAL;
-	if (command.equals("groupmol"))    return GROUPMOL_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("gainsboro",    GAINSBORO_VAL);
+	keyword("get",          GET_VAL);
+	keyword("ghostwhite",   GHOSTWHITE_VAL);
+	keyword("gold",         GOLD_VAL);
+	keyword("goldenrod",    GOLDENROD_VAL);
+	keyword("gray",         GRAY_VAL);
+	keyword("grey",         GRAY_VAL);
+	keyword("green",        GREEN_VAL);
+	keyword("greenyellow",  GREENYELLOW_VAL);
+	keyword("group",        GROUP_VAL);
+	keyword("groupmol",     GROUPMOL_VAL);
     }
 
     public final static int HONEYDEW_VAL = 8000;
     public final static int HOTPINK_VAL  = 8001;
-    int parseHCommand(String command)
-    {
-	if (command.equals("honeydew")) return HONEYDEW_VAL;
-	if (command.equals("hotpink"))  return HOTPINK_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("honeydew",  HONEYDEW_VAL);
+	keyword("hotpink",   HOTPINK_VAL);
     }
 
     public final static int INDIANRED_VAL = 9000; // indianred
     public final static int INDIGO_VAL    = 9001; // indigo
     public final static int IVORY_VAL     = 9002; // ivory
-    int parseICommand(String command)
-    {
-	if (command.equals("indianred")) return INDIANRED_VAL;
-	if (command.equals("indigo"))    return INDIGO_VAL;
-	if (command.equals("ivory"))     return IVORY_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("indianred",  INDIANRED_VAL);
+	keyword("indigo",     INDIGO_VAL);
+	keyword("ivory",      IVORY_VAL);
     }
 
     public final static int JAR_VAL = 10000; // jar
-    int parseJCommand(String command)
-    {
-	if (command.equals("jar")) return JAR_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("jar",  JAR_VAL);
     }
 
     public final static int KHAKI_VAL = 11000; // khaki
-    int parseKCommand(String command)
-    {
-	if (command.equals("khaki")) return KHAKI_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("khaki",  KHAKI_VAL);
     }
 
     public final static int LAVENDER_VAL       = 12000; // lavender
@@ -591,33 +596,30 @@ public class CommandParser
     public final static int LIMEGREEN_VAL      = 12018; // limegreen
     public final static int LINEN_VAL          = 12019; // linen
     public final static int LOAD_VAL           = 12020; // load
-    int parseLCommand(String command)
-    {
-	if (command.equals("lavender"))       return LAVENDER_VAL;
-	if (command.equals("lavenderblush"))  return LAVENDERBLUSH_VAL;
-	if (command.equals("lawngreen"))      return LAWNGREEN_VAL;
-	if (command.equals("lemonchiffon"))   return LEMONCHIFFON_VAL;
-	if (command.equals("lightblue"))      return LIGHTBLUE_VAL;
-	if (command.equals("lightcoral"))     return LIGHTCORAL_VAL;
-	if (command.equals("lightcyan"))      return LIGHTCYAN_VAL;
-	if (command.equals("lightgoldenrodyellow"))
-	    return LIGHTGOLDENRODYELLOW_VAL;
-	if (command.equals("lightgreen"))     return LIGHTGREEN_VAL;
-	if (command.equals("lightgray"))      return LIGHTGRAY_VAL;
-	if (command.equals("lightgrey"))      return LIGHTGRAY_VAL;
-	if (command.equals("lightpink"))      return LIGHTPINK_VAL;
-	if (command.equals("lightsalmon"))    return LIGHTSALMON_VAL;
-	if (command.equals("lightseagreen"))  return LIGHTSEAGREEN_VAL;
-	if (command.equals("lightskyblue"))   return LIGHTSKYBLUE_VAL;
-	if (command.equals("lightslategray")) return LIGHTSLATEGRAY_VAL;
-	if (command.equals("lightslategrey")) return LIGHTSLATEGRAY_VAL;
-	if (command.equals("lightsteelblue")) return LIGHTSTEELBLUE_VAL;
-	if (command.equals("lightyellow"))    return LIGHTYELLOW_VAL;
-	if (command.equals("lime"))           return LIME_VAL;
-	if (command.equals("limegreen"))      return LIMEGREEN_VAL;
-	if (command.equals("linen"))          return LINEN_VAL;
-	if (command.equals("load"))           return LOAD_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("lavender",              LAVENDER_VAL);
+	keyword("lavenderblush",         LAVENDERBLUSH_VAL);
+	keyword("lawngreen",             LAWNGREEN_VAL);
+	keyword("lemonchiffon",          LEMONCHIFFON_VAL);
+	keyword("lightblue",             LIGHTBLUE_VAL);
+	keyword("lightcoral",            LIGHTCORAL_VAL);
+	keyword("lightcyan",             LIGHTCYAN_VAL);
+	keyword("lightgoldenrodyellow",  LIGHTGOLDENRODYELLOW_VAL);
+	keyword("lightgreen",            LIGHTGREEN_VAL);
+	keyword("lightgray",             LIGHTGRAY_VAL);
+	keyword("lightgrey",             LIGHTGRAY_VAL);
+	keyword("lightpink",             LIGHTPINK_VAL);
+	keyword("lightsalmon",           LIGHTSALMON_VAL);
+	keyword("lightseagreen",         LIGHTSEAGREEN_VAL);
+	keyword("lightskyblue",          LIGHTSKYBLUE_VAL);
+	keyword("lightslategray",        LIGHTSLATEGRAY_VAL);
+	keyword("lightslategrey",        LIGHTSLATEGRAY_VAL);
+	keyword("lightsteelblue",        LIGHTSTEELBLUE_VAL);
+	keyword("lightyellow",           LIGHTYELLOW_VAL);
+	keyword("lime",                  LIME_VAL);
+	keyword("limegreen",             LIMEGREEN_VAL);
+	keyword("linen",                 LINEN_VAL);
+	keyword("load",                  LOAD_VAL);
     }
 
     public final static int MAGENTA_VAL           = 13000; // Fmagenta
@@ -638,27 +640,25 @@ public class CommandParser
     public final static int MODEL_VAL             = 13015; // model
     public final static int MOLECULE_VAL          = 13016; // molecule
     public final static int MOTION_VAL            = 13017; // motion
-    int parseMCommand(String command)
-    {
-	if (command.equals("magenta"))           return MAGENTA_VAL;
-	if (command.equals("maroon"))            return MAROON_VAL;
-	if (command.equals("mediumaquamarine"))  return MEDIUMAQUAMARINE_VAL;
-	if (command.equals("mediumblue"))        return MEDIUMBLUE_VAL;
-	if (command.equals("mediumorchid"))      return MEDIUMORCHID_VAL;
-	if (command.equals("mediumpurple"))      return MEDIUMPURPLE_VAL;
-	if (command.equals("mediumseagreen"))    return MEDIUMSEAGREEN_VAL;
-	if (command.equals("mediumslateblue"))   return MEDIUMSLATEBLUE_VAL;
-	if (command.equals("mediumspringgreen")) return MEDIUMSPRINGGREEN_VAL;
-	if (command.equals("mediumturquoise"))   return MEDIUMTURQUOISE_VAL;
-	if (command.equals("mediumvioletred"))   return MEDIUMVIOLETRED_VAL;
-	if (command.equals("midnightblue"))      return MIDNIGHTBLUE_VAL;
-	if (command.equals("mintcream"))         return MINTCREAM_VAL;
-	if (command.equals("mistyrose"))         return MISTYROSE_VAL;
-	if (command.equals("moccasin"))          return MOCCASIN_VAL;
-	if (command.equals("model"))             return MODEL_VAL;
-	if (command.equals("molecule"))          return MOLECULE_VAL;
-	if (command.equals("motion"))            return MOTION_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("magenta",            MAGENTA_VAL);
+	keyword("maroon",             MAROON_VAL);
+	keyword("mediumaquamarine",   MEDIUMAQUAMARINE_VAL);
+	keyword("mediumblue",         MEDIUMBLUE_VAL);
+	keyword("mediumorchid",       MEDIUMORCHID_VAL);
+	keyword("mediumpurple",       MEDIUMPURPLE_VAL);
+	keyword("mediumseagreen",     MEDIUMSEAGREEN_VAL);
+	keyword("mediumslateblue",    MEDIUMSLATEBLUE_VAL);
+	keyword("mediumspringgreen",  MEDIUMSPRINGGREEN_VAL);
+	keyword("mediumturquoise",    MEDIUMTURQUOISE_VAL);
+	keyword("mediumvioletred",    MEDIUMVIOLETRED_VAL);
+	keyword("midnightblue",       MIDNIGHTBLUE_VAL);
+	keyword("mintcream",          MINTCREAM_VAL);
+	keyword("mistyrose",          MISTYROSE_VAL);
+	keyword("moccasin",           MOCCASIN_VAL);
+	keyword("model",              MODEL_VAL);
+	keyword("molecule",           MOLECULE_VAL);
+	keyword("motion",             MOTION_VAL);
     }
 
     public final static int NAVAJOWHITE_VAL = 14000; // navajowhite
@@ -668,16 +668,16 @@ public class CommandParser
     public final static int NOT_VAL         = 14004; // not
     public final static int NOCLUSTER_VAL   = 14005; // nocluster
     public final static int NOREFINE_VAL    = 14006; // norefine
-    int parseNCommand(String command)
-    {
-	if (command.equals("navajowhite")) return NAVAJOWHITE_VAL;
-	if (command.equals("navy"))        return NAVY_VAL;
-	if (command.equals("nma"))         return NMA_VAL;
-	if (command.equals("no"))          return NO_VAL;
-	if (command.equals("not"))         return NOT_VAL;
-	if (command.equals("nocluster"))   return NOCLUSTER_VAL;
-	if (command.equals("norefine"))    return NOREFINE_VAL;
-	return _ERROR_VAL;
+    public final static int NOWATER_VAL     = 14007; // nowater
+    static {
+	keyword("navajowhite",  NAVAJOWHITE_VAL);
+	keyword("navy",         NAVY_VAL);
+	keyword("nma",          NMA_VAL);
+	keyword("no",           NO_VAL);
+	keyword("not",          NOT_VAL);
+	keyword("nocluster",    NOCLUSTER_VAL);
+	keyword("norefine",     NOREFINE_VAL);
+	keyword("nowater",      NOWATER_VAL);
     }
 
     public final static int OCCUPANCY_VAL = 15000; // occupancy
@@ -690,19 +690,19 @@ public class CommandParser
     public final static int ORANGE_VAL    = 15007; // orange
     public final static int ORANGERED_VAL = 15008; // orangered
     public final static int ORCHID_VAL    = 15009; // orchid
-    int parseOCommand(String command)
-    {
-	if (command.equals("occupancy")) return OCCUPANCY_VAL;
-	if (command.equals("off"))       return OFF_VAL;
-	if (command.equals("on"))        return ON_VAL;
-	if (command.equals("oldlace"))   return OLDLACE_VAL;
-	if (command.equals("olive"))     return OLIVE_VAL;
-	if (command.equals("olivedrab")) return OLIVEDRAB_VAL;
-	if (command.equals("or"))        return OR_VAL;
-	if (command.equals("orange"))    return ORANGE_VAL;
-	if (command.equals("orangered")) return ORANGERED_VAL;
-	if (command.equals("orchid"))    return ORCHID_VAL;
-	return _ERROR_VAL;
+    public final static int OF_VAL        = 15010; // of
+    static {
+	keyword("occupancy",  OCCUPANCY_VAL);
+	keyword("of",         OF_VAL);
+	keyword("off",        OFF_VAL);
+	keyword("on",         ON_VAL);
+	keyword("oldlace",    OLDLACE_VAL);
+	keyword("olive",      OLIVE_VAL);
+	keyword("olivedrab",  OLIVEDRAB_VAL);
+	keyword("or",         OR_VAL);
+	keyword("orange",     ORANGE_VAL);
+	keyword("orangered",  ORANGERED_VAL);
+	keyword("orchid",     ORCHID_VAL);
     }
 
     public final static int PALEGOLDENROD_VAL = 16000; // palegoldenrod
@@ -720,31 +720,29 @@ public class CommandParser
     public final static int PRINT_VAL         = 16012; // print
     public final static int PROJECT_VAL       = 16013; // project
     public final static int PURPLE_VAL        = 16014; // purple
-    int parsePCommand(String command)
-    {
-	if (command.equals("palegoldenrod")) return PALEGOLDENROD_VAL;
-	if (command.equals("palegreen"))     return PALEGREEN_VAL;
-	if (command.equals("paleturquoise")) return PALETURQUOISE_VAL;
-	if (command.equals("palevioletred")) return PALEVIOLETRED_VAL;
-	if (command.equals("papayawhip"))    return PAPAYAWHIP_VAL;
-	if (command.equals("pdb"))           return PDB_VAL;
-	if (command.equals("pdbload"))       return PDBLOAD_VAL;
-	if (command.equals("peachpuff"))     return PEACHPUFF_VAL;
-	if (command.equals("peru"))          return PERU_VAL;
-	if (command.equals("pink"))          return PINK_VAL;
-	if (command.equals("plum"))          return PLUM_VAL;
-	if (command.equals("powderblue"))    return POWDERBLUE_VAL;
-	if (command.equals("print"))         return PRINT_VAL;
-	if (command.equals("project"))       return PROJECT_VAL;
-	if (command.equals("purple"))        return PURPLE_VAL;
-	return _ERROR_VAL;
+    public final static int PDBURL_VAL        = 16015; // pdburl
+    static {
+	keyword("palegoldenrod",  PALEGOLDENROD_VAL);
+	keyword("palegreen",      PALEGREEN_VAL);
+	keyword("paleturquoise",  PALETURQUOISE_VAL);
+	keyword("palevioletred",  PALEVIOLETRED_VAL);
+	keyword("papayawhip",     PAPAYAWHIP_VAL);
+	keyword("pdb",            PDB_VAL);
+	keyword("pdbload",        PDBLOAD_VAL);
+	keyword("pdburl",         PDBURL_VAL);
+	keyword("peachpuff",      PEACHPUFF_VAL);
+	keyword("peru",           PERU_VAL);
+	keyword("pink",           PINK_VAL);
+	keyword("plum",           PLUM_VAL);
+	keyword("powderblue",     POWDERBLUE_VAL);
+	keyword("print",          PRINT_VAL);
+	keyword("project",        PROJECT_VAL);
+	keyword("purple",         PURPLE_VAL);
     }
 
     public final static int QUIT_VAL = EXIT_VAL; // quit
-    int parseQCommand(String command)
-    {
-	if (command.equals("quit")) return QUIT_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("quit",  QUIT_VAL);
     }
 
     public final static int RED_VAL       = 18000; // red
@@ -753,16 +751,18 @@ public class CommandParser
     public final static int RIGIDS_VAL    = 18003; // rigids
     public final static int ROSYBROWN_VAL = 18004; // rosybrown
     public final static int ROYALBLUE_VAL = 18005; // royalblue
-    int parseRCommand(String command)
-    {
-	if (command.equals("red"))       return RED_VAL;
-	if (command.equals("refine"))    return REFINE_VAL;
-	if (command.equals("ribbon"))    return RIBBONS_VAL;
-	if (command.equals("ribbons"))   return RIBBONS_VAL;
-	if (command.equals("rigids"))    return RIGIDS_VAL;
-	if (command.equals("rosybrown")) return ROSYBROWN_VAL;
-	if (command.equals("royalblue")) return ROYALBLUE_VAL;
-	return _ERROR_VAL;
+    public final static int RUN_VAL       = 18006; // run
+    public final static int RECORD_VAL    = 18007; // record
+    static {
+	keyword("record",     RECORD_VAL);
+	keyword("red",        RED_VAL);
+	keyword("refine",     REFINE_VAL);
+	keyword("ribbon",     RIBBONS_VAL);
+	keyword("ribbons",    RIBBONS_VAL);
+	keyword("rigids",     RIGIDS_VAL);
+	keyword("rosybrown",  ROSYBROWN_VAL);
+	keyword("royalblue",  ROYALBLUE_VAL);
+	keyword("run",        RUN_VAL);
     }
 
     public final static int SADDLEBROWN_VAL = 19000; // saddlebrown
@@ -787,33 +787,31 @@ public class CommandParser
     public final static int SPRINGGREEN_VAL = 19019; // springgreen
     public final static int STEELBLUE_VAL   = 19010; // steelblue
     public final static int STRANDS_VAL     = 19020; // strands
-    int parseSCommand(String command)
-    {
-	if (command.equals("saddlebrown")) return SADDLEBROWN_VAL;
-	if (command.equals("salmon"))      return SALMON_VAL;
-	if (command.equals("sandybrown"))  return SANDYBROWN_VAL;
-	if (command.equals("save"))        return SAVE_VAL;
-	if (command.equals("seagreen"))    return SEAGREEN_VAL;
-	if (command.equals("seashell"))    return SEASHELL_VAL;
-	if (command.equals("select"))      return SELECT_VAL;
-	if (command.equals("selected"))    return SELECTED_VAL;
-	if (command.equals("set"))         return SET_VAL;
-	if (command.equals("sequence"))    return SEQUENCE_VAL;
-	if (command.equals("shapely"))     return SHAPELY_VAL;
-	if (command.equals("sienna"))      return SIENNA_VAL;
-	if (command.equals("silver"))      return SILVER_VAL;
-	if (command.equals("skyblue"))     return SKYBLUE_VAL;
-	if (command.equals("slateblue"))   return SLATEBLUE_VAL;
-	if (command.equals("slategray"))   return SLATEGRAY_VAL;
-	if (command.equals("slategrey"))   return SLATEGRAY_VAL;
-	if (command.equals("snow"))        return SNOW_VAL;
-	if (command.equals("spacefill"))   return SPACEFILL_VAL;
-	if (command.equals("split"))       return SPLIT_VAL;
-	if (command.equals("springgreen")) return SPRINGGREEN_VAL;
-	if (command.equals("steelblue"))   return STEELBLUE_VAL;
-	if (command.equals("strand"))      return STRANDS_VAL;
-	if (command.equals("strands"))     return STRANDS_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("saddlebrown",  SADDLEBROWN_VAL);
+	keyword("salmon",       SALMON_VAL);
+	keyword("sandybrown",   SANDYBROWN_VAL);
+	keyword("save",         SAVE_VAL);
+	keyword("seagreen",     SEAGREEN_VAL);
+	keyword("seashell",     SEASHELL_VAL);
+	keyword("select",       SELECT_VAL);
+	keyword("selected",     SELECTED_VAL);
+	keyword("set",          SET_VAL);
+	keyword("sequence",     SEQUENCE_VAL);
+	keyword("shapely",      SHAPELY_VAL);
+	keyword("sienna",       SIENNA_VAL);
+	keyword("silver",       SILVER_VAL);
+	keyword("skyblue",      SKYBLUE_VAL);
+	keyword("slateblue",    SLATEBLUE_VAL);
+	keyword("slategray",    SLATEGRAY_VAL);
+	keyword("slategrey",    SLATEGRAY_VAL);
+	keyword("snow",         SNOW_VAL);
+	keyword("spacefill",    SPACEFILL_VAL);
+	keyword("split",        SPLIT_VAL);
+	keyword("springgreen",  SPRINGGREEN_VAL);
+	keyword("steelblue",    STEELBLUE_VAL);
+	keyword("strand",       STRANDS_VAL);
+	keyword("strands",      STRANDS_VAL);
     }
 
     public final static int TAN_VAL         = 20000; // tan
@@ -824,69 +822,55 @@ public class CommandParser
     public final static int TRACE_VAL       = 20005; // trace
     public final static int TRUE_VAL        = 20006; // true
     public final static int TURQUOISE_VAL   = 20007; // turquoise
-    int parseTCommand(String command)
-    {
-	if (command.equals("tan"))         return TAN_VAL;
-	if (command.equals("teal"))        return TEAL_VAL;
-	if (command.equals("temperature")) return TEMPERATURE_VAL;
-	if (command.equals("thistle"))     return THISTLE_VAL;
-	if (command.equals("tomato"))      return TOMATO_VAL;
-	if (command.equals("trace"))       return TRACE_VAL;
-	if (command.equals("true"))        return TRUE_VAL;
-	if (command.equals("turquoise"))   return TURQUOISE_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("tan",          TAN_VAL);
+	keyword("teal",         TEAL_VAL);
+	keyword("temperature",  TEMPERATURE_VAL);
+	keyword("thistle",      THISTLE_VAL);
+	keyword("tomato",       TOMATO_VAL);
+	keyword("trace",        TRACE_VAL);
+	keyword("true",         TRUE_VAL);
+	keyword("turquoise",    TURQUOISE_VAL);
     }
 
     public final static int UNLOAD_VAL = 21000; // unload
-    int parseUCommand(String command)
-    {
-	if (command.equals("unload")) return UNLOAD_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("unload",  UNLOAD_VAL);
     }
 
     public final static int VDW_VAL    = 22000; // vdw
     public final static int VIOLET_VAL = 22000; // violet
-    int parseVCommand(String command)
-    {
-	if (command.equals("vdw"))    return VDW_VAL;
-	if (command.equals("violet")) return VIOLET_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("vdw",     VDW_VAL);
+	keyword("violet",  VIOLET_VAL);
     }
 
     public final static int WHEAT_VAL      = 23000; // wheat
     public final static int WHITE_VAL      = 23001; // white
     public final static int WHITESMOKE_VAL = 23002; // whitesmoke
     public final static int WIREFRAME_VAL  = 23003; // wireframe
-    int parseWCommand(String command)
-    {
-	if (command.equals("wheat"))      return WHEAT_VAL;
-	if (command.equals("white"))      return WHITE_VAL;
-	if (command.equals("whitesmoke")) return WHITESMOKE_VAL;
-	if (command.equals("wireframe"))  return WIREFRAME_VAL;
-	return _ERROR_VAL;
+    public final static int WITHIN_VAL     = 23004; // within
+    static {
+	keyword("wheat",       WHEAT_VAL);
+	keyword("white",       WHITE_VAL);
+	keyword("whitesmoke",  WHITESMOKE_VAL);
+	keyword("wireframe",   WIREFRAME_VAL);
+	keyword("within",      WITHIN_VAL);
     }
 
-    int parseXCommand(String command)
-    {
-	return _ERROR_VAL;
-    }
 
     public final static int YELLOW_VAL      = 25000; // yellow
     public final static int YELLOWGREEN_VAL = 25001; // yellowgreen
     public final static int YES_VAL         = 25002; // yes
-    int parseYCommand(String command)
-    {
-	if (command.equals("yellow"))      return YELLOW_VAL;
-	if (command.equals("yellowgreen")) return YELLOWGREEN_VAL;
-	if (command.equals("yes"))         return YES_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("yellow",       YELLOW_VAL);
+	keyword("yellowgreen",  YELLOWGREEN_VAL);
+	keyword("yes",          YES_VAL);
     }
 
     public final static int ZAP_VAL = 26000; // zap
-    int parseZCommand(String command)
-    {
-	if (command.equals("zap")) return ZAP_VAL;
-	return _ERROR_VAL;
+    static {
+	keyword("zap",  ZAP_VAL);
     }
 
     // Parsed color
@@ -0,0 +1,139 @@
+package belka;
+
+//--- Java imports ---
+import java.io.*;
+import java.util.*;
+
+/**
+ * Object of this class keeps commands of a script. The script is read and
+ * split into commands once, and for each command the parser is created
+ * in advance, so that executing commands does not deal with the text of
+ * the script. Empty lines and lines starting with '#' are skipped. A line
+ * starting with '[' is a list of commands in square brackets, for example
+ * [backbone off][spacefill on]. Any other line is a single command.
+ * Execution time can be saved for each command.
+ *
+ * @author Alexej Abyzov
+ */
+class CommandScript
+{
+    // Commands, their parsers, lines and execution times
+    private ArrayList<String>        commands_ = new ArrayList<String>();
+    private ArrayList<CommandParser> parsers_  =
+	new ArrayList<CommandParser>();
+    private ArrayList<Integer>       lines_    = new ArrayList<Integer>();
+    private long[]                   times_    = null;
+
+    /**
+     * Object constructor. Reads the script from the reader.
+     *
+     * @param in reader of the script.
+     */
+    CommandScript(BufferedReader in) throws IOException
+    {
+	ArrayList<String> lineCommands = new ArrayList<String>(4);
+	String line = null;
+	int n_line = 0;
+	while ((line = in.readLine()) != null) {
+	    n_line++;
+	    line = line.trim();
+	    if (line.length() == 0 || line.startsWith("#")) continue;
+	    lineCommands.clear();
+	    split(line,lineCommands);
+	    for (int i = 0;i < lineCommands.size();i++) {
+		String command = lineCommands.get(i).trim();
+		commands_.add(command);
+		parsers_.add(new CommandParser(command));
+		lines_.add(n_line);
+	    }
+	}
+	times_ = new long[commands_.size()];
+    }
+
+    /**
+     * Splits the script into commands. If the script starts with '[',
+     * commands are taken from the square brackets, until the first
+     * character outside of brackets that is not a space. Otherwise the
+     * whole script is one command.
+     *
+     * @param script script to split.
+     * @param commands list to add commands to.
+     * @return number of added commands.
+     */
+    static int split(String script,ArrayList<String> commands)
+    {
+	if (!script.startsWith("[")) {
+	    commands.add(script);
+	    return 1;
+	}
+
+	int n_added = 0;
+	int begin = 0;
+	int count = 0;
+	int len = script.length();
+	for (int i = 0;i < len;i++) {
+	    char c = script.charAt(i);
+	    if (c == '[') {
+		if (count == 0) begin = i;
+		count++;
+	    } else if (c == ']') {
+		count--;
+		if (count == 0) {
+		    commands.add(script.substring(begin + 1,i));
+		    n_added++;
+		}
+	    } else {
+		if (count == 0 && !Character.isWhitespace(c)) break;
+	    }
+	}
+	return n_added;
+    }
+
+    /**
+     * Returns number of commands in the script.
+     *
+     * @return number of commands in the script.
+     */
+    int getNCommands() { return commands_.size(); }
+
+    /**
+     * Returns text of the command.
+     *
+     * @param i index of the command.
+     * @return text of the command.
+     */
+    String getCommand(int i) { return commands_.get(i); }
+
+    /**
+     * Returns parser of the command. Parser is created when the script is
+     * read and can be used for parsing only once.
+     *
+     * @param i index of the command.
+     * @return parser of the command.
+     */
+    CommandParser getParser(int i) { return parsers_.get(i); }
+
+    /**
+     * Returns number of the line the command is in.
+     *
+     * @param i index of the command.
+     * @return number of the line, starting from 1.
+     */
+    int getLine(int i) { return lines_.get(i); }
+
+    /**
+     * Saves execution time of the command.
+     *
+     * @param i index of the command.
+     * @param time time in nanoseconds.
+     */
+    void setTime(int i,long time) { times_[i] = time; }
+
+    /**
+     * Returns execution time of the command.
+     *
+     * @param i index of the command.
+     * @return time in nanoseconds.
+     */
+    long getTime(int i) { return times_[i]; }
+}
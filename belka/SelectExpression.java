@@ -1,5 +1,8 @@
 package belka;
 
+//--- Java imports ---
+import java.util.*;
+
 //--- Application imports ---
 import belka.mol.*;
 
@@ -14,6 +17,8 @@ import belka.mol.*;
  * will be represented inside of the program by two objects of this class
  * linked by boolean operation 'and'<p>
  * <code> obj1--and-->obj2 </code> <p>
+ * Linked expressions are compiled into a flat program when they are first
+ * checked, so they must not be changed after that.
  *
  * @author Alexej Abyzov
  */
@@ -25,14 +30,12 @@ public class SelectExpression
     private String chainIds_      = null; boolean useChainIds_      = false;
     private String assemblyName_  = null; boolean useAssemblyName_  = false;
     private int    assemblyNum_   = 0;    boolean useAssemblyNum_   = false;
+    private int    assemblyNumEnd_ = 0;
     private int    assemblyAtt_   = 0;    boolean useAssemblyAtt_   = false;
     private String atomName_      = null; boolean useAtomName_      = false;
     private int    atomAtt_       = 0;    boolean useAtomAtt_       = false;
+    private double withinRadius_  = 0;    boolean useWithin_        = false;
     private SelectExpression subExpression_ = null;
-    private boolean notOnlyMol_      = false;
-    private boolean notOnlyChain_    = false;
-    private boolean notOnlyAssembly_ = false;
-    private boolean notOnlyAtom_     = false;
 
     /**
      * Object constructor
@@ -66,7 +69,6 @@ public class SelectExpression
 	if (molName != null && molName.length() > 0) {
 	    molName_ = molName;
 	    useMolName_ = true;
-	    notOnlyChain_ = notOnlyAssembly_ = notOnlyAtom_ = true;
 	} else useMolName_ = false;
 
 
@@ -74,14 +76,12 @@ public class SelectExpression
 	if (chainIds != null && chainIds.length() > 0) {
 	    chainIds_    = chainIds;
 	    useChainIds_ = true;
-	    notOnlyMol_  = notOnlyAssembly_ = notOnlyAtom_ = true;
 	} else useChainIds_ = false;
 
 	// Assembly name
 	if (assemblyName != null && assemblyName.length() > 0) {
 	    assemblyName_ = assemblyName;
 	    useAssemblyName_ = true;
-	    notOnlyMol_ = notOnlyChain_ = notOnlyAtom_ = true;
 	} else useAssemblyName_ = false;
 
 	
@@ -89,10 +89,10 @@ public class SelectExpression
 	if (assemblyNum != null && assemblyNum.length() > 0) {
 	    try {
 		assemblyNum_ = Integer.parseInt(assemblyNum);
+		assemblyNumEnd_ = assemblyNum_;
 		useAssemblyNum_ = true;
 	    } catch (Exception e) {
 		useAssemblyNum_ = false;
-		notOnlyMol_ = notOnlyChain_ = notOnlyAtom_ = true;
 	    }
 	} else useAssemblyNum_ = false;
 
@@ -100,7 +100,6 @@ public class SelectExpression
 	if (atomName != null && atomName.length() > 0) {
 	    atomName_ = atomName;
 	    useAtomName_ = true;
-	    notOnlyMol_ = notOnlyChain_ = notOnlyAssembly_ = true;
 	} else useAtomName_ = false;
 
 	notExpr_ = notExpr;
@@ -117,7 +116,26 @@ public class SelectExpression
     {
 	// Sub-expression
 	subExpression_ = subExpression;
-	notOnlyMol_ = notOnlyChain_ = notOnlyAssembly_ = notOnlyAtom_ = true;
+
+	notExpr_ = notExpr;
+    }
+
+    /**
+     * Object constructor. Expression is satisfied by atoms within given
+     * distance from atoms satisfying the sub-expression in the same
+     * molecule. Distances are measured by derived coordinates.
+     *
+     * @param radius distance in angstroms.
+     * @param subExpression sub-expression giving atoms to measure distance
+     * from.
+     * @param notExpr flag to indicate that expression must be reversed.
+     */
+    public SelectExpression(double radius,SelectExpression subExpression,
+			    boolean notExpr)
+    {
+	subExpression_ = subExpression;
+	withinRadius_  = radius;
+	useWithin_     = true;
 
 	notExpr_ = notExpr;
     }
@@ -131,7 +149,27 @@ public class SelectExpression
     {
 	assemblyAtt_    = assemblyAtt;
 	useAssemblyAtt_ = true;
-	notOnlyMol_ = notOnlyChain_ = notOnlyAtom_ = true;
+	program_ = null;
+    }
+
+    /**
+     * Sets range of assembly numbers. Assemblies with numbers from start to
+     * end inclusive satisfy the expression.
+     *
+     * @param start first number of the range.
+     * @param end last number of the range.
+     */
+    public void setAssemblyRange(int start,int end)
+    {
+	if (end < start) { // Swap numbers if end < start
+	    int tmp = end;
+	    end = start;
+	    start = tmp;
+	}
+	assemblyNum_    = start;
+	assemblyNumEnd_ = end;
+	useAssemblyNum_ = true;
+	program_ = null;
     }
 
     /**
@@ -143,7 +181,7 @@ public class SelectExpression
     {
 	atomAtt_    = atomAtt;
 	useAtomAtt_ = true;
-	notOnlyMol_ = notOnlyChain_ = notOnlyAssembly_ = true;
+	program_ = null;
     }
 
 
@@ -203,6 +241,7 @@ public class SelectExpression
 	if (next_ != null || expr == null) return false;
 	next_  = expr;
 	bool_ |= SELECTION_OR;
+	program_ = null;
 	return true;
     }
 
@@ -218,9 +257,72 @@ public class SelectExpression
 	if (next_ != null || expr == null) return false;
 	next_  = expr;
 	bool_ |= SELECTION_AND;
+	program_ = null;
 	return true;
     }
 
+    // Compiled program of the expression and linked ones
+    private SelectProgram program_ = null;
+
+    // Cache of sets of satisfying atoms, can be null
+    private SelectionCache cache_ = null;
+    void setCache(SelectionCache cache) { cache_ = cache; }
+
+    // Returns set of atoms of the molecule satisfying the expression. The
+    // set must not be changed.
+    private BitSet atoms(Molecule mol)
+    {
+	if (cache_ != null) return cache_.atoms(program(),mol);
+	return program().atoms(mol);
+    }
+
+    // Returns compiled program
+    private SelectProgram program()
+    {
+	if (program_ == null) {
+	    SelectProgram prog = new SelectProgram();
+	    compile(prog);
+	    program_ = prog;
+	}
+	return program_;
+    }
+
+    // Adds tests and operations of the expression and linked ones to the
+    // program. Value of expression is value of its own test and of
+    // sub-expression, or for 'within' expression value of sub-expression
+    // for atoms nearby. It is reversed for 'not' and combined with value of
+    // the next expression. Expression without own test compiles as its
+    // sub-expression, so that both have the same program.
+    private void compile(SelectProgram prog)
+    {
+	boolean hasTest = (useMolName_ || useChainIds_ || useAssemblyName_ ||
+			   useAssemblyNum_ || useAssemblyAtt_ ||
+			   useAtomName_ || useAtomAtt_);
+	if (useWithin_) {
+	    subExpression_.compile(prog);
+	    prog.addWithin(withinRadius_);
+	} else {
+	    if (hasTest || subExpression_ == null)
+		prog.addTest(useMolName_       ? molName_      : null,
+			     useChainIds_      ? chainIds_     : null,
+			     useAssemblyName_  ? assemblyName_ : null,
+			     useAssemblyNum_,assemblyNum_,assemblyNumEnd_,
+			     useAssemblyAtt_,assemblyAtt_,
+			     useAtomName_      ? atomName_     : null,
+			     useAtomAtt_,atomAtt_);
+	    if (subExpression_ != null) {
+		subExpression_.compile(prog);
+		if (hasTest) prog.addAnd();
+	    }
+	}
+	if (isNot()) prog.addNot();
+	if (next_ != null) {
+	    next_.compile(prog);
+	    if (isOrBoolean())  prog.addOr();
+	    if (isAndBoolean()) prog.addAnd();
+	}
+    }
+
     /**
      * Returns true if any atom in molecule may satisfy the expression,
      * false otherwise. All the boolean values from linked expressions are
@@ -234,35 +336,7 @@ public class SelectExpression
     public boolean moleculeMaySatisfy(Molecule mol)
     {
 	if (mol == null) return false;
-	
-	boolean self_ret = true; // By default molecule satisfies
-
-	if (useMolName_)
-	    if (!molName_.equalsIgnoreCase(mol.getName()) &&
-		!molName_.equalsIgnoreCase(mol.getPDBCode()))
-		self_ret = false;
-
-	// Sub-expression
-	if (subExpression_ != null) {
-	    boolean sub_ret = subExpression_.moleculeMaySatisfy(mol);
-	    self_ret &= sub_ret;
-	}
-
-	// Handling 'not' expressions
-	if (isNot()) self_ret = !self_ret; // If not and 
-	if (isNot()     && // If not and 
-	    !self_ret   && // false and 
-	    notOnlyMol_)   // not only molecule is used
-	    self_ret = true;
-	
-	// Next expression
-	if (next_ != null) {
-	    boolean next_ret = next_.moleculeMaySatisfy(mol);
-	    if (isOrBoolean())  self_ret |= next_ret;
-	    if (isAndBoolean()) self_ret &= next_ret;
-	}
-
-	return self_ret;
+	return program().moleculeMaySatisfy(mol);
     }
     
     /**
@@ -278,33 +352,7 @@ public class SelectExpression
     public boolean chainMaySatisfy(Chain chain)
     {
 	if (chain == null) return false;
-
-	boolean self_ret = true; // By default chain satisfies
-
-	if (useChainIds_ && chainIds_.indexOf(chain.getId()) < 0)
-	    self_ret = false;
-
-	// Sub-expression
-	if (subExpression_ != null) {
-	    boolean sub_ret = subExpression_.chainMaySatisfy(chain);
-	    self_ret &= sub_ret;
-	}
-
-	// Handling 'not' expressions
-	if (isNot()) self_ret = !self_ret; // If not and 
-	if (isNot()       && // If not and 
-	    !self_ret     && // false and 
-	    notOnlyChain_)   // not only chain is used
-	    self_ret = true;
-	
-	// Next expression
-	if (next_ != null) {
-	    boolean next_ret = next_.chainMaySatisfy(chain);
-	    if (isOrBoolean())  self_ret |= next_ret;
-	    if (isAndBoolean()) self_ret &= next_ret;
-	}
-
-	return self_ret;
+	return program().chainMaySatisfy(chain);
     }
 
     /**
@@ -320,42 +368,7 @@ public class SelectExpression
     public boolean assemblyMaySatisfy(Assembly assembly)
     {
 	if (assembly == null) return false;
-
-	boolean self_ret = true; // By default assembly satisfies
-
-	if (useAssemblyName_ && 
-	    !assemblyName_.equalsIgnoreCase(assembly.getName()))
-	    self_ret = false;
-
-	if (useAssemblyNum_ &&
-	    assemblyNum_ != assembly.getSerialNum())
-	    self_ret = false;
-
- 	if (useAssemblyAtt_ && 
- 	    !assembly.hasAttribute(assemblyAtt_))
- 	    self_ret = false;
-	
-	// Sub-expression
-	if (subExpression_ != null) {
-	    boolean sub_ret = subExpression_.assemblyMaySatisfy(assembly);
-	    self_ret &= sub_ret;
-	}
-
-	// Handling 'not' expressions
-	if (isNot()) self_ret = !self_ret; // If not
-	if (isNot()   &&      // If not and
-	    !self_ret &&      // and false and 
-	    notOnlyAssembly_) // not only assembly is used
-	    self_ret = true; 
-
-	// Next expression
-	if (next_ != null) {
-	    boolean next_ret = next_.assemblyMaySatisfy(assembly);
-	    if (isOrBoolean())  self_ret |= next_ret;
-	    if (isAndBoolean()) self_ret &= next_ret;
-	}
-
-	return self_ret;
+	return program().assemblyMaySatisfy(assembly);
     }
     
     /**
@@ -371,38 +384,7 @@ public class SelectExpression
     public boolean atomMaySatisfy(Atom atom)
     {
 	if (atom == null) return false;
-
-	boolean self_ret = true; // By default assembly satisfies
-
-	if (useAtomName_ &&
-	    !atomName_.equalsIgnoreCase(atom.getName()))
-	    self_ret = false;
-
- 	if (useAtomAtt_ && 
- 	    !atom.hasAttribute(atomAtt_))
-	    self_ret = false;
-
-	// Sub-expression
-	if (subExpression_ != null) {
-	    boolean sub_ret = subExpression_.atomMaySatisfy(atom);
-	    self_ret &= sub_ret;
-	}
-
-	// Handling 'not' expressions
-	if (isNot()) self_ret = !self_ret; // If not
-	if (isNot()   &&  // If not and 
-	    !self_ret &&  // and false and 
-	    notOnlyAtom_) // not only atom is used
-	    self_ret = true;
-
-	// Next expression 
-	if (next_ != null) {
-	    boolean next_ret = next_.atomMaySatisfy(atom);
-	    if (isOrBoolean())  self_ret |= next_ret;
-	    if (isAndBoolean()) self_ret &= next_ret;
-	}
-
-	return self_ret;
+	return program().atomMaySatisfy(atom);
     }
 
     /**
@@ -411,6 +393,9 @@ public class SelectExpression
      * values from linked expressions are summed. It's responsibility of the
      * calling function to make sure that input atom belongs to input
      * assembly that belongs to input chain that belongs to input molecule.
+     * Checks for null objects are skipped. Selections with 'within' are
+     * checked for whole molecule, they are satisfied if the atom or, if it
+     * is null, any atom of the assembly or chain is in the selection.
      * 
      * @param mol      molecule to check.
      * @param chain    chain to check.
@@ -423,62 +408,48 @@ public class SelectExpression
 			   Assembly assembly,
 			   Atom atom)
     {
-	boolean self_ret = true;
-
-	// Checking molecule
-	if (useMolName_ && mol != null)
-	    if (!molName_.equalsIgnoreCase(mol.getName()) &&
-		!molName_.equalsIgnoreCase(mol.getPDBCode()))
-		self_ret = false;
-
-	// Checking chain
-	if (self_ret && useChainIds_ && chain != null)
-	    if (chainIds_.indexOf(chain.getId()) < 0)
-	    //if (chainIds_ != chain.getId())
-		self_ret = false;
-
-	// Checking assembly name
-	if (self_ret && useAssemblyName_ && assembly != null)
-	    if (!assemblyName_.equalsIgnoreCase(assembly.getName()))
-		self_ret = false;
-
-	// Checking assembly number
-	if (self_ret && useAssemblyNum_ && assembly != null)
-	    if (assemblyNum_ != assembly.getSerialNum())
-		self_ret = false;
-
-	// Checking group for assembly
-	if (self_ret && useAssemblyAtt_ && assembly != null)
-	    if (!assembly.hasAttribute(assemblyAtt_))
-		self_ret = false;
-	
-	// Checking atom name
-	if (self_ret && useAtomName_ && atom != null)
-	    if (!atomName_.equalsIgnoreCase(atom.getName()))
-		self_ret = false;
-
-	// Checking atom attribute
- 	if (self_ret && useAtomAtt_ && atom != null)
- 	    if (!atom.hasAttribute(atomAtt_))
-		self_ret = false;
-
-	// Sub-expression
-	if (subExpression_ != null) {
-	    boolean sub_ret = subExpression_.satisfy(mol,chain,assembly,atom);
-	    self_ret &= sub_ret;
-	}
+	return program().satisfy(mol,chain,assembly,atom);
+    }
 
-	// Reverse if the expresion isNot
-	if (isNot()) self_ret = !self_ret;
+    /**
+     * Selects atoms of the molecule that satisfy the selection and
+     * deselects the others. Atoms are found with the inverted index of the
+     * molecule or taken from the cache of selections.
+     *
+     * @param mol molecule to select atoms in.
+     * @return number of selected atoms.
+     */
+    public int select(Molecule mol)
+    {
+	if (mol == null) return 0;
+	BitSet set = atoms(mol);
+	mol.selectAtoms(set);
+	return set.cardinality();
+    }
 
-	// Next expression
-	if (next_ != null) {
-	    boolean next_ret = next_.satisfy(mol,chain,assembly,atom);
-	    if (isOrBoolean())  self_ret |= next_ret;
-	    if (isAndBoolean()) self_ret &= next_ret;
-	}
+    /**
+     * Returns number of atoms of the molecule that satisfy the selection.
+     *
+     * @param mol molecule to check.
+     * @return number of atoms satisfying the selection.
+     */
+    public int countSatisfying(Molecule mol)
+    {
+	if (mol == null) return 0;
+	return atoms(mol).cardinality();
+    }
 
-	return self_ret;
+    /**
+     * Returns set of atoms of the molecule that satisfy the selection.
+     * Atoms are numbered as in the index of atoms of the molecule.
+     *
+     * @param mol molecule to check.
+     * @return set of atom numbers.
+     */
+    public BitSet satisfyingAtoms(Molecule mol)
+    {
+	if (mol == null) return new BitSet();
+	return (BitSet)atoms(mol).clone();
     }
 
 
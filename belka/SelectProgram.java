@@ -0,0 +1,537 @@
+package belka;
+
+//--- Java imports ---
+import java.util.*;
+
+//--- Application imports ---
+import belka.mol.*;
+import belka.geom.*;
+
+/**
+ * Object of this class is a selection expression compiled into a flat
+ * program. Each linked expression gives a test, the boolean logic is kept
+ * as a sequence of operations in postfix order. Atoms of a molecule that
+ * satisfy the program are found with its inverted index: each test gives a
+ * bit set of atoms and operations are done on bit sets. Single atoms are
+ * checked by tests split by the levels of molecule, chain, assembly and
+ * atom, ranges of assembly numbers are checked by one comparison, chain
+ * identifiers by bit masks. Operation 'within' replaces the set of atoms by
+ * atoms close to them, they are found in cells built once over derived
+ * coordinates of the molecule.
+ *
+ * @author Alexej Abyzov
+ */
+class SelectProgram
+{
+    // Values of three-valued logic
+    private static final int FALSE   = 0;
+    private static final int TRUE    = 1;
+    private static final int UNKNOWN = 2;
+
+    // Operations
+    private static final int TEST = 0, NOT = 1, AND = 2, OR = 3, WITHIN = 4;
+
+    // Smallest side of cells for 'within' operation
+    private static final double MIN_CELL_SIDE = 2.0;
+
+    // Operations and indexes of tests for TEST operations or of radii for
+    // WITHIN operations
+    private int[] ops_  = new int[16];
+    private int[] args_ = new int[16];
+    private int   n_ops_ = 0;
+
+    // Tests
+    private Test[] tests_   = new Test[4];
+    private int    n_tests_ = 0;
+
+    // Radii of WITHIN operations
+    private double[] radii_     = new double[2];
+    private int      n_within_  = 0;
+
+    // Set of atoms satisfying the program for the last checked molecule
+    private Molecule  lastMol_   = null;
+    private AtomIndex lastIndex_ = null;
+    private BitSet    lastAtoms_ = null;
+
+    // Values of tests
+    private int[] val_ = null;
+
+    // Stack for evaluation
+    private int[] stack_ = null;
+
+    /**
+     * Adds test to the program and returns its index.
+     */
+    int addTest(String molName,String chainIds,String assemblyName,
+		boolean useNum,int numStart,int numEnd,
+		boolean useAssemblyAtt,int assemblyAtt,
+		String atomName,boolean useAtomAtt,int atomAtt)
+    {
+	Test t = new Test();
+	if (molName != null)      t.molName_  = new NameTest(molName);
+	if (chainIds != null)     t.chains_   = new ChainTest(chainIds);
+	if (assemblyName != null) t.assName_  = new NameTest(assemblyName);
+	if (atomName != null)     t.atomName_ = new NameTest(atomName);
+	t.useNum_ = useNum;
+	t.numStart_ = numStart;
+	t.numEnd_   = numEnd;
+	t.useAssAtt_ = useAssemblyAtt;
+	t.assAtt_    = assemblyAtt;
+	t.useAtomAtt_ = useAtomAtt;
+	t.atomAtt_    = atomAtt;
+	t.init();
+	if (n_tests_ == tests_.length) {
+	    Test[] tmp = new Test[2*n_tests_];
+	    System.arraycopy(tests_,0,tmp,0,n_tests_);
+	    tests_ = tmp;
+	}
+	tests_[n_tests_] = t;
+	addOperation(TEST,n_tests_);
+	return n_tests_++;
+    }
+
+    /**
+     * Adds 'not' operation on the last value.
+     */
+    void addNot() { addOperation(NOT,0); }
+
+    /**
+     * Adds 'and' operation on the two last values.
+     */
+    void addAnd() { addOperation(AND,0); }
+
+    /**
+     * Adds 'or' operation on the two last values.
+     */
+    void addOr() { addOperation(OR,0); }
+
+    /**
+     * Adds 'within' operation on the last value.
+     */
+    void addWithin(double radius)
+    {
+	if (n_within_ == radii_.length) {
+	    double[] tmp = new double[2*n_within_];
+	    System.arraycopy(radii_,0,tmp,0,n_within_);
+	    radii_ = tmp;
+	}
+	radii_[n_within_] = radius;
+	addOperation(WITHIN,n_within_++);
+    }
+
+    // Normalized text of the program
+    private String key_ = null;
+
+    /**
+     * Returns normalized text of the program. Programs with the same text
+     * are satisfied by the same atoms.
+     */
+    String getKey()
+    {
+	if (key_ != null) return key_;
+	StringBuffer ret = new StringBuffer();
+	for (int i = 0;i < n_ops_;i++) {
+	    int op = ops_[i];
+	    if      (op == TEST)   tests_[args_[i]].appendKey(ret);
+	    else if (op == NOT)    ret.append('!');
+	    else if (op == AND)    ret.append('&');
+	    else if (op == OR)     ret.append('|');
+	    else if (op == WITHIN) ret.append('~').append(radii_[args_[i]]);
+	    ret.append(' ');
+	}
+	key_ = ret.toString();
+	return key_;
+    }
+
+    /**
+     * Returns 'true' if the program checks whether atoms are selected.
+     */
+    boolean usesSelection()
+    {
+	int att = Atom.getSelectedAttribute();
+	for (int t = 0;t < n_tests_;t++)
+	    if (tests_[t].useAtomAtt_ && (tests_[t].atomAtt_ & att) != 0)
+		return true;
+	return false;
+    }
+
+    // Adds operation
+    private void addOperation(int op,int arg)
+    {
+	if (n_ops_ == ops_.length) {
+	    int[] tmp = new int[2*n_ops_];
+	    System.arraycopy(ops_,0,tmp,0,n_ops_);
+	    ops_ = tmp;
+	    tmp = new int[2*n_ops_];
+	    System.arraycopy(args_,0,tmp,0,n_ops_);
+	    args_ = tmp;
+	}
+	ops_[n_ops_]  = op;
+	args_[n_ops_] = arg;
+	n_ops_++;
+	val_ = null; // Arrays are made again
+	key_ = null;
+    }
+
+    // Makes arrays for values
+    private void prepare()
+    {
+	if (val_ != null) return;
+	val_   = new int[n_tests_];
+	stack_ = new int[n_ops_ + 1];
+    }
+
+    // Evaluates the program for values of tests at the level. Atoms close
+    // to the satisfying ones may be at other chains or assemblies, so only
+    // for the molecule they are known to be absent.
+    private int run(int[] vals,int level)
+    {
+	int top = 0;
+	for (int i = 0;i < n_ops_;i++) {
+	    int op = ops_[i];
+	    if (op == TEST) {
+		stack_[top++] = vals[args_[i]];
+	    } else if (op == NOT) {
+		int v = stack_[top - 1];
+		if (v != UNKNOWN) stack_[top - 1] = 1 - v;
+	    } else if (op == WITHIN) {
+		if (level != Test.MOL || stack_[top - 1] != FALSE)
+		    stack_[top - 1] = UNKNOWN;
+	    } else {
+		int v2 = stack_[--top], v1 = stack_[top - 1];
+		int v  = UNKNOWN;
+		if (op == AND) {
+		    if      (v1 == FALSE || v2 == FALSE) v = FALSE;
+		    else if (v1 == TRUE  && v2 == TRUE)  v = TRUE;
+		} else {
+		    if      (v1 == TRUE  || v2 == TRUE)  v = TRUE;
+		    else if (v1 == FALSE && v2 == FALSE) v = FALSE;
+		}
+		stack_[top - 1] = v;
+	    }
+	}
+	if (top == 0) return TRUE;
+	return stack_[top - 1];
+    }
+
+    /**
+     * Returns 'false' if no atom in the molecule satisfies the program.
+     */
+    boolean moleculeMaySatisfy(Molecule mol)
+    {
+	prepare();
+	for (int t = 0;t < n_tests_;t++)
+	    val_[t] = tests_[t].only(Test.MOL,tests_[t].pass(mol));
+	return run(val_,Test.MOL) != FALSE;
+    }
+
+    /**
+     * Returns 'false' if no atom in the chain satisfies the program.
+     */
+    boolean chainMaySatisfy(Chain chain)
+    {
+	prepare();
+	for (int t = 0;t < n_tests_;t++)
+	    val_[t] = tests_[t].only(Test.CHAIN,tests_[t].pass(chain));
+	return run(val_,Test.CHAIN) != FALSE;
+    }
+
+    /**
+     * Returns 'false' if no atom in the assembly satisfies the program.
+     */
+    boolean assemblyMaySatisfy(Assembly assembly)
+    {
+	prepare();
+	for (int t = 0;t < n_tests_;t++) {
+	    Test test = tests_[t];
+	    val_[t] = test.only(Test.ASSEMBLY,test.pass(assembly));
+	}
+	return run(val_,Test.ASSEMBLY) != FALSE;
+    }
+
+    /**
+     * Returns 'false' if the atom does not satisfy the program in any
+     * assembly.
+     */
+    boolean atomMaySatisfy(Atom atom)
+    {
+	prepare();
+	for (int t = 0;t < n_tests_;t++)
+	    val_[t] = tests_[t].only(Test.ATOM,tests_[t].pass(atom));
+	return run(val_,Test.ATOM) != FALSE;
+    }
+
+    /**
+     * Checks if the atom satisfies the program. Levels given as null are
+     * not checked. Programs with 'within' are checked by the set of
+     * satisfying atoms of the molecule, which is kept for the last molecule.
+     */
+    boolean satisfy(Molecule mol,Chain chain,Assembly assembly,Atom atom)
+    {
+	if (n_within_ > 0) return satisfyBySet(mol,chain,assembly,atom);
+	prepare();
+	for (int t = 0;t < n_tests_;t++) {
+	    Test test = tests_[t];
+	    int v = TRUE;
+	    if (mol != null && !test.pass(mol)) v = FALSE;
+	    else if (chain != null && !test.pass(chain)) v = FALSE;
+	    else if (assembly != null && !test.pass(assembly)) v = FALSE;
+	    else if (atom != null && !test.pass(atom)) v = FALSE;
+	    val_[t] = v;
+	}
+	return run(val_,Test.ATOM) == TRUE;
+    }
+
+    // Checks if the atom or any atom of the assembly or chain, whichever is
+    // given first, is in the set of satisfying atoms
+    private boolean satisfyBySet(Molecule mol,Chain chain,Assembly assembly,
+				 Atom atom)
+    {
+	if (mol == null) return false;
+	AtomIndex index = mol.atomIndex();
+	if (mol != lastMol_ || index != lastIndex_) {
+	    lastAtoms_ = atoms(mol);
+	    lastMol_   = mol;
+	    lastIndex_ = index;
+	}
+	BitSet set = lastAtoms_;
+	if (atom != null) {
+	    int i = index.getNumber(atom);
+	    return (i >= 0 && set.get(i));
+	}
+	if (assembly != null) {
+	    for (int is = 0;is < index.countAssemblies();is++)
+		if (index.getAssembly(is) == assembly)
+		    return anyIn(set,index.getAssemblyStart(is),
+				 index.getAssemblyEnd(is));
+	    return false;
+	}
+	if (chain != null) {
+	    for (int ic = 0;ic < index.countChains();ic++)
+		if (index.getChain(ic) == chain)
+		    return anyIn(set,index.getChainStart(ic),
+				 index.getChainEnd(ic));
+	    return false;
+	}
+	return !set.isEmpty();
+    }
+
+    // Checks if any number from 'from' to 'to' - 1 is in the set
+    private static boolean anyIn(BitSet set,int from,int to)
+    {
+	int i = set.nextSetBit(from);
+	return (i >= 0 && i < to);
+    }
+
+    /**
+     * Returns set of atoms of the molecule satisfying the program. Atoms are
+     * numbered as in the index of atoms of the molecule.
+     */
+    BitSet atoms(Molecule mol)
+    {
+	AtomIndex index = mol.atomIndex();
+	double[] coords = null;
+	int n = index.size();
+	BitSet[] stack = new BitSet[n_ops_ + 1];
+	int top = 0;
+	for (int i = 0;i < n_ops_;i++) {
+	    int op = ops_[i];
+	    if (op == TEST) {
+		stack[top++] = tests_[args_[i]].atoms(mol,index);
+	    } else if (op == NOT) {
+		stack[top - 1].flip(0,n);
+	    } else if (op == WITHIN) {
+		if (coords == null) coords = mol.getDerivedCoordinates();
+		stack[top - 1] =
+		    within(coords,n,stack[top - 1],radii_[args_[i]]);
+	    } else {
+		BitSet set = stack[--top];
+		if (op == AND) stack[top - 1].and(set);
+		else           stack[top - 1].or(set);
+	    }
+	}
+	if (top > 0) return stack[top - 1];
+	BitSet ret = new BitSet(n);
+	ret.set(0,n);
+	return ret;
+    }
+
+    // Returns set of atoms within the radius from atoms of the set. Cells
+    // are built once and searched around each atom of the set.
+    private static BitSet within(double[] coords,int n,BitSet set,
+				 double radius)
+    {
+	BitSet ret = new BitSet(n);
+	if (set.isEmpty() || radius < 0) return ret;
+	CellList cells = new CellList(Math.max(radius,MIN_CELL_SIDE));
+	if (!cells.build(coords,n)) return ret;
+	for (int i = set.nextSetBit(0);i >= 0;i = set.nextSetBit(i + 1)) {
+	    int[] near = cells.findWithin(coords[3*i],coords[3*i + 1],
+					  coords[3*i + 2],radius);
+	    for (int k = 0;k < near.length;k++) ret.set(near[k]);
+	}
+	return ret;
+    }
+
+    // Test of one linked expression
+    private static class Test
+    {
+	static final int MOL = 0, CHAIN = 1, ASSEMBLY = 2, ATOM = 3;
+
+	NameTest  molName_  = null;
+	ChainTest chains_   = null;
+	NameTest  assName_  = null;
+	boolean   useNum_   = false;
+	int       numStart_ = 0, numEnd_ = 0;
+	boolean   useAssAtt_ = false;
+	int       assAtt_    = 0;
+	NameTest  atomName_  = null;
+	boolean   useAtomAtt_ = false;
+	int       atomAtt_    = 0;
+
+	// Levels with tests
+	private boolean[] has_ = new boolean[ATOM + 1];
+
+	// Finds levels with tests
+	void init()
+	{
+	    has_[MOL]      = molName_ != null;
+	    has_[CHAIN]    = chains_  != null;
+	    has_[ASSEMBLY] = assName_ != null || useNum_ || useAssAtt_;
+	    has_[ATOM]     = atomName_ != null || useAtomAtt_;
+	}
+
+	// Returns value when only the level is checked
+	int only(int level,boolean pass)
+	{
+	    if (!pass) return FALSE;
+	    for (int l = MOL;l <= ATOM;l++)
+		if (l != level && has_[l]) return UNKNOWN;
+	    return TRUE;
+	}
+
+	// Appends normalized text of the test. Names are compared ignoring
+	// case and order of chain identifiers does not matter.
+	void appendKey(StringBuffer buf)
+	{
+	    buf.append('{');
+	    if (molName_ != null)
+		buf.append("m=").append(molName_.name_.toLowerCase()).append(';');
+	    if (chains_ != null) {
+		char[] ids = chains_.ids_.toCharArray();
+		Arrays.sort(ids);
+		buf.append("c=").append(ids).append(';');
+	    }
+	    if (assName_ != null)
+		buf.append("s=").append(assName_.name_.toLowerCase()).append(';');
+	    if (useNum_)
+		buf.append("n=").append(numStart_).append(':').append(numEnd_)
+		    .append(';');
+	    if (useAssAtt_)  buf.append("sa=").append(assAtt_).append(';');
+	    if (atomName_ != null)
+		buf.append("a=").append(atomName_.name_.toLowerCase())
+		    .append(';');
+	    if (useAtomAtt_) buf.append("aa=").append(atomAtt_).append(';');
+	    buf.append('}');
+	}
+
+	// Returns set of atoms passing all levels
+	BitSet atoms(Molecule mol,AtomIndex index)
+	{
+	    BitSet ret = new BitSet(index.size());
+	    if (!pass(mol)) return ret;
+	    ret.set(0,index.size());
+	    if (chains_ != null)
+		ret.and(index.atomsInChains(chains_.ids_));
+	    if (assName_ != null)
+		ret.and(index.atomsInAssembliesNamed(assName_.name_));
+	    if (useNum_)
+		ret.and(index.atomsInAssemblyRange(numStart_,numEnd_));
+	    if (useAssAtt_)
+		ret.and(index.atomsInAssembliesWith(assAtt_));
+	    if (atomName_ != null)
+		ret.and(index.atomsNamed(atomName_.name_));
+	    if (useAtomAtt_)
+		ret.and(index.atomsWith(atomAtt_));
+	    return ret;
+	}
+
+	boolean pass(Molecule mol)
+	{
+	    return (molName_ == null ||
+		    molName_.test(mol.getName()) ||
+		    molName_.test(mol.getPDBCode()));
+	}
+
+	boolean pass(Chain chain)
+	{
+	    return (chains_ == null || chains_.test(chain.getId()));
+	}
+
+	boolean pass(Assembly ass)
+	{
+	    if (assName_ != null && !assName_.test(ass.getName()))
+		return false;
+	    if (useNum_) {
+		int num = ass.getSerialNum();
+		if (num < numStart_ || num > numEnd_) return false;
+	    }
+	    return (!useAssAtt_ || ass.hasAttribute(assAtt_));
+	}
+
+	boolean pass(Atom atom)
+	{
+	    if (atomName_ != null && !atomName_.test(atom.getName()))
+		return false;
+	    return (!useAtomAtt_ || atom.hasAttribute(atomAtt_));
+	}
+    }
+
+    // Test of a name ignoring case. Parsers intern names of atoms and
+    // assemblies, so results for recently seen strings are kept.
+    private static class NameTest
+    {
+	private static final int CACHE_SIZE = 16;
+
+	private String    name_  = null;
+	private String[]  seen_  = new String[CACHE_SIZE];
+	private boolean[] match_ = new boolean[CACHE_SIZE];
+
+	NameTest(String name) { name_ = name; }
+
+	boolean test(String str)
+	{
+	    if (str == null) return false;
+	    int ind = System.identityHashCode(str) & (CACHE_SIZE - 1);
+	    if (seen_[ind] == str) return match_[ind];
+	    boolean ret = name_.equalsIgnoreCase(str);
+	    seen_[ind]  = str;
+	    match_[ind] = ret;
+	    return ret;
+	}
+    }
+
+    // Test of chain identifier by bit mask
+    private static class ChainTest
+    {
+	private long   low_  = 0, high_ = 0; // Bits for ASCII characters
+	private String ids_  = null;
+
+	ChainTest(String ids)
+	{
+	    ids_ = ids;
+	    for (int i = 0;i < ids.length();i++) {
+		char c = ids.charAt(i);
+		if      (c < 64)  low_  |= 1L << c;
+		else if (c < 128) high_ |= 1L << (c - 64);
+	    }
+	}
+
+	boolean test(char id)
+	{
+	    if (id < 64)  return (low_  & (1L << id)) != 0;
+	    if (id < 128) return (high_ & (1L << (id - 64))) != 0;
+	    return ids_.indexOf(id) >= 0;
+	}
+    }
+}
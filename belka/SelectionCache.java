@@ -0,0 +1,117 @@
+package belka;
+
+//--- Java imports ---
+import java.util.*;
+
+//--- Application imports ---
+import belka.mol.*;
+
+/**
+ * Object of this class keeps sets of atoms satisfying recently used
+ * selections. Sets are kept for pairs of selection program and molecule,
+ * programs are identified by their normalized text, and the least
+ * recently used pair is dropped when the cache is full. A set is used while
+ * the modification counter of the molecule and, for programs checking
+ * selected atoms, the selection counter are the same as when the set was
+ * found. Selections defined by name are kept in the same object, so their
+ * sets are found in the cache when the names are used.
+ *
+ * @author Alexej Abyzov
+ */
+class SelectionCache
+{
+    // Default number of kept sets
+    static final int DEFAULT_SIZE = 64;
+
+    // Maximal number of kept sets
+    private int maxSize_ = DEFAULT_SIZE;
+
+    // Sets by program text and molecule, in the order of use
+    private LinkedHashMap<String,Entry> sets_ =
+	new LinkedHashMap<String,Entry>(16,0.75f,true) {
+	    protected boolean removeEldestEntry(Map.Entry<String,Entry> e)
+	    {
+		return size() > maxSize_;
+	    }
+	};
+
+    // Selections by lower case name
+    private HashMap<String,SelectExpression> defined_ =
+	new HashMap<String,SelectExpression>();
+
+    /**
+     * Object constructor.
+     *
+     * @param maxSize maximal number of kept sets.
+     */
+    SelectionCache(int maxSize)
+    {
+	maxSize_ = maxSize;
+    }
+
+    /**
+     * Returns set of atoms of the molecule satisfying the program. The set
+     * is shared and must not be changed.
+     *
+     * @param prog program of the selection.
+     * @param mol molecule to check.
+     * @return set of atom numbers.
+     */
+    synchronized BitSet atoms(SelectProgram prog,Molecule mol)
+    {
+	String key = prog.getKey() + '@' + System.identityHashCode(mol);
+	long count    = mol.getModificationCount();
+	long selCount = prog.usesSelection() ? mol.getSelectionCount() : 0;
+	Entry e = sets_.get(key);
+	if (e != null && e.mol_ == mol && e.count_ == count &&
+	    e.selCount_ == selCount) return e.atoms_;
+	e = new Entry();
+	e.mol_      = mol;
+	e.count_    = count;
+	e.selCount_ = selCount;
+	e.atoms_    = prog.atoms(mol);
+	sets_.put(key,e);
+	return e.atoms_;
+    }
+
+    /**
+     * Defines selection by name. Previous selection with the same name is
+     * replaced.
+     *
+     * @param name name of the selection, case is ignored.
+     * @param expr selection expression.
+     */
+    synchronized void define(String name,SelectExpression expr)
+    {
+	defined_.put(name.toLowerCase(),expr);
+    }
+
+    /**
+     * Returns selection defined by name.
+     *
+     * @param name name of the selection, case is ignored.
+     * @return selection expression or null if no selection has the name.
+     */
+    synchronized SelectExpression getDefined(String name)
+    {
+	if (name == null) return null;
+	return defined_.get(name.toLowerCase());
+    }
+
+    /**
+     * Drops all kept sets. Defined selections are kept.
+     */
+    synchronized void clear()
+    {
+	sets_.clear();
+    }
+
+    // Set of atoms with counters of the molecule when it was found
+    private static class Entry
+    {
+	Molecule mol_      = null;
+	long     count_    = 0;
+	long     selCount_ = 0;
+	BitSet   atoms_    = null;
+    }
+}
@@ -0,0 +1,215 @@
+package belka.chem;
+
+//--- Java imports ---
+import java.util.*;
+
+/**
+ * Objects of this class describe covalent bonds between atoms of a
+ * compound. Atoms are identified by their names and get indexes in the
+ * order they are first mentioned. The template also names atoms which link
+ * the compound to the previous one (head) and to the next one (tail) in a
+ * chain, and atoms which can bond to other compounds not in the chain
+ * order, for example sulfur of cysteine in disulfide bridges.
+ *
+ * @author Alexej Abyzov
+ */
+public class BondTemplate
+{
+    // Bonds of protein backbone
+    private static final String[] BACKBONE = {
+	"N CA","CA C","C O","C OXT"
+    };
+
+    // Bonds of nucleic acid backbone
+    private static final String[] SUGAR_PHOSPHATE = {
+	"OP3 P","P OP1","P OP2","P O5'","O5' C5'","C5' C4'","C4' O4'",
+	"C4' C3'","C3' O3'","C3' C2'","C2' O2'","C2' C1'","C1' O4'"
+    };
+
+    // Old names of atoms
+    private static final String[][] ALIASES = {
+	{"O1P","OP1"},{"O2P","OP2"},{"O3P","OP3"},{"C5M","C7"}
+    };
+
+    // Atom indexes by name
+    private HashMap<String,Integer> index_ = new HashMap<String,Integer>();
+
+    // Names of atoms by index
+    private ArrayList<String> names_ = new ArrayList<String>();
+
+    // Indexes of bonded atoms in pairs
+    private int[] bonds_ = null;
+
+    // Indexes of head and tail atoms
+    private int head_ = -1, tail_ = -1;
+
+    // Atoms bonding outside of the chain order
+    private boolean[] bridge_ = null;
+
+    /**
+     * Creates template from the list of bonds.
+     *
+     * @param bonds bonds given by names of two atoms separated by space.
+     * @param head name of the atom linked to the previous compound, can
+     * be null.
+     * @param tail name of the atom linked to the next compound, can be
+     * null.
+     * @param bridges names of atoms which bond outside of the chain order,
+     * can be null.
+     */
+    public BondTemplate(String[] bonds,String head,String tail,
+			String[] bridges)
+    {
+	bonds_ = new int[2*bonds.length];
+	for (int b = 0;b < bonds.length;b++) {
+	    int ind = bonds[b].indexOf(' ');
+	    bonds_[2*b]     = addAtom(bonds[b].substring(0,ind));
+	    bonds_[2*b + 1] = addAtom(bonds[b].substring(ind + 1));
+	}
+	if (head != null) head_ = addAtom(head);
+	if (tail != null) tail_ = addAtom(tail);
+	bridge_ = new boolean[names_.size()];
+	if (bridges != null)
+	    for (int i = 0;i < bridges.length;i++) {
+		int ind = getAtomIndex(bridges[i]);
+		if (ind >= 0) bridge_[ind] = true;
+	    }
+    }
+
+    // Adds atom if it is new and returns its index
+    private int addAtom(String name)
+    {
+	Integer ret = index_.get(name);
+	if (ret != null) return ret;
+	ret = names_.size();
+	index_.put(name,ret);
+	names_.add(name);
+	return ret;
+    }
+
+    /**
+     * Creates template for an amino acid. Backbone bonds are added to the
+     * bonds of the side chain.
+     *
+     * @param side bonds of the side chain.
+     * @param bridges names of atoms which bond outside of the chain order,
+     * can be null.
+     *
+     * @return template for the amino acid.
+     */
+    public static BondTemplate aminoAcid(String[] side,String[] bridges)
+    {
+	return new BondTemplate(join(BACKBONE,side),"N","C",bridges);
+    }
+
+    /**
+     * Creates template for a nucleotide. Bonds of sugar and phosphate are
+     * added to the bonds of the base.
+     *
+     * @param base bonds of the base.
+     *
+     * @return template for the nucleotide.
+     */
+    public static BondTemplate nucleotide(String[] base)
+    {
+	return new BondTemplate(join(SUGAR_PHOSPHATE,base),"P","O3'",null);
+    }
+
+    // Joins two lists of bonds
+    private static String[] join(String[] bonds1,String[] bonds2)
+    {
+	String[] ret = new String[bonds1.length + bonds2.length];
+	System.arraycopy(bonds1,0,ret,0,bonds1.length);
+	System.arraycopy(bonds2,0,ret,bonds1.length,bonds2.length);
+	return ret;
+    }
+
+    /**
+     * Returns number of atoms in the template.
+     *
+     * @return number of atoms in the template.
+     */
+    public int countAtoms() { return names_.size(); }
+
+    /**
+     * Returns name of the atom with given index.
+     *
+     * @param ind index of the atom.
+     *
+     * @return name of the atom.
+     */
+    public String getAtomName(int ind) { return names_.get(ind); }
+
+    /**
+     * Returns index of the atom with given name. Old names, like 'O1P' or
+     * names with '*' instead of prime, are recognized.
+     *
+     * @param name name of the atom.
+     *
+     * @return index of the atom, -1 if there is no such atom in the
+     * template.
+     */
+    public int getAtomIndex(String name)
+    {
+	if (name == null) return -1;
+	Integer ret = index_.get(name);
+	if (ret != null) return ret;
+	name = name.replace('*','\'');
+	for (int i = 0;i < ALIASES.length;i++)
+	    if (ALIASES[i][0].equals(name)) name = ALIASES[i][1];
+	ret = index_.get(name);
+	if (ret == null) return -1;
+	return ret;
+    }
+
+    /**
+     * Returns number of bonds in the template.
+     *
+     * @return number of bonds in the template.
+     */
+    public int countBonds() { return bonds_.length/2; }
+
+    /**
+     * Returns index of the first atom of the bond.
+     *
+     * @param b index of the bond.
+     *
+     * @return index of the first atom.
+     */
+    public int getFAtomIndex(int b) { return bonds_[2*b]; }
+
+    /**
+     * Returns index of the second atom of the bond.
+     *
+     * @param b index of the bond.
+     *
+     * @return index of the second atom.
+     */
+    public int getSAtomIndex(int b) { return bonds_[2*b + 1]; }
+
+    /**
+     * Returns index of the atom linked to the previous compound in a
+     * chain.
+     *
+     * @return index of the head atom, -1 if there is no such atom.
+     */
+    public int getHeadIndex() { return head_; }
+
+    /**
+     * Returns index of the atom linked to the next compound in a chain.
+     *
+     * @return index of the tail atom, -1 if there is no such atom.
+     */
+    public int getTailIndex() { return tail_; }
+
+    /**
+     * Checks if the atom can bond to other compounds not in the chain
+     * order.
+     *
+     * @param ind index of the atom.
+     *
+     * @return 'true' if the atom can bond outside of the chain order,
+     * 'false' otherwise.
+     */
+    public boolean isBridge(int ind) { return bridge_[ind]; }
+}
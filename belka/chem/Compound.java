@@ -13,6 +13,9 @@ import java.io.*;
  */
 public class Compound implements Serializable
 {
+    // Same as before bond templates were added
+    private static final long serialVersionUID = 2785098654826534177L;
+
     // Hash by name
     private static Hashtable<String,Compound> hash_by_name_ =
 	new Hashtable<String,Compound>(50);
@@ -148,6 +151,22 @@ public class Compound implements Serializable
     public final static Compound Uracil = 
 	new Compound("Uracil","DU",'U',new Color(255,255,112));
 
+    /** Adenosine (ribonucleotide) */
+    public final static Compound Adenosine = 
+	new Compound("Adenosine","A",'A',new Color(140,255,140));
+
+    /** Cytidine (ribonucleotide) */
+    public final static Compound Cytidine = 
+	new Compound("Cytidine","C",'C',new Color(255,255,112));
+
+    /** Guanosine (ribonucleotide) */
+    public final static Compound Guanosine = 
+	new Compound("Guanosine","G",'G',new Color(255,255,255));
+
+    /** Uridine (ribonucleotide) */
+    public final static Compound Uridine = 
+	new Compound("Uridine","U",'U',new Color(255,255,112));
+
     /** Adenine or Guanine (ambiguous) */
     public final static Compound Adenine_or_Guanine =
 	new Compound("Purine","Pur",'R',new Color(255,0,255));
@@ -196,6 +215,84 @@ public class Compound implements Serializable
     public final static Compound h2o = 
 	new Compound("Water","H2O",'X',new Color(255,0,0));
 
+    // Bond templates of amino acids and nucleotides. Heteroatoms of side
+    // chains which form crosslinks, e.g. disulfide bridges or isopeptide
+    // bonds, are bridge atoms.
+    static {
+	Alanine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB"},null);
+	Arginine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD","CD NE","NE CZ","CZ NH1",
+		"CZ NH2"},null);
+	Asparagine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG OD1","CG ND2"},null);
+	Aspartate.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG OD1","CG OD2"},null);
+	Cysteine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB SG"},new String[] {"SG"});
+	Glutamate.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD","CD OE1","CD OE2"},null);
+	Glutamine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD","CD OE1","CD NE2"},null);
+	Glycine.template_ = BondTemplate.aminoAcid(new String[0],null);
+	Histidine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG ND1","CG CD2","ND1 CE1","CD2 NE2",
+		"CE1 NE2"},new String[] {"ND1","NE2"});
+	Isoleucine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG1","CB CG2","CG1 CD1"},null);
+	Leucine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD1","CG CD2"},null);
+	Lysine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD","CD CE","CE NZ"},new String[] {"NZ"});
+	Methionine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG SD","SD CE"},null);
+	Selenomethionine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG SE","SE CE"},null);
+	Phenylalanine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD1","CG CD2","CD1 CE1","CD2 CE2",
+		"CE1 CZ","CE2 CZ"},null);
+	Proline.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD","CD N"},null);
+	Serine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB OG"},new String[] {"OG"});
+	Threonine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB OG1","CB CG2"},new String[] {"OG1"});
+	Tyrosine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD1","CG CD2","CD1 CE1","CD2 CE2",
+		"CE1 CZ","CE2 CZ","CZ OH"},new String[] {"OH"});
+	Tryptophan.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG","CG CD1","CG CD2","CD1 NE1","NE1 CE2",
+		"CD2 CE2","CD2 CE3","CE2 CZ2","CE3 CZ3","CZ2 CH2",
+		"CZ3 CH2"},null);
+	Valine.template_ = BondTemplate.aminoAcid(new String[] {
+		"CA CB","CB CG1","CB CG2"},null);
+
+	String[] adenine = {
+	    "C1' N9","N9 C8","C8 N7","N7 C5","C5 C6","C6 N6","C6 N1",
+	    "N1 C2","C2 N3","N3 C4","C4 C5","C4 N9"};
+	String[] guanine = {
+	    "C1' N9","N9 C8","C8 N7","N7 C5","C5 C6","C6 O6","C6 N1",
+	    "N1 C2","C2 N2","C2 N3","N3 C4","C4 C5","C4 N9"};
+	String[] cytosine = {
+	    "C1' N1","N1 C2","C2 O2","C2 N3","N3 C4","C4 N4","C4 C5",
+	    "C5 C6","C6 N1"};
+	String[] thymine = {
+	    "C1' N1","N1 C2","C2 O2","C2 N3","N3 C4","C4 O4","C4 C5",
+	    "C5 C7","C5 C6","C6 N1"};
+	String[] uracil = {
+	    "C1' N1","N1 C2","C2 O2","C2 N3","N3 C4","C4 O4","C4 C5",
+	    "C5 C6","C6 N1"};
+	Adenine.template_   = BondTemplate.nucleotide(adenine);
+	Guanine.template_   = BondTemplate.nucleotide(guanine);
+	Cytosine.template_  = BondTemplate.nucleotide(cytosine);
+	Thymine.template_   = BondTemplate.nucleotide(thymine);
+	Uracil.template_    = BondTemplate.nucleotide(uracil);
+	Adenosine.template_ = BondTemplate.nucleotide(adenine);
+	Guanosine.template_ = BondTemplate.nucleotide(guanine);
+	Cytidine.template_  = BondTemplate.nucleotide(cytosine);
+	Uridine.template_   = BondTemplate.nucleotide(uracil);
+    }
+
     // Constructor
     public Compound(String name,String short_name,char letter,
 		     Color col)
@@ -267,6 +364,21 @@ public class Compound implements Serializable
      */
     public Color getColor() { return col_; }
 
+    // Bond template
+    private transient BondTemplate template_ = null;
+    /**
+     * Returns template of covalent bonds between atoms of the compound.
+     *
+     * @return template of bonds, null if compound does not have it.
+     */
+    public BondTemplate getBondTemplate()
+    {
+	if (template_ != null) return template_;
+	Compound comp = getCompoundByShortName(short_name_); // Deserialized
+	if (comp == null || comp == this) return null;
+	return comp.template_;
+    }
+
     
     /**
      * Returns compound with given name.
@@ -0,0 +1,299 @@
+package  belka.geom;
+
+//--- Java imports ---
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The class finds points close to each other. Points are sorted into cubic
+ * cells with side not smaller than the cutoff, so neighbors of a point
+ * within the cutoff are in the same or adjacent cells. Points are given by
+ * packed coordinates and are referred to by their indexes. Each object
+ * keeps its own cells, so different threads can use different objects at
+ * the same time.
+ *
+ * @author Alexej Abyzov
+ */
+public class CellList
+{
+    // Number of points for which cells are sorted by several threads
+    private static final int MIN_POINTS_PER_THREAD = 1 << 15;
+
+    // Cells for each point are kept for at most that many points per cell
+    private static final int MAX_CELLS_PER_POINT = 4;
+
+    // Cutoff and side of cells
+    private double cutoff_ = 0;
+    private double side_   = 0;
+
+    // Grid
+    private double minX_ = 0, minY_ = 0, minZ_ = 0;
+    private int    nx_ = 0, ny_ = 0, nz_ = 0;
+
+    // Points sorted by cells. Points of cell c are in positions from
+    // cellStart_[c] to cellStart_[c + 1] - 1.
+    private int      n_points_  = 0;
+    private int[]    cellStart_ = null;
+    private int[]    order_     = null; // Index of point at position
+    private double[] sorted_    = null; // Packed coordinates by position
+
+    /**
+     * Object constructor.
+     *
+     * @param cutoff distance within which points are neighbors.
+     */
+    public CellList(double cutoff)
+    {
+	cutoff_ = cutoff;
+    }
+
+    /**
+     * Returns distance within which points are neighbors.
+     *
+     * @return the cutoff.
+     */
+    public double getCutoff() { return cutoff_; }
+
+    /**
+     * Returns number of points.
+     *
+     * @return number of points.
+     */
+    public int size() { return n_points_; }
+
+    /**
+     * Sorts points into cells.
+     *
+     * @param coords coordinates of points packed as x, y and z.
+     * @param n number of points.
+     *
+     * @return 'true' if successful, 'false' otherwise.
+     */
+    public boolean build(double[] coords,int n)
+    {
+	return build(coords,n,1);
+    }
+
+    /**
+     * Sorts points into cells using several threads. Result is the same as
+     * with one thread.
+     *
+     * @param coords coordinates of points packed as x, y and z.
+     * @param n number of points.
+     * @param n_threads maximal number of threads.
+     *
+     * @return 'true' if successful, 'false' otherwise.
+     */
+    public boolean build(final double[] coords,int n,int n_threads)
+    {
+	n_points_ = 0;
+	if (cutoff_ <= 0) {
+	    System.err.println("Cutoff for neighbor search must be positive.");
+	    return false;
+	}
+	if (coords == null || coords.length < 3*n) {
+	    System.err.println("Not enough coordinates for neighbor search.");
+	    return false;
+	}
+
+	// Finding bounding box
+	double maxX = 0, maxY = 0, maxZ = 0;
+	minX_ = minY_ = minZ_ = 0;
+	if (n > 0) {
+	    minX_ = maxX = coords[0];
+	    minY_ = maxY = coords[1];
+	    minZ_ = maxZ = coords[2];
+	}
+	for (int i = 1;i < n;i++) {
+	    double x = coords[3*i], y = coords[3*i + 1], z = coords[3*i + 2];
+	    if (x < minX_) minX_ = x; if (x > maxX) maxX = x;
+	    if (y < minY_) minY_ = y; if (y > maxY) maxY = y;
+	    if (z < minZ_) minZ_ = z; if (z > maxZ) maxZ = z;
+	}
+
+	// Cells are made larger for sparse points
+	long max_cells = (long)MAX_CELLS_PER_POINT*n + 64;
+	side_ = cutoff_;
+	while (true) {
+	    nx_ = (int)((maxX - minX_)/side_) + 1;
+	    ny_ = (int)((maxY - minY_)/side_) + 1;
+	    nz_ = (int)((maxZ - minZ_)/side_) + 1;
+	    if ((long)nx_*ny_*nz_ <= max_cells) break;
+	    side_ *= 1.5;
+	}
+	final int n_cells = nx_*ny_*nz_;
+
+	// Calculating cell of each point and sorting points by counting
+	final int[] cell = new int[n];
+	cellStart_ = new int[n_cells + 1];
+	order_     = new int[n];
+	sorted_    = new double[3*n];
+	int n_parts = Math.max(1,Math.min(n_threads,n/MIN_POINTS_PER_THREAD));
+	if (n_parts == 1) {
+	    int[] count = new int[n_cells];
+	    assignCells(coords,0,n,cell,count);
+	    int pos = 0;
+	    for (int c = 0;c < n_cells;c++) {
+		cellStart_[c] = pos;
+		pos += count[c];
+		count[c] = cellStart_[c];
+	    }
+	    cellStart_[n_cells] = pos;
+	    scatter(coords,0,n,cell,count);
+	} else if (!buildParallel(coords,n,n_parts,cell)) return false;
+
+	n_points_ = n;
+	return true;
+    }
+
+    // Sorts points into cells by several threads. Each thread counts and
+    // then places points of its own part, parts are placed one after
+    // another within each cell.
+    private boolean buildParallel(final double[] coords,int n,int n_parts,
+				  final int[] cell)
+    {
+	int n_cells = nx_*ny_*nz_;
+	final int[][] count = new int[n_parts][n_cells];
+	final int[] from = new int[n_parts + 1];
+	for (int p = 0;p <= n_parts;p++)
+	    from[p] = (int)((long)n*p/n_parts);
+
+	ExecutorService pool = Executors.newFixedThreadPool(n_parts);
+	try {
+	    ArrayList<Future<Object>> parts = new ArrayList<Future<Object>>();
+	    for (int p = 0;p < n_parts;p++) {
+		final int part = p;
+		parts.add(pool.submit(new Callable<Object>() {
+			public Object call()
+			{
+			    assignCells(coords,from[part],from[part + 1],cell,
+					count[part]);
+			    return null;
+			}
+		    }));
+	    }
+	    for (Future<Object> part : parts) part.get();
+
+	    // Positions of parts in cells
+	    int pos = 0;
+	    for (int c = 0;c < n_cells;c++) {
+		cellStart_[c] = pos;
+		for (int p = 0;p < n_parts;p++) {
+		    int cnt = count[p][c];
+		    count[p][c] = pos;
+		    pos += cnt;
+		}
+	    }
+	    cellStart_[n_cells] = pos;
+
+	    parts.clear();
+	    for (int p = 0;p < n_parts;p++) {
+		final int part = p;
+		parts.add(pool.submit(new Callable<Object>() {
+			public Object call()
+			{
+			    scatter(coords,from[part],from[part + 1],cell,
+				    count[part]);
+			    return null;
+			}
+		    }));
+	    }
+	    for (Future<Object> part : parts) part.get();
+	} catch (Exception e) {
+	    System.err.println("Exception while sorting points into cells.");
+	    System.err.println(e.toString());
+	    return false;
+	} finally {
+	    pool.shutdown();
+	}
+	return true;
+    }
+
+    // Calculates cells of points and counts points in each cell
+    private void assignCells(double[] coords,int from,int to,int[] cell,
+			     int[] count)
+    {
+	for (int i = from;i < to;i++) {
+	    int c = cellOf(coords[3*i],coords[3*i + 1],coords[3*i + 2]);
+	    cell[i] = c;
+	    count[c]++;
+	}
+    }
+
+    // Places points into their cells starting from given positions
+    private void scatter(double[] coords,int from,int to,int[] cell,
+			 int[] pos)
+    {
+	for (int i = from;i < to;i++) {
+	    int p = pos[cell[i]]++;
+	    order_[p] = i;
+	    sorted_[3*p]     = coords[3*i];
+	    sorted_[3*p + 1] = coords[3*i + 1];
+	    sorted_[3*p + 2] = coords[3*i + 2];
+	}
+    }
+
+    // Returns cell of a point inside of the grid
+    private int cellOf(double x,double y,double z)
+    {
+	int ix = (int)((x - minX_)/side_);
+	int iy = (int)((y - minY_)/side_);
+	int iz = (int)((z - minZ_)/side_);
+	return (ix*ny_ + iy)*nz_ + iz;
+    }
+
+    // Returns index of cell along axis, clamped to the grid
+    private static int clamp(double val,int n)
+    {
+	if (val < 0) return 0;
+	if (val >= n) return n - 1;
+	return (int)val;
+    }
+
+    /**
+     * Returns indexes of points within given distance from a point. The
+     * distance can be larger than the cutoff.
+     *
+     * @param x x coordinate of the point.
+     * @param y y coordinate of the point.
+     * @param z z coordinate of the point.
+     * @param radius distance from the point.
+     *
+     * @return indexes of points.
+     */
+    public int[] findWithin(double x,double y,double z,double radius)
+    {
+	int[] ret = new int[16];
+	int n = 0;
+	if (n_points_ == 0 || radius < 0) return new int[0];
+	double r2 = radius*radius;
+	int x0 = clamp((x - radius - minX_)/side_,nx_);
+	int x1 = clamp((x + radius - minX_)/side_,nx_);
+	int y0 = clamp((y - radius - minY_)/side_,ny_);
+	int y1 = clamp((y + radius - minY_)/side_,ny_);
+	int z0 = clamp((z - radius - minZ_)/side_,nz_);
+	int z1 = clamp((z + radius - minZ_)/side_,nz_);
+	for (int ix = x0;ix <= x1;ix++)
+	    for (int iy = y0;iy <= y1;iy++) {
+		int c = (ix*ny_ + iy)*nz_;
+		int end = cellStart_[c + z1 + 1];
+		for (int p = cellStart_[c + z0];p < end;p++) {
+		    double dx = sorted_[3*p]     - x;
+		    double dy = sorted_[3*p + 1] - y;
+		    double dz = sorted_[3*p + 2] - z;
+		    if (dx*dx + dy*dy + dz*dz > r2) continue;
+		    if (n == ret.length) ret = grow(ret,2*n);
+		    ret[n++] = order_[p];
+		}
+	    }
+	return grow(ret,n);
+    }
+
+    // Returns copy of array with given length
+    private static int[] grow(int[] arr,int len)
+    {
+	int[] ret = new int[len];
+	System.arraycopy(arr,0,ret,0,Math.min(len,arr.length));
+	return ret;
+    }
+}
@@ -86,6 +86,7 @@ public class Displacer
 	relative_index_ = new int[n_rigids + 1];
 
 	// Rotation and translation for global superposition
+	ResidueIndex ri1 = chain1.residueIndex(), ri2 = chain2.residueIndex();
 	Atom[] atoms1 = new Atom[nAligned];
 	Atom[] atoms2 = new Atom[nAligned];
 	int index = 0;
@@ -93,8 +94,8 @@ public class Displacer
 	    if (!p.isOfInterest()) continue;
 	    Assembly ass1 = (Assembly)p.getObject1();
 	    Assembly ass2 = (Assembly)p.getObject2();
-	    Atom a1 = ass1.getMainAtom();
-	    Atom a2 = ass2.getMainAtom();
+	    Atom a1 = ri1.getMainAtom(ass1);
+	    Atom a2 = ri2.getMainAtom(ass2);
 	    if (a1 == null || a2 == null) continue;
 	    atoms1[index] = a1;
 	    atoms2[index] = a2;
@@ -122,8 +123,8 @@ public class Displacer
 		if (p.getIntValue() != r) continue;
 		Assembly ass1 = (Assembly)p.getObject1();
 		Assembly ass2 = (Assembly)p.getObject2();
-		Atom a1 = ass1.getMainAtom();
-		Atom a2 = ass2.getMainAtom();
+		Atom a1 = ri1.getMainAtom(ass1);
+		Atom a2 = ri2.getMainAtom(ass2);
 		if (a1 == null || a2 == null) continue;
 		atoms1[index] = a1;
 		atoms2[index] = a2;
@@ -169,6 +170,8 @@ public class Displacer
 	double r10 = rot.get(1,0),r11 = rot.get(1,1),r12 = rot.get(1,2);
 	double r20 = rot.get(2,0),r21 = rot.get(2,1),r22 = rot.get(2,2);
 	double tr0 = trans.get(0,0),tr1 = trans.get(1,0),tr2 = trans.get(2,0);
+	ResidueIndex ri1 = chain1_.residueIndex();
+	ResidueIndex ri2 = chain2_.residueIndex();
 	StringWriter ret = new StringWriter();
 	PrintWriter  pw  = new PrintWriter(ret);
 	for (Pair p = fPair_;p != null;p = p.next()) {
@@ -176,8 +179,8 @@ public class Displacer
 	    
 	    Assembly ass1 = (Assembly)p.getObject1();
 	    Assembly ass2 = (Assembly)p.getObject2();
-	    Atom a1 = ass1.getMainAtom();
-	    Atom a2 = ass2.getMainAtom();
+	    Atom a1 = ri1.getMainAtom(ass1);
+	    Atom a2 = ri2.getMainAtom(ass2);
 	    if (a1 == null || a2 == null) continue;
 	    double x  = a1.getX() - center_x_, x2 = a2.getX() - center_x_;
 	    double y  = a1.getY() - center_y_, y2 = a2.getY() - center_y_;
@@ -293,14 +296,16 @@ public class Displacer
     private StringBuffer print(Matrix[] rs,Matrix ts[],Matrix ss[],
 			       double fraction)
     {
+	ResidueIndex ri1 = chain1_.residueIndex();
+	ResidueIndex ri2 = chain2_.residueIndex();
 	StringWriter ret = new StringWriter();
 	PrintWriter  pw  = new PrintWriter(ret);
 	for (Pair p = fPair_;p != null;p = p.next()) {
 	    if (!p.isOfInterest()) continue;
 	    Assembly ass1 = (Assembly)p.getObject1();
 	    Assembly ass2 = (Assembly)p.getObject2();
-	    Atom a1 = ass1.getMainAtom();
-	    Atom a2 = ass2.getMainAtom();
+	    Atom a1 = ri1.getMainAtom(ass1);
+	    Atom a2 = ri2.getMainAtom(ass2);
 	    if (a1 == null || a2 == null) continue;
 	    double x = a1.getX() - center_x_;
 	    double y = a1.getY() - center_y_;
@@ -169,11 +169,11 @@ public class Kabscher
 	    Chain c1 = chains1[i];
 	    Chain c2 = chains2[i];
 	    if (c1 == null || c2 == null) continue;
-	    for (Assembly ass1 = c1.assemblyList(),ass2 = c2.assemblyList();
-		 ass1 != null && ass2 != null;
-		 ass1 = ass1.next(),ass2 = ass2.next()) {
-		Atom a1 = ass1.getMainAtom();
-		Atom a2 = ass2.getMainAtom();
+	    ResidueIndex ri1 = c1.residueIndex(), ri2 = c2.residueIndex();
+	    int n = Math.min(ri1.size(),ri2.size());
+	    for (int s = 0;s < n;s++) {
+		Atom a1 = ri1.getMainAtom(s);
+		Atom a2 = ri2.getMainAtom(s);
 		if (a1 == null || a2 == null) continue;
 		if (selected &&
 		    (!a1.isSelected() || !a2.isSelected())) continue;
@@ -190,11 +190,11 @@ public class Kabscher
 	    Chain c1 = chains1[i];
 	    Chain c2 = chains2[i];
 	    if (c1 == null || c2 == null) continue;
-	    for (Assembly ass1 = c1.assemblyList(),ass2 = c2.assemblyList();
-		 ass1 != null && ass2 != null;
-		 ass1 = ass1.next(),ass2 = ass2.next()) {
-		Atom a1 = ass1.getMainAtom();
-		Atom a2 = ass2.getMainAtom();
+	    ResidueIndex ri1 = c1.residueIndex(), ri2 = c2.residueIndex();
+	    int n = Math.min(ri1.size(),ri2.size());
+	    for (int s = 0;s < n;s++) {
+		Atom a1 = ri1.getMainAtom(s);
+		Atom a2 = ri2.getMainAtom(s);
 		if (a1 == null || a2 == null) continue;
 		if (selected &&
 		    (!a1.isSelected() || !a2.isSelected())) continue;
@@ -91,8 +91,8 @@ public class Motioner
 		if (p.getIntValue() != r) continue;
 		Assembly ass1 = (Assembly)p.getObject1();
 		Assembly ass2 = (Assembly)p.getObject2();
-		Atom a1 = ass1.getMainAtom();
-		Atom a2 = ass2.getMainAtom();
+		Atom a1 = ResidueIndex.mainAtomOf(ass1);
+		Atom a2 = ResidueIndex.mainAtomOf(ass2);
 		if (a1 == null || a2 == null) continue;
 		atoms1[index] = a1;
 		atoms2[index] = a2;
@@ -131,8 +131,8 @@ public class Motioner
 		    if (p.getIntValue() != r2 + 1) continue;
 		    Assembly ass1 = (Assembly)p.getObject1();
 		    Assembly ass2 = (Assembly)p.getObject2();
-		    Atom a1 = ass1.getMainAtom();
-		    Atom a2 = ass2.getMainAtom();
+		    Atom a1 = ResidueIndex.mainAtomOf(ass1);
+		    Atom a2 = ResidueIndex.mainAtomOf(ass2);
 		    if (a1 == null || a2 == null) continue;
 		    Matrix coor = new Matrix(new double[][]{{a2.getX()},
 							    {a2.getY()},
@@ -107,24 +107,32 @@ public class NormalModeCalculator
 
 	// Calculating number of atoms/residues
 	int n_res = 0;
-	for (Chain c = mol.chainList();c != null;c = c.next())
-	    for (Assembly s = c.assemblyList();s != null;s = s.next()) {
-		Atom a = s.getMainAtom();
+	for (Chain c = mol.chainList();c != null;c = c.next()) {
+	    ResidueIndex ri = c.residueIndex();
+	    for (int s = 0;s < ri.size();s++) {
+		Atom a = ri.getMainAtom(s);
 		if (a == null) continue;
 		if (selected && !a.isSelected()) continue;
 		n_res++;
 	    }
+	}
 
-	// Storing atoms
+	// Storing residues and coordinates of their atoms
 	res_ = new Assembly[n_res];
+	double[] xyz = new double[3*n_res];
 	n_res = 0;
-	for (Chain c = mol.chainList();c != null;c = c.next())
-	    for (Assembly s = c.assemblyList();s != null;s = s.next()) {
-		Atom a = s.getMainAtom();
+	for (Chain c = mol.chainList();c != null;c = c.next()) {
+	    ResidueIndex ri = c.residueIndex();
+	    double[] coords = ri.getCoordinates();
+	    for (int s = 0;s < ri.size();s++) {
+		Atom a = ri.getMainAtom(s);
 		if (a == null) continue;
 		if (selected && !a.isSelected()) continue;
-		res_[n_res++] = s;
+		res_[n_res] = ri.getAssembly(s);
+		System.arraycopy(coords,3*s,xyz,3*n_res,3);
+		n_res++;
 	    }
+	}
 
 	if (n_res <= 0) {
 	    if (selected) System.err.println("No selected residues found.");
@@ -139,18 +147,16 @@ public class NormalModeCalculator
 	// Filling hessian matrix
 	double[][] hess = hessian_.getArray();
 	for (int i1 = 0;i1 < n_res;i1++) {
-	    Atom a1 = res_[i1].getMainAtom();
-	    double x1 = a1.getX();
-	    double y1 = a1.getY();
-	    double z1 = a1.getZ();
+	    double x1 = xyz[3*i1];
+	    double y1 = xyz[3*i1 + 1];
+	    double z1 = xyz[3*i1 + 2];
 	    int ind1_1 = 3*i1;
 	    int ind1_2 = ind1_1 + 1;
 	    int ind1_3 = ind1_2 + 1;
 	    for (int i2 = i1 + 1;i2 < n_res;i2++) {
-		Atom a2 = res_[i2].getMainAtom();
-		double dx = x1 - a2.getX(), dx2 = dx*dx;
-		double dy = y1 - a2.getY(), dy2 = dy*dy;
-		double dz = z1 - a2.getZ(), dz2 = dz*dz;
+		double dx = x1 - xyz[3*i2],     dx2 = dx*dx;
+		double dy = y1 - xyz[3*i2 + 1], dy2 = dy*dy;
+		double dz = z1 - xyz[3*i2 + 2], dz2 = dz*dz;
 		double dxy = dx*dy, dxz = dx*dz, dyz = dy*dz;
 		double d2 = dx2 + dy2 + dz2;
 		if (d2 > 225) continue;
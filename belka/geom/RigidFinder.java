@@ -763,32 +763,37 @@ public class RigidFinder
 	int n = pairs_.length;
 	delta_d_ = new double[n][n];
 	aver_d_  = new double[n][n];
-	for (int i1 = 0;i1 < n;i1++) {
-	    Assembly s1 = (Assembly)pairs_[i1].getObject1();
-	    Assembly s2 = (Assembly)pairs_[i1].getObject2();
-	    Atom a1 = s1.getMainAtom();
-	    Atom a2 = s2.getMainAtom();
-	    if (a1 == null)
+
+	// Coordinates of main atoms are taken once for each pair
+	double[]  xyz1 = new double[3*n], xyz2 = new double[3*n];
+	boolean[] has1 = new boolean[n],  has2 = new boolean[n];
+	for (int i = 0;i < n;i++) {
+	    has1[i] = getMainCoordinates((Assembly)pairs_[i].getObject1(),
+					 xyz1,i);
+	    has2[i] = getMainCoordinates((Assembly)pairs_[i].getObject2(),
+					 xyz2,i);
+	    if (!has1[i])
 		System.err.println("WARNING: Missing CA atom.");
-	    if (a2 == null)
+	    if (!has2[i])
 		System.err.println("WARNING: Missing CA atom.");
+	}
+
+	for (int i1 = 0;i1 < n;i1++) {
+	    int j1 = 3*i1;
 	    for (int i2 = i1;i2 < n;i2++) {
-		Assembly s1to1 = (Assembly)pairs_[i2].getObject1();
-		Assembly s2to2 = (Assembly)pairs_[i2].getObject2();
-		Atom a1to1 = s1to1.getMainAtom();
-		Atom a2to2 = s2to2.getMainAtom();
+		int j2 = 3*i2;
 		double d1 = 0;
-		if (a1 != null && a1to1 != null) {
-		    double dx = a1.getX() - a1to1.getX();
-		    double dy = a1.getY() - a1to1.getY();
-		    double dz = a1.getZ() - a1to1.getZ();
+		if (has1[i1] && has1[i2]) {
+		    double dx = xyz1[j1]     - xyz1[j2];
+		    double dy = xyz1[j1 + 1] - xyz1[j2 + 1];
+		    double dz = xyz1[j1 + 2] - xyz1[j2 + 2];
 		    d1 = Math.sqrt(dx*dx + dy*dy + dz*dz);
 		}
 		double d2 = 0;
-		if (a2 != null && a2to2 != null) {
-		    double dx = a2.getX() - a2to2.getX();
-		    double dy = a2.getY() - a2to2.getY();
-		    double dz = a2.getZ() - a2to2.getZ();
+		if (has2[i1] && has2[i2]) {
+		    double dx = xyz2[j1]     - xyz2[j2];
+		    double dy = xyz2[j1 + 1] - xyz2[j2 + 1];
+		    double dz = xyz2[j1 + 2] - xyz2[j2 + 2];
 		    d2 = Math.sqrt(dx*dx + dy*dy + dz*dz);
 		}
 		double delta = d2 - d1;
@@ -800,6 +805,29 @@ public class RigidFinder
 	}
     }
 
+    // Copies original coordinates of the main atom of the assembly to the
+    // given place of the array. Returns 'false' if there is no main atom.
+    private static boolean getMainCoordinates(Assembly s,double[] xyz,int i)
+    {
+	Chain c = s.chain();
+	ResidueIndex ri = (c == null) ? null : c.residueIndex();
+	int slot = (ri == null) ? -1 : ri.getSlot(s);
+	if (slot >= 0) {
+	    if (ri.getMainAtom(slot) == null) return false;
+	    double[] coords = ri.getCoordinates();
+	    xyz[3*i]     = coords[3*slot];
+	    xyz[3*i + 1] = coords[3*slot + 1];
+	    xyz[3*i + 2] = coords[3*slot + 2];
+	    return true;
+	}
+	Atom a = s.getMainAtom();
+	if (a == null) return false;
+	xyz[3*i]     = a.getX();
+	xyz[3*i + 1] = a.getY();
+	xyz[3*i + 2] = a.getZ();
+	return true;
+    }
+
     // Returns number of pairs with given gid.
     private int getNeFor(int gid)
     {
@@ -15,6 +15,9 @@ import belka.chem.*;
  */
 public abstract class Assembly implements Serializable
 {
+    // Same as before addNewBond was added
+    private static final long serialVersionUID = 913819662041769091L;
+
     // Gap symbol
     protected final static char GAP_CHAR = '-';
 
@@ -134,6 +137,15 @@ public abstract class Assembly implements Serializable
      */
     public abstract boolean addBond(Bond bond);
 
+    /**
+     * Adds new peptide/phosphodiester bond without checking whether it is
+     * already added. Meant for bulk bonding, where each bond is created
+     * once.
+     *
+     * @param bond bond to add, must not be added already.
+     */
+    public abstract void addNewBond(Bond bond);
+
     /**
      * Returns number of peptide/phosphodiester bonds for the assembly.
      *
@@ -1,5 +1,8 @@
 package belka.mol;
 
+//--- Java import ---
+import java.io.*;
+
 //--- Application imports ---
 import belka.chem.*;
 
@@ -10,6 +13,9 @@ import belka.chem.*;
  */
 class Assembly_imp extends Assembly
 {
+    // Same as before addNewBond was added
+    private static final long serialVersionUID = -5433916790423439080L;
+
     // Constructor for natural assembly
     public Assembly_imp(Compound comp) { comp_ = comp; }
 
@@ -64,6 +70,7 @@ class Assembly_imp extends Assembly
 	next_ = newAssembly;
 	if (next != null && next.prev() == this)
 	    next.insertBefore(newAssembly);
+	Chain_imp.invalidate(chain_);
 
 	return newAssembly.insertBefore(this);
     }
@@ -89,6 +96,7 @@ class Assembly_imp extends Assembly
 	prev_ = newAssembly;
 	if (prev != null && prev.next() == this)
 	    prev.insertAfter(newAssembly);
+	Chain_imp.invalidate(chain_);
 
 	return newAssembly.insertAfter(this);
     }
@@ -105,6 +113,7 @@ class Assembly_imp extends Assembly
 	    return this;
 	}
 	
+	Chain_imp.invalidate(chain_);
 	Assembly ret = next_;
 	next_ = next_.next();
 	if (next_ != null && next_.prev() == ret) next_.extractBefore();
@@ -126,6 +135,7 @@ class Assembly_imp extends Assembly
 	    return this;
 	}
 
+	Chain_imp.invalidate(chain_);
 	Assembly ret = prev_;
 	prev_ = prev_.prev();
 	if (prev_ != null && prev_.next() == ret) prev_.extractAfter();
@@ -152,6 +162,7 @@ class Assembly_imp extends Assembly
 
 	// Trying to set assembly for atom
 	if (!atom.setAssembly(this)) return false;
+	Chain_imp.invalidate(chain_);
 
 	if (atomList_ == null) {
 	    lastAtom_ = atomList_ = atom;
@@ -162,38 +173,62 @@ class Assembly_imp extends Assembly
 	return true;
     }
     
-    // Peptide/phosphodiester bonds
+    // Peptide/phosphodiester bonds. Array grows with spare capacity and is
+    // trimmed when it is requested or written.
+    private static final int INITIAL_BONDS = 2;
     private Bond[] bonds_ = null;
-    public  int    countBonds()
+    private transient int n_bonds_ = 0;
+    public  int    countBonds() { return n_bonds_; }
+    public Bond[]  bondArray()
     {
-	if (bonds_ == null) return 0;
-	else                return bonds_.length;
+	// Spare capacity is dropped once bonds are requested
+	if (bonds_ != null && bonds_.length != n_bonds_) {
+	    Bond[] new_bonds = new Bond[n_bonds_];
+	    System.arraycopy(bonds_,0,new_bonds,0,n_bonds_);
+	    bonds_ = new_bonds;
+	}
+	return bonds_;
     }
-    public Bond[]  bondArray() { return bonds_; }
     public boolean addBond(Bond bond)
     {
 	if (bond == null) return false;
+	for (int i = 0;i < n_bonds_;i++)
+	    if (bonds_[i] == bond) return false;
+	addNewBond(bond);
+	return true;
+    }
+    public void addNewBond(Bond bond)
+    {
+	if (bond == null) return;
 	if (bonds_ == null) {
-	    bonds_ = new Bond[1];
-	    bonds_[0] = bond;
-	    return true;
-	}
-	int n_bonds = bonds_.length;
-	Bond[] new_bonds = new Bond[n_bonds + 1];
-	for (int i = 0;i < n_bonds;i++) {
-	    Bond b = bonds_[i];
-	    if (b == bond) return false;
-	    new_bonds[i] = bonds_[i];
+	    bonds_ = new Bond[INITIAL_BONDS];
+	} else if (n_bonds_ == bonds_.length) {
+	    Bond[] new_bonds = new Bond[2*n_bonds_ + 1];
+	    System.arraycopy(bonds_,0,new_bonds,0,n_bonds_);
+	    bonds_ = new_bonds;
 	}
-	new_bonds[n_bonds] = bond;
-	bonds_ = new_bonds;
-	return true;
+	bonds_[n_bonds_++] = bond;
+    }
+
+    // Writes assembly with trimmed array of bonds
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+	bondArray();
+	out.defaultWriteObject();
     }
+
+    // Reads assembly
+    private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException
+    {
+	in.defaultReadObject();
+	n_bonds_ = (bonds_ == null) ? 0 : bonds_.length;
+    }
+
     public boolean isConnectedTo(Assembly s)
     {
 	if (s == null)      return false;
-	if (bonds_ == null) return false;
-	for (int i = 0;i < bonds_.length;i++) {
+	for (int i = 0;i < n_bonds_;i++) {
 	    Bond b = bonds_[i];
 	    if (b.getFAtom() != null &&
 		b.getFAtom().assembly() == s) return true;
@@ -316,6 +351,7 @@ class Assembly_imp extends Assembly
     public boolean isAligned() { return ((att_ & ALIGNED_ATTRIBUTE) != 0); }
     public void    setAligned(boolean val)
     {
+	if (val != isAligned()) Molecule_imp.modified(chain_);
 	if (val) att_ |=  ALIGNED_ATTRIBUTE;
 	else     att_ &= ~ALIGNED_ATTRIBUTE;
     }
@@ -326,6 +362,8 @@ class Assembly_imp extends Assembly
     {
 	int tmp = group_id<<8;
 	if ((tmp>>8) != group_id) return false; // Too large
+	if ((att_ & GROUP_ATTRIBUTES) != tmp)
+	    Molecule_imp.invalidateGroups(chain_);
 	att_ &= ~GROUP_ATTRIBUTES;
 	att_ |= tmp;
 	return true;
@@ -14,6 +14,9 @@ import belka.chem.*;
  */
 public abstract class Atom implements Serializable
 {
+    // Same as before addNewBond was added
+    private static final long serialVersionUID = -4398387601184329126L;
+
     /**
      * Static method to create new atom
      *
@@ -110,6 +113,15 @@ public abstract class Atom implements Serializable
      */
     public abstract boolean addBond(Bond bond);
 
+    /**
+     * Adds a new covalent bond to the end of covalent bond array for the
+     * current atom without checking whether it is already in the array.
+     * Meant for bulk bonding, where each bond is created once.
+     *
+     * @param bond bond to add, must not be in the array.
+     */
+    public abstract void addNewBond(Bond bond);
+
     /**
      * Returns original (as in the loaded file) atom's X coordinate.
      *
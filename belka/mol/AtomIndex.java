@@ -0,0 +1,309 @@
+package belka.mol;
+
+//--- Java import ---
+import java.util.*;
+
+/**
+ * Inverted index of atoms of a molecule. Atoms are numbered in the order of
+ * chains, assemblies and atoms in them. Sets of atoms with given name, in
+ * assemblies with given name or in given group are kept as bit sets, chains
+ * and assemblies are ranges of numbers. Molecules keep their index until
+ * chains, assemblies or atoms are added or moved, sets of groups are made
+ * again when group of an assembly changes. Returned bit sets are copies and
+ * can be changed.
+ *
+ * @author Alexej Abyzov
+ */
+public class AtomIndex
+{
+    // Atoms by number
+    private Atom[] atoms_ = null;
+
+    // Chains and assemblies with numbers of their first atoms. The last
+    // element is the number of atoms.
+    private Chain[]    chains_     = null;
+    private int[]      chainStart_ = null;
+    private Assembly[] asses_      = null;
+    private int[]      assStart_   = null;
+
+    // Sets of atoms by atom name and by assembly name
+    private HashMap<String,BitSet> byAtomName_     = null;
+    private HashMap<String,BitSet> byAssemblyName_ = null;
+
+    // Sets of atoms by group id. Null if a group was changed.
+    private HashMap<Integer,BitSet> byGroup_ = null;
+
+    // Constructor
+    AtomIndex(Molecule mol)
+    {
+	int n_chains = 0, n_asses = 0;
+	for (Chain c = mol.chainList();c != null;c = c.next()) {
+	    n_chains++;
+	    for (Assembly s = c.assemblyList();s != null;s = s.next())
+		n_asses++;
+	}
+	atoms_      = new Atom[mol.countAtoms()];
+	chains_     = new Chain[n_chains];
+	chainStart_ = new int[n_chains + 1];
+	asses_      = new Assembly[n_asses];
+	assStart_   = new int[n_asses + 1];
+	byAtomName_     = new HashMap<String,BitSet>();
+	byAssemblyName_ = new HashMap<String,BitSet>();
+
+	int i = 0, ic = 0, is = 0;
+	for (Chain c = mol.chainList();c != null;c = c.next(),ic++) {
+	    chains_[ic]     = c;
+	    chainStart_[ic] = i;
+	    for (Assembly s = c.assemblyList();s != null;s = s.next(),is++) {
+		asses_[is]    = s;
+		assStart_[is] = i;
+		int start = i;
+		for (Atom a = s.atomList();a != null;a = a.next(),i++) {
+		    atoms_[i] = a;
+		    add(byAtomName_,a.getName(),i,i + 1);
+		}
+		if (i > start) add(byAssemblyName_,s.getName(),start,i);
+	    }
+	}
+	chainStart_[n_chains] = i;
+	assStart_[n_asses]    = i;
+    }
+
+    // Adds range of numbers to the set for the key
+    private static <K> void add(HashMap<K,BitSet> map,K key,int from,int to)
+    {
+	BitSet set = map.get(key);
+	if (set == null) {
+	    set = new BitSet();
+	    map.put(key,set);
+	}
+	set.set(from,to);
+    }
+
+    // Returns union of sets with keys equal to the name ignoring case
+    private BitSet named(HashMap<String,BitSet> map,String name)
+    {
+	BitSet ret = new BitSet(atoms_.length);
+	for (Map.Entry<String,BitSet> e : map.entrySet())
+	    if (name.equalsIgnoreCase(e.getKey())) ret.or(e.getValue());
+	return ret;
+    }
+
+    /**
+     * Returns number of atoms in the index.
+     *
+     * @return number of atoms.
+     */
+    public int size() { return atoms_.length; }
+
+    /**
+     * Returns atom with given number.
+     *
+     * @param i number of the atom.
+     *
+     * @return atom with the number.
+     */
+    public Atom getAtom(int i) { return atoms_[i]; }
+
+    /**
+     * Returns number of the atom.
+     *
+     * @param atom atom to find.
+     *
+     * @return number of the atom, -1 if the atom is not in the index.
+     */
+    public int getNumber(Atom atom)
+    {
+	if (atom instanceof Atom_imp) { // Packed atoms are in the same order
+	    int i = ((Atom_imp)atom).index();
+	    if (i < atoms_.length && atoms_[i] == atom) return i;
+	}
+	for (int i = 0;i < atoms_.length;i++)
+	    if (atoms_[i] == atom) return i;
+	return -1;
+    }
+
+    /**
+     * Returns number of chains in the index.
+     *
+     * @return number of chains.
+     */
+    public int countChains() { return chains_.length; }
+
+    /**
+     * Returns chain with given index.
+     *
+     * @param ic index of the chain.
+     *
+     * @return the chain.
+     */
+    public Chain getChain(int ic) { return chains_[ic]; }
+
+    /**
+     * Returns number of the first atom of the chain.
+     *
+     * @param ic index of the chain.
+     *
+     * @return number of the first atom.
+     */
+    public int getChainStart(int ic) { return chainStart_[ic]; }
+
+    /**
+     * Returns number following the number of the last atom of the chain.
+     *
+     * @param ic index of the chain.
+     *
+     * @return number following the last atom.
+     */
+    public int getChainEnd(int ic) { return chainStart_[ic + 1]; }
+
+    /**
+     * Returns number of assemblies, including gaps, in the index.
+     *
+     * @return number of assemblies.
+     */
+    public int countAssemblies() { return asses_.length; }
+
+    /**
+     * Returns assembly with given index.
+     *
+     * @param is index of the assembly.
+     *
+     * @return the assembly.
+     */
+    public Assembly getAssembly(int is) { return asses_[is]; }
+
+    /**
+     * Returns number of the first atom of the assembly.
+     *
+     * @param is index of the assembly.
+     *
+     * @return number of the first atom.
+     */
+    public int getAssemblyStart(int is) { return assStart_[is]; }
+
+    /**
+     * Returns number following the number of the last atom of the
+     * assembly.
+     *
+     * @param is index of the assembly.
+     *
+     * @return number following the last atom.
+     */
+    public int getAssemblyEnd(int is) { return assStart_[is + 1]; }
+
+    /**
+     * Returns set of atoms with given name. Case is ignored.
+     *
+     * @param name name of atoms.
+     *
+     * @return set of atom numbers.
+     */
+    public BitSet atomsNamed(String name)
+    {
+	return named(byAtomName_,name);
+    }
+
+    /**
+     * Returns set of atoms in assemblies with given name. Case is ignored.
+     *
+     * @param name name of assemblies.
+     *
+     * @return set of atom numbers.
+     */
+    public BitSet atomsInAssembliesNamed(String name)
+    {
+	return named(byAssemblyName_,name);
+    }
+
+    /**
+     * Returns set of atoms in chains with one of given identifiers.
+     *
+     * @param ids identifiers of chains.
+     *
+     * @return set of atom numbers.
+     */
+    public BitSet atomsInChains(String ids)
+    {
+	BitSet ret = new BitSet(atoms_.length);
+	for (int ic = 0;ic < chains_.length;ic++)
+	    if (ids.indexOf(chains_[ic].getId()) >= 0)
+		ret.set(chainStart_[ic],chainStart_[ic + 1]);
+	return ret;
+    }
+
+    /**
+     * Returns set of atoms in assemblies with serial numbers in given
+     * range.
+     *
+     * @param start first serial number.
+     * @param end last serial number.
+     *
+     * @return set of atom numbers.
+     */
+    public BitSet atomsInAssemblyRange(int start,int end)
+    {
+	BitSet ret = new BitSet(atoms_.length);
+	for (int is = 0;is < asses_.length;is++) {
+	    int num = asses_[is].getSerialNum();
+	    if (num >= start && num <= end)
+		ret.set(assStart_[is],assStart_[is + 1]);
+	}
+	return ret;
+    }
+
+    /**
+     * Returns set of atoms in assemblies with given attribute. Group
+     * attributes are looked up in the sets of groups, others are checked
+     * for each assembly.
+     *
+     * @param att attribute of assemblies.
+     *
+     * @return set of atom numbers.
+     */
+    public BitSet atomsInAssembliesWith(int att)
+    {
+	int group_id = att>>8;
+	if (Assembly.getGroupAttribute(group_id) == att) {
+	    BitSet set = groups().get(group_id);
+	    if (set == null) return new BitSet(atoms_.length);
+	    return (BitSet)set.clone();
+	}
+	BitSet ret = new BitSet(atoms_.length);
+	for (int is = 0;is < asses_.length;is++)
+	    if (asses_[is].hasAttribute(att))
+		ret.set(assStart_[is],assStart_[is + 1]);
+	return ret;
+    }
+
+    /**
+     * Returns set of atoms with given attribute.
+     *
+     * @param att attribute of atoms.
+     *
+     * @return set of atom numbers.
+     */
+    public BitSet atomsWith(int att)
+    {
+	BitSet ret = new BitSet(atoms_.length);
+	for (int i = 0;i < atoms_.length;i++)
+	    if (atoms_[i].hasAttribute(att)) ret.set(i);
+	return ret;
+    }
+
+    // Returns sets of atoms by group id
+    private synchronized HashMap<Integer,BitSet> groups()
+    {
+	if (byGroup_ != null) return byGroup_;
+	HashMap<Integer,BitSet> ret = new HashMap<Integer,BitSet>();
+	for (int is = 0;is < asses_.length;is++)
+	    if (assStart_[is + 1] > assStart_[is])
+		add(ret,asses_[is].getGroupId(),assStart_[is],
+		    assStart_[is + 1]);
+	byGroup_ = ret;
+	return ret;
+    }
+
+    // Marks sets of groups as out of date
+    synchronized void invalidateGroups() { byGroup_ = null; }
+}
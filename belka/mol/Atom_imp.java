@@ -2,6 +2,7 @@ package belka.mol;
 
 //--- Java import ---
 import java.awt.*;
+import java.io.*;
 
 //--- Application imports ---
 import belka.chem.*;
@@ -13,18 +14,121 @@ import belka.chem.*;
  */
 class Atom_imp extends Atom
 {
+    // Serialized form is the same as when coordinates were fields
+    private static final long serialVersionUID = 7703033718006056554L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+	new ObjectStreamField("next_",Atom.class),
+	new ObjectStreamField("prev_",Atom.class),
+	new ObjectStreamField("ass_",Assembly.class),
+	new ObjectStreamField("bonds_",Bond[].class),
+	new ObjectStreamField("x_",Double.TYPE),
+	new ObjectStreamField("y_",Double.TYPE),
+	new ObjectStreamField("z_",Double.TYPE),
+	new ObjectStreamField("x_der_",Double.TYPE),
+	new ObjectStreamField("y_der_",Double.TYPE),
+	new ObjectStreamField("z_der_",Double.TYPE),
+	new ObjectStreamField("x_screen_",Integer.TYPE),
+	new ObjectStreamField("y_screen_",Integer.TYPE),
+	new ObjectStreamField("z_screen_",Integer.TYPE),
+	new ObjectStreamField("r_",Double.TYPE),
+	new ObjectStreamField("r_screen_",Integer.TYPE),
+	new ObjectStreamField("color_",Color.class),
+	new ObjectStreamField("name_",String.class),
+	new ObjectStreamField("serial_",Integer.TYPE),
+	new ObjectStreamField("altern_",Character.TYPE),
+	new ObjectStreamField("occup_",Double.TYPE),
+	new ObjectStreamField("temper_",Double.TYPE),
+	new ObjectStreamField("element_",Element.class),
+	new ObjectStreamField("att_",Integer.TYPE)
+    };
+
     // Constructor
     public Atom_imp(String name,double x,double y,double z,
 		    Element element)
     {
 	name_   = name;
 	if (name_ == null) name_ = "";
-	x_ = x; x_der_ = x;
-	y_ = y; y_der_ = y;
-	z_ = z; z_der_ = z;
+	store_ = CoordinateStore.block();
+	ind_   = store_.add(x,y,z);
 	element_ = element;
     }
 
+    // Writes atom
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+	ObjectOutputStream.PutField f = out.putFields();
+	f.put("next_",next_);
+	f.put("prev_",prev_);
+	f.put("ass_",ass_);
+	f.put("bonds_",bondArray());
+	f.put("x_",store_.x_[ind_]);
+	f.put("y_",store_.y_[ind_]);
+	f.put("z_",store_.z_[ind_]);
+	f.put("x_der_",store_.xDer_[ind_]);
+	f.put("y_der_",store_.yDer_[ind_]);
+	f.put("z_der_",store_.zDer_[ind_]);
+	f.put("x_screen_",store_.xScreen_[ind_]);
+	f.put("y_screen_",store_.yScreen_[ind_]);
+	f.put("z_screen_",store_.zScreen_[ind_]);
+	f.put("r_",store_.r_[ind_]);
+	f.put("r_screen_",store_.rScreen_[ind_]);
+	f.put("color_",color_);
+	f.put("name_",name_);
+	f.put("serial_",serial_);
+	f.put("altern_",altern_);
+	f.put("occup_",occup_);
+	f.put("temper_",temper_);
+	f.put("element_",element_);
+	f.put("att_",isSelected() ? (att_ | SELECTED_ATTRIBUTE) : att_);
+	out.writeFields();
+    }
+
+    // Reads atom
+    private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException
+    {
+	ObjectInputStream.GetField f = in.readFields();
+	next_    = (Atom)f.get("next_",null);
+	prev_    = (Atom)f.get("prev_",null);
+	ass_     = (Assembly)f.get("ass_",null);
+	bonds_   = (Bond[])f.get("bonds_",null);
+	n_bonds_ = (bonds_ == null) ? 0 : bonds_.length;
+	store_   = CoordinateStore.block();
+	ind_     = store_.add(f.get("x_",0.),f.get("y_",0.),f.get("z_",0.));
+	store_.xDer_[ind_]    = f.get("x_der_",0.);
+	store_.yDer_[ind_]    = f.get("y_der_",0.);
+	store_.zDer_[ind_]    = f.get("z_der_",0.);
+	store_.xScreen_[ind_] = f.get("x_screen_",0);
+	store_.yScreen_[ind_] = f.get("y_screen_",0);
+	store_.zScreen_[ind_] = f.get("z_screen_",0);
+	store_.r_[ind_]       = f.get("r_",-1.);
+	store_.rScreen_[ind_] = f.get("r_screen_",-1);
+	color_   = (Color)f.get("color_",null);
+	name_    = (String)f.get("name_","");
+	serial_  = f.get("serial_",0);
+	altern_  = f.get("altern_",' ');
+	occup_   = f.get("occup_",0.);
+	temper_  = f.get("temper_",0.);
+	element_ = (Element)f.get("element_",null);
+	att_     = f.get("att_",SELECTED_ATTRIBUTE);
+	store_.setSelected(ind_,(att_ & SELECTED_ATTRIBUTE) > 0);
+	att_    &= ~SELECTED_ATTRIBUTE;
+    }
+
+    // Coordinates and radii are kept in columns of a store
+    private transient CoordinateStore store_ = null;
+    private transient int             ind_   = 0;
+    CoordinateStore store() { return store_; }
+    int             index() { return ind_; }
+
+    // Moves coordinates and radii into the store
+    void moveTo(CoordinateStore store)
+    {
+	int ind = store.add(store_,ind_);
+	store_  = store;
+	ind_    = ind;
+    }
+
     // Disassembles atom into null pointers
     public void disassemble()
     {
@@ -120,74 +224,89 @@ class Atom_imp extends Atom
 	return true;
     }
 
-    // Access to the covalent bonds for the atoms
+    // Access to the covalent bonds for the atoms. Array grows with spare
+    // capacity, so bonding an atom does not copy it on every bond.
+    private static final int INITIAL_BONDS = 4;
     private Bond[] bonds_ = null;
-    public  int    countBonds()
+    private transient int n_bonds_ = 0;
+    public  int    countBonds() { return n_bonds_; }
+    public Bond[]  bondArray()
     {
-	if (bonds_ == null) return 0;
-	else                return bonds_.length;
+	// Spare capacity is dropped once bonds are requested
+	if (bonds_ != null && bonds_.length != n_bonds_) {
+	    Bond[] new_bonds = new Bond[n_bonds_];
+	    System.arraycopy(bonds_,0,new_bonds,0,n_bonds_);
+	    bonds_ = new_bonds;
+	}
+	return bonds_;
     }
-    public Bond[]  bondArray() { return bonds_; }
     public boolean addBond(Bond bond)
     {
 	if (bond == null) return false;
+	for (int i = 0;i < n_bonds_;i++)
+	    if (bonds_[i] == bond) return false;
+	addNewBond(bond);
+	return true;
+    }
+    public void addNewBond(Bond bond)
+    {
+	if (bond == null) return;
 	if (bonds_ == null) {
-	    bonds_ = new Bond[1];
-	    bonds_[0] = bond;
-	    return true;
+	    bonds_ = new Bond[INITIAL_BONDS];
+	} else if (n_bonds_ == bonds_.length) {
+	    Bond[] new_bonds = new Bond[2*n_bonds_ + 1];
+	    System.arraycopy(bonds_,0,new_bonds,0,n_bonds_);
+	    bonds_ = new_bonds;
 	}
-	int n_bonds = bonds_.length;
-	Bond[] new_bonds = new Bond[n_bonds + 1];
-	for (int i = 0;i < n_bonds;i++) {
-	    Bond b = bonds_[i];
-	    if (b == bond) return false;
-	    new_bonds[i] = bonds_[i];
-	}
-	new_bonds[n_bonds] = bond;
-	bonds_ = new_bonds;
-	return true;
+	bonds_[n_bonds_++] = bond;
     }
-
     // Original coordinates (double)
-    double x_ = 0,y_ = 0,z_ = 0;
-    public double getX() { return x_; }
-    public double getY() { return y_; }
-    public double getZ() { return z_; }
+    public double getX() { return store_.x_[ind_]; }
+    public double getY() { return store_.y_[ind_]; }
+    public double getZ() { return store_.z_[ind_]; }
 
     // Derived coordiantes if the center of coordinates is moved
-    double x_der_ = 0,y_der_ = 0,z_der_ = 0;
-    public double getDerivedX() { return x_der_; }
-    public double getDerivedY() { return y_der_; }
-    public double getDerivedZ() { return z_der_; }
-    public void setDerivedX(double x) { x_der_ = x; }
-    public void setDerivedY(double y) { y_der_ = y; }
-    public void setDerivedZ(double z) { z_der_ = z; }
+    public double getDerivedX() { return store_.xDer_[ind_]; }
+    public double getDerivedY() { return store_.yDer_[ind_]; }
+    public double getDerivedZ() { return store_.zDer_[ind_]; }
+    public void setDerivedX(double x)
+    {
+	store_.xDer_[ind_] = x;
+	store_.version_++;
+    }
+    public void setDerivedY(double y)
+    {
+	store_.yDer_[ind_] = y;
+	store_.version_++;
+    }
+    public void setDerivedZ(double z)
+    {
+	store_.zDer_[ind_] = z;
+	store_.version_++;
+    }
 
     // Screen coordinates (int)
     public final static double SCALE_COORD_TO_PIXELS = 1000;
-    int x_screen_ = 0,y_screen_ = 0,z_screen_ = 0;
-    public int  getScreenX() { return x_screen_; }
-    public int  getScreenY() { return y_screen_; }
-    public int  getScreenZ() { return z_screen_; }
-    public void setScreenX(double x) { x_screen_ =
+    public int  getScreenX() { return store_.xScreen_[ind_]; }
+    public int  getScreenY() { return store_.yScreen_[ind_]; }
+    public int  getScreenZ() { return store_.zScreen_[ind_]; }
+    public void setScreenX(double x) { store_.xScreen_[ind_] =
 	    (int)(SCALE_COORD_TO_PIXELS*x); }
-    public void setScreenY(double y) { y_screen_ =
+    public void setScreenY(double y) { store_.yScreen_[ind_] =
 	    (int)(SCALE_COORD_TO_PIXELS*y); }
-    public void setScreenZ(double z) { z_screen_ =
+    public void setScreenZ(double z) { store_.zScreen_[ind_] =
 	    (int)(SCALE_COORD_TO_PIXELS*z); }
 
     // Radius of the sphere representing the atom
-    double r_ = -1;
-    public double getRadius()         { return r_; }
-    public void   setRadius(double r) { r_ = r; }
-    private int  r_screen_ = -1;
-    public  int  getScreenRadius()      { return r_screen_; }
+    public double getRadius()         { return store_.r_[ind_]; }
+    public void   setRadius(double r) { store_.r_[ind_] = r; }
+    public  int  getScreenRadius()      { return store_.rScreen_[ind_]; }
     public  void setScreenRadius(double r)
     {
 	double val = SCALE_COORD_TO_PIXELS*r;
-	if (val > 0)      r_screen_ = (int)(val + 0.5);
-	else if (val < 0) r_screen_ = (int)(val - 0.5);
-	else              r_screen_ = 0;
+	if (val > 0)      store_.rScreen_[ind_] = (int)(val + 0.5);
+	else if (val < 0) store_.rScreen_[ind_] = (int)(val - 0.5);
+	else              store_.rScreen_[ind_] = 0;
     }
 
     // Color of the atom
@@ -223,24 +342,22 @@ class Atom_imp extends Atom
     Element element_ = null;
     public Element getElement() { return element_; }
 
-    // Attribute tracking
+    // Attribute tracking. Selection is kept in the store.
     static final int SELECTED_ATTRIBUTE = 0x001; // Selected atom
-    int att_ = SELECTED_ATTRIBUTE;
+    int att_ = 0;
 
     public static int getSelectedAttribute() { return SELECTED_ATTRIBUTE; }
 
     // Selection attribute
-    public boolean isSelected() { return ((att_ & SELECTED_ATTRIBUTE) > 0); }
-    public void    setSelected(boolean val)
-    {
-	if (val) att_ |=  SELECTED_ATTRIBUTE;
-	else     att_ &= ~SELECTED_ATTRIBUTE;
-    }
+    public boolean isSelected() { return store_.isSelected(ind_); }
+    public void    setSelected(boolean val) { store_.setSelected(ind_,val); }
 
     // Attributes 
     public boolean hasAttribute(int att)
     {
-	return ((att_ & att) > 0);
+	int val = att_;
+	if (store_.isSelected(ind_)) val |= SELECTED_ATTRIBUTE;
+	return ((val & att) > 0);
     }
 
 
@@ -260,9 +377,9 @@ class Atom_imp extends Atom
     public double distance2To(Atom atom)
     {
 	if (atom == null) return 0;
-	double dx = x_der_ - atom.getDerivedX();
-	double dy = y_der_ - atom.getDerivedY();
-	double dz = z_der_ - atom.getDerivedZ();
+	double dx = store_.xDer_[ind_] - atom.getDerivedX();
+	double dy = store_.yDer_[ind_] - atom.getDerivedY();
+	double dz = store_.zDer_[ind_] - atom.getDerivedZ();
 	return dx*dx + dy*dy + dz*dz;
     }
 
@@ -12,6 +12,9 @@ import java.io.*;
  */
 public abstract class Chain implements Serializable
 {
+    // Same as before residue index was added
+    private static final long serialVersionUID = 5796886149104874435L;
+
     /**
      * Static method to create a new chain.
      *
@@ -176,6 +179,15 @@ public abstract class Chain implements Serializable
      */ 
     public abstract void resetGroupId(int val);
 
+    /**
+     * Returns index of assemblies of the chain and of their main atoms. The
+     * index is kept until assemblies or atoms are added to or removed from
+     * the chain.
+     *
+     * @return index of assemblies of the chain.
+     */
+    public abstract ResidueIndex residueIndex();
+
     /**
      * Returns string representation of the chain.
      *
@@ -7,6 +7,9 @@ package belka.mol;
  */
 class Chain_imp extends Chain
 {
+    // Same as before residue index was added
+    private static final long serialVersionUID = 5293509128792978013L;
+
     // Constractors
     public Chain_imp(char id) { id_ = id; }
 
@@ -17,6 +20,7 @@ class Chain_imp extends Chain
 	    ass.disassemble();
 	mol_ = null;
 	assemblyList_ = lastAssembly_ = null;
+	index_ = null;
     }
 
     // Next chain
@@ -104,6 +108,7 @@ class Chain_imp extends Chain
 
 	// Trying to set chain for assembly
 	if (!assembly.setChain(this)) return false;
+	invalidate(this);
 
 	if (assemblyList_ == null) {
 	    lastAssembly_ = assemblyList_ = assembly;
@@ -117,6 +122,7 @@ class Chain_imp extends Chain
     // Updating pointers
     public void updateAssemblyPointers()
     {
+	index_ = null;
 	lastAssembly_ = assemblyList_;
 	if (assemblyList_ == null) return;
 
@@ -130,6 +136,7 @@ class Chain_imp extends Chain
     // Remove assemblies that are gaps from the list of assemblies
     public int removeGaps()
     {
+	index_ = null;
 	int ret = 0;
 	// Removing gaps at the beginning
 	while (assemblyList_ != null && assemblyList_.isGap()) {
@@ -197,19 +204,41 @@ class Chain_imp extends Chain
     // Counting number of selected atoms in a chain
     public int countSelectedAtoms()
     {
+	CoordinateStore st = Molecule_imp.packed(this);
+	Atom first = firstAtom();
+	if (st != null && first != null && ((Atom_imp)first).store() == st) {
+	    int from = ((Atom_imp)first).index();
+	    return st.countSelected(from,from + countAtoms());
+	}
 	int ret = 0;
 	for (Assembly s = assemblyList();s != null;s = s.next())
 	    ret += s.countSelectedAtoms();
 	return ret;
     }
 
-    // Selecting all atoms
+    // Selecting all atoms. Atoms of chain in a molecule are a range of
+    // packed store.
     public void selectAllAtoms(boolean val)
     {
+	CoordinateStore st = Molecule_imp.packed(this);
+	Atom first = firstAtom();
+	if (st != null && first != null && ((Atom_imp)first).store() == st) {
+	    int from = ((Atom_imp)first).index();
+	    st.setSelected(from,from + countAtoms(),val);
+	    return;
+	}
 	for (Assembly s = assemblyList();s != null;s = s.next())
 	    s.selectAllAtoms(val);
     }
 
+    // Returns the first atom of the chain
+    private Atom firstAtom()
+    {
+	for (Assembly s = assemblyList();s != null;s = s.next())
+	    if (s.atomList() != null) return s.atomList();
+	return null;
+    }
+
     // Sequence of the chain.
     public String getSequence()
     {
@@ -225,4 +254,21 @@ class Chain_imp extends Chain
 	for (Assembly a = assemblyList_;a != null;a = a.next())
 	    a.setGroupId(val);
     }
+
+    // Index of assemblies. Null if assemblies or atoms were added or moved
+    // since it was made.
+    private transient ResidueIndex index_ = null;
+    public synchronized ResidueIndex residueIndex()
+    {
+	if (index_ == null) index_ = new ResidueIndex(this);
+	return index_;
+    }
+
+    // Marks residue index of the chain, packed coordinates and index of
+    // atoms of its molecule as out of date
+    static void invalidate(Chain chain)
+    {
+	if (chain instanceof Chain_imp) ((Chain_imp)chain).index_ = null;
+	Molecule_imp.invalidate(chain);
+    }
 }
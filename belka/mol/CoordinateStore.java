@@ -0,0 +1,192 @@
+package belka.mol;
+
+/**
+ * Columns of coordinates and radii of atoms. Atoms keep an index into a
+ * store instead of own fields. New atoms are put into a block of the thread
+ * creating them. A molecule packs coordinates of its atoms into its own
+ * store in the order of atoms, so that passes over all atoms of the
+ * molecule are loops over the columns. Selection of atoms is kept as a bit
+ * set with one bit per slot, so that selection of a molecule is changed and
+ * counted by words.
+ *
+ * @author Alexej Abyzov
+ */
+class CoordinateStore
+{
+    // Number of atoms in a block for new atoms
+    private static final int BLOCK_SIZE = 1024;
+
+    // Block for new atoms of each thread
+    private static final ThreadLocal<CoordinateStore> block_ =
+	new ThreadLocal<CoordinateStore>();
+
+    // Original coordinates
+    final double[] x_, y_, z_;
+
+    // Derived coordinates
+    final double[] xDer_, yDer_, zDer_;
+
+    // Screen coordinates
+    final int[] xScreen_, yScreen_, zScreen_;
+
+    // Radii
+    final double[] r_;
+    final int[]    rScreen_;
+
+    // Selected atoms, one bit per slot
+    final long[] selected_;
+
+    // Numbers of changes of derived coordinates and of selection
+    int version_    = 0;
+    int selVersion_ = 0;
+
+    // Number of used slots
+    private int size_ = 0;
+
+    /**
+     * Creates store for the given number of atoms.
+     */
+    CoordinateStore(int capacity)
+    {
+	x_       = new double[capacity];
+	y_       = new double[capacity];
+	z_       = new double[capacity];
+	xDer_    = new double[capacity];
+	yDer_    = new double[capacity];
+	zDer_    = new double[capacity];
+	xScreen_ = new int[capacity];
+	yScreen_ = new int[capacity];
+	zScreen_ = new int[capacity];
+	r_       = new double[capacity];
+	rScreen_ = new int[capacity];
+	selected_ = new long[(capacity + 63)>>6];
+    }
+
+    /**
+     * Returns store with a free slot for a new atom created by the current
+     * thread.
+     */
+    static CoordinateStore block()
+    {
+	CoordinateStore ret = block_.get();
+	if (ret == null || ret.size_ == BLOCK_SIZE) {
+	    ret = new CoordinateStore(BLOCK_SIZE);
+	    block_.set(ret);
+	}
+	return ret;
+    }
+
+    /**
+     * Returns number of used slots.
+     */
+    int size() { return size_; }
+
+    /**
+     * Adds slot for a new atom and returns its index. Derived coordinates
+     * are set equal to original ones.
+     */
+    int add(double x,double y,double z)
+    {
+	int ret = size_++;
+	x_[ret] = xDer_[ret] = x;
+	y_[ret] = yDer_[ret] = y;
+	z_[ret] = zDer_[ret] = z;
+	r_[ret] = -1;
+	rScreen_[ret] = -1;
+	setSelected(ret,true);
+	return ret;
+    }
+
+    /**
+     * Adds slot with values copied from a slot of another store and returns
+     * its index.
+     */
+    int add(CoordinateStore from,int ind)
+    {
+	int ret = size_++;
+	x_[ret]       = from.x_[ind];
+	y_[ret]       = from.y_[ind];
+	z_[ret]       = from.z_[ind];
+	xDer_[ret]    = from.xDer_[ind];
+	yDer_[ret]    = from.yDer_[ind];
+	zDer_[ret]    = from.zDer_[ind];
+	xScreen_[ret] = from.xScreen_[ind];
+	yScreen_[ret] = from.yScreen_[ind];
+	zScreen_[ret] = from.zScreen_[ind];
+	r_[ret]       = from.r_[ind];
+	rScreen_[ret] = from.rScreen_[ind];
+	setSelected(ret,from.isSelected(ind));
+	return ret;
+    }
+
+    /**
+     * Checks if atom in the slot is selected.
+     */
+    boolean isSelected(int ind)
+    {
+	return (selected_[ind>>6] & (1L<<ind)) != 0;
+    }
+
+    /**
+     * Selects or deselects atom in the slot.
+     */
+    void setSelected(int ind,boolean val)
+    {
+	selVersion_++;
+	if (val) selected_[ind>>6] |=  (1L<<ind);
+	else     selected_[ind>>6] &= ~(1L<<ind);
+    }
+
+    /**
+     * Selects or deselects atoms in slots from 'from' to 'to' - 1.
+     */
+    void setSelected(int from,int to,boolean val)
+    {
+	if (from >= to) return;
+	selVersion_++;
+	int  w1 = from>>6, w2 = (to - 1)>>6;
+	long m1 = -1L<<from, m2 = -1L>>>(-to);
+	if (w1 == w2) m1 &= m2;
+	for (int w = w1;w <= w2;w++) {
+	    long m = -1L;
+	    if (w == w1) m = m1;
+	    else if (w == w2) m = m2;
+	    if (val) selected_[w] |=  m;
+	    else     selected_[w] &= ~m;
+	}
+    }
+
+    /**
+     * Returns number of selected atoms in slots from 'from' to 'to' - 1.
+     */
+    int countSelected(int from,int to)
+    {
+	if (from >= to) return 0;
+	int  w1 = from>>6, w2 = (to - 1)>>6;
+	long m1 = -1L<<from, m2 = -1L>>>(-to);
+	if (w1 == w2) return Long.bitCount(selected_[w1] & m1 & m2);
+	int ret = Long.bitCount(selected_[w1] & m1);
+	for (int w = w1 + 1;w < w2;w++) ret += Long.bitCount(selected_[w]);
+	return ret + Long.bitCount(selected_[w2] & m2);
+    }
+
+    /**
+     * Returns the first slot with selected atom starting from the given
+     * one, -1 if there is no such slot.
+     */
+    int nextSelected(int from)
+    {
+	if (from < 0) from = 0;
+	if (from >= size_) return -1;
+	int  w    = from>>6;
+	long word = selected_[w] & (-1L<<from);
+	while (true) {
+	    if (word != 0) {
+		int ret = (w<<6) + Long.numberOfTrailingZeros(word);
+		return (ret < size_) ? ret : -1;
+	    }
+	    if (++w == selected_.length) return -1;
+	    word = selected_[w];
+	}
+    }
+}
@@ -2,6 +2,7 @@ package belka.mol;
 
 //--- Java import ---
 import java.io.*;
+import java.util.*;
 
 /**
  * Abstract class describing behavior of a molecule. Molecule can be as simple
@@ -12,6 +13,9 @@ import java.io.*;
  */
 public abstract class Molecule extends Transformable implements Serializable
 {
+    // Same as before packed coordinates were added
+    private static final long serialVersionUID = -5988557963183169986L;
+
     /**
      * Static method to create a new molecule.
      *
@@ -164,6 +168,32 @@ public abstract class Molecule extends Transformable implements Serializable
      */
     public abstract void selectAllAtoms(boolean val);
 
+    /**
+     * Selects atoms with numbers in the set and deselects the others.
+     * Atoms are numbered as in the index of atoms of the molecule.
+     *
+     * @param set set of atom numbers.
+     */
+    public abstract void selectAtoms(BitSet set);
+
+    /**
+     * Returns set of numbers of selected atoms. Atoms are numbered as in
+     * the index of atoms of the molecule.
+     *
+     * @return set of atom numbers.
+     */
+    public abstract BitSet getSelectedAtoms();
+
+    /**
+     * Returns number of the first selected atom starting from the given
+     * number. Atoms are numbered as in the index of atoms of the molecule.
+     *
+     * @param from number to start from.
+     *
+     * @return number of selected atom, -1 if there is no such atom.
+     */
+    public abstract int nextSelectedAtom(int from);
+
     /**
      * The function transforms a molecule.
      * The transformation is not related to screen rotation and affect 
@@ -190,6 +220,60 @@ public abstract class Molecule extends Transformable implements Serializable
      */
     public abstract boolean rotate(double [][] rot,double[] trans);
 
+    /**
+     * Adds derived coordinates of all atoms in the molecule to the sum.
+     *
+     * @param sum array with sums of x, y and z coordinates.
+     *
+     * @return number of atoms in the molecule.
+     */
+    public abstract int sumDerivedCoordinates(double[] sum);
+
+    /**
+     * Returns derived coordinates of atoms packed as x, y and z for each
+     * atom. Atoms are in the order of the index of atoms of the molecule.
+     *
+     * @return packed derived coordinates.
+     */
+    public abstract double[] getDerivedCoordinates();
+
+    /**
+     * Shifts derived coordinates of all atoms in the molecule.
+     *
+     * @param dx shift along x.
+     * @param dy shift along y.
+     * @param dz shift along z.
+     */
+    public abstract void shiftDerivedCoordinates(double dx,double dy,
+						 double dz);
+
+    /**
+     * Returns inverted index of atoms in the molecule. The index is kept
+     * until chains, assemblies or atoms are added to or removed from the
+     * molecule.
+     *
+     * @return index of atoms in the molecule.
+     */
+    public abstract AtomIndex atomIndex();
+
+    /**
+     * Returns counter of modifications of the molecule. The counter changes
+     * when chains, assemblies or atoms are added or moved, when alignment
+     * or group of an assembly or derived coordinates of atoms are changed.
+     *
+     * @return counter of modifications.
+     */
+    public abstract long getModificationCount();
+
+    /**
+     * Returns counter of changes of selected atoms of the molecule. The
+     * counter also changes when chains, assemblies or atoms are added or
+     * moved.
+     *
+     * @return counter of changes of selection.
+     */
+    public abstract long getSelectionCount();
+
     /**
      * Returns string representation of the molecule.
      *
@@ -1,5 +1,8 @@
 package belka.mol;
 
+//--- Java import ---
+import java.util.*;
+
 /**
  * Implementation of for class {@link Molecule}
  *
@@ -7,6 +10,9 @@ package belka.mol;
  */
 class Molecule_imp extends Molecule
 {
+    // Same as before coordinates were packed
+    private static final long serialVersionUID = 2520845350102291246L;
+
     // Constructor
     public Molecule_imp(String molName,String pdbCode)
     {
@@ -25,6 +31,94 @@ class Molecule_imp extends Molecule
 	for (Chain chain = chainList_;chain != null;chain = chain.next())
 	    chain.disassemble();
 	chainList_ = lastChain_ = null;
+	coords_ = null;
+	atomIndex_ = null;
+	modCount_++;
+    }
+
+    // Coordinates of atoms packed in the order of atoms. Null if atoms
+    // were added or moved since packing.
+    private transient CoordinateStore coords_ = null;
+
+    // Returns coordinates of atoms packed into one store
+    synchronized CoordinateStore coordinates()
+    {
+	if (coords_ != null) return coords_;
+	CoordinateStore store = new CoordinateStore(countAtoms());
+	for (Chain c = chainList();c != null;c = c.next())
+	    for (Assembly s = c.assemblyList();s != null;s = s.next())
+		for (Atom a = s.atomList();a != null;a = a.next())
+		    ((Atom_imp)a).moveTo(store);
+	coords_ = store;
+	return store;
+    }
+
+    // Inverted index of atoms. Null if atoms were added or moved since it
+    // was made.
+    private transient AtomIndex atomIndex_ = null;
+    public synchronized AtomIndex atomIndex()
+    {
+	if (atomIndex_ == null) atomIndex_ = new AtomIndex(this);
+	return atomIndex_;
+    }
+
+    // Marks packed coordinates and index of atoms of molecule with the
+    // chain as out of date
+    static void invalidate(Chain chain)
+    {
+	if (chain == null) return;
+	Molecule mol = chain.molecule();
+	if (!(mol instanceof Molecule_imp)) return;
+	((Molecule_imp)mol).coords_    = null;
+	((Molecule_imp)mol).atomIndex_ = null;
+	((Molecule_imp)mol).modCount_++;
+    }
+
+    // Returns packed coordinates of molecule with the chain, null if the
+    // chain is not in a molecule
+    static CoordinateStore packed(Chain chain)
+    {
+	if (chain == null) return null;
+	Molecule mol = chain.molecule();
+	if (!(mol instanceof Molecule_imp)) return null;
+	return ((Molecule_imp)mol).coordinates();
+    }
+
+    // Marks sets of groups in index of atoms of molecule with the chain as
+    // out of date
+    static void invalidateGroups(Chain chain)
+    {
+	if (chain == null) return;
+	Molecule mol = chain.molecule();
+	if (!(mol instanceof Molecule_imp)) return;
+	((Molecule_imp)mol).modCount_++;
+	AtomIndex index = ((Molecule_imp)mol).atomIndex_;
+	if (index != null) index.invalidateGroups();
+    }
+
+    // Counts change of attributes of assemblies of molecule with the chain
+    static void modified(Chain chain)
+    {
+	if (chain == null) return;
+	Molecule mol = chain.molecule();
+	if (!(mol instanceof Molecule_imp)) return;
+	((Molecule_imp)mol).modCount_++;
+    }
+
+    // Number of changes of chains, assemblies and their attributes. Packed
+    // store counts changes of derived coordinates and of selection, it is
+    // made again after a change of chains or assemblies.
+    private transient int modCount_ = 0;
+    public long getModificationCount()
+    {
+	CoordinateStore st = coordinates();
+	return ((long)modCount_<<32) + st.version_;
+    }
+
+    public long getSelectionCount()
+    {
+	CoordinateStore st = coordinates();
+	return ((long)modCount_<<32) + st.selVersion_;
     }
 
     // Next molecule
@@ -154,6 +248,9 @@ class Molecule_imp extends Molecule
 
 	// Trying to set molecule for chain
 	if (!chain.setMolecule(this)) return false;
+	coords_ = null;
+	atomIndex_ = null;
+	modCount_++;
 
 	if (chainList_ == null) {
 	    lastChain_ = chainList_ = chain;
@@ -220,17 +317,44 @@ class Molecule_imp extends Molecule
 
     public int countSelectedAtoms()
     {
-	int ret = 0;
-	for (Chain c = chainList();c != null;c = c.next())
-	    ret += c.countSelectedAtoms();
-	return ret;
+	CoordinateStore st = coordinates();
+	return st.countSelected(0,st.size());
     }
 
     // Selecting all atoms
     public void selectAllAtoms(boolean val)
     {
-	for (Chain c = chainList();c != null;c = c.next())
-	    c.selectAllAtoms(val);
+	CoordinateStore st = coordinates();
+	st.setSelected(0,st.size(),val);
+    }
+
+    // Selecting atoms by numbers. Packed store and index of atoms have the
+    // same order of atoms.
+    public void selectAtoms(BitSet set)
+    {
+	CoordinateStore st = coordinates();
+	int n = st.size();
+	st.setSelected(0,n,false);
+	for (int i = set.nextSetBit(0);i >= 0 && i < n;) {
+	    int end = set.nextClearBit(i);
+	    if (end > n) end = n;
+	    st.setSelected(i,end,true);
+	    i = set.nextSetBit(end);
+	}
+    }
+
+    public BitSet getSelectedAtoms()
+    {
+	CoordinateStore st = coordinates();
+	BitSet ret = new BitSet(st.size());
+	for (int i = st.nextSelected(0);i >= 0;i = st.nextSelected(i + 1))
+	    ret.set(i);
+	return ret;
+    }
+
+    public int nextSelectedAtom(int from)
+    {
+	return coordinates().nextSelected(from);
     }
 
     // Transformation of molecule. This is not related to screen rotation
@@ -239,6 +363,48 @@ class Molecule_imp extends Molecule
 	return rotate(rot,trans,null);
     }
 
+    // Summing derived coordinates
+    public int sumDerivedCoordinates(double[] sum)
+    {
+	CoordinateStore st = coordinates();
+	double[] xd = st.xDer_, yd = st.yDer_, zd = st.zDer_;
+	int n = st.size();
+	for (int i = 0;i < n;i++) {
+	    sum[0] += xd[i];
+	    sum[1] += yd[i];
+	    sum[2] += zd[i];
+	}
+	return n;
+    }
+
+    // Packing derived coordinates
+    public double[] getDerivedCoordinates()
+    {
+	CoordinateStore st = coordinates();
+	double[] xd = st.xDer_, yd = st.yDer_, zd = st.zDer_;
+	int n = st.size();
+	double[] ret = new double[3*n];
+	for (int i = 0;i < n;i++) {
+	    ret[3*i]     = xd[i];
+	    ret[3*i + 1] = yd[i];
+	    ret[3*i + 2] = zd[i];
+	}
+	return ret;
+    }
+
+    // Shifting derived coordinates
+    public void shiftDerivedCoordinates(double dx,double dy,double dz)
+    {
+	CoordinateStore st = coordinates();
+	double[] xd = st.xDer_, yd = st.yDer_, zd = st.zDer_;
+	for (int i = 0, n = st.size();i < n;i++) {
+	    xd[i] += dx;
+	    yd[i] += dy;
+	    zd[i] += dz;
+	}
+	st.version_++;
+    }
+
     // Transformation of molecule. This is not related to screen rotation
     public boolean rotate(double [][] rot,double[] trans,double[] center)
     {
@@ -254,92 +420,72 @@ class Molecule_imp extends Molecule
 	    rot[2].length < 3 ||
 	    trans.length < 3) return false;
 
-	for (Chain c = chainList();c != null;c = c.next())
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    double x = a.getX();
-		    double y = a.getY();
-		    double z = a.getZ();
-		    a.setDerivedX(x*rot[0][0] + y*rot[0][1] + z*rot[0][2] +
-				  trans[0] - x_center);
-		    a.setDerivedY(x*rot[1][0] + y*rot[1][1] + z*rot[1][2] +
-				  trans[1] - y_center);
-		    a.setDerivedZ(x*rot[2][0] + y*rot[2][1] + z*rot[2][2] +
-				  trans[2] - z_center);
-		}
+	double r00 = rot[0][0], r01 = rot[0][1], r02 = rot[0][2];
+	double r10 = rot[1][0], r11 = rot[1][1], r12 = rot[1][2];
+	double r20 = rot[2][0], r21 = rot[2][1], r22 = rot[2][2];
+	double t0 = trans[0], t1 = trans[1], t2 = trans[2];
+	CoordinateStore st = coordinates();
+	double[] xs = st.x_,    ys = st.y_,    zs = st.z_;
+	double[] xd = st.xDer_, yd = st.yDer_, zd = st.zDer_;
+	for (int i = 0, n = st.size();i < n;i++) {
+	    double x = xs[i];
+	    double y = ys[i];
+	    double z = zs[i];
+	    xd[i] = x*r00 + y*r01 + z*r02 + t0 - x_center;
+	    yd[i] = x*r10 + y*r11 + z*r12 + t1 - y_center;
+	    zd[i] = x*r20 + y*r21 + z*r22 + t2 - z_center;
+	}
+	st.version_++;
 	return true;
     }
 
-    // Methods of Transformable class
+    // Methods of Transformable class. Screen coordinates are computed as
+    // in Atom.setScreenX() and alike.
     public void transform()
     {
-	for (Chain c = chainList();c != null;c = c.next())
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    double x = a.getDerivedX();
-		    double y = a.getDerivedY();
-		    double z = a.getDerivedZ();
-		    a.setScreenX((x*rot_[0][0] +
-				  y*rot_[0][1] +
-				  z*rot_[0][2])*scale_ + trans_[0]);
-		    a.setScreenY((x*rot_[1][0] +
-				  y*rot_[1][1] +
-				  z*rot_[1][2])*scale_ + trans_[1]);
-		    a.setScreenZ((x*rot_[2][0] +
-				  y*rot_[2][1] +
-				  z*rot_[2][2])*scale_ + trans_[2]);
-		}
+	transform(true,true,true);
     }
 
     public void transformXY()
     {
-	for (Chain c = chainList();c != null;c = c.next())
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    double x = a.getDerivedX();
-		    double y = a.getDerivedY();
-		    double z = a.getDerivedZ();
-		    a.setScreenX((x*rot_[0][0] +
-				  y*rot_[0][1] +
-				  z*rot_[0][2])*scale_ + trans_[0]);
-		    a.setScreenY((x*rot_[1][0] +
-				  y*rot_[1][1] +
-				  z*rot_[1][2])*scale_ + trans_[1]);
-		}
+	transform(true,true,false);
     }
 
     public void transformYZ()
     {
-	for (Chain c = chainList();c != null;c = c.next())
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    double x = a.getDerivedX();
-		    double y = a.getDerivedY();
-		    double z = a.getDerivedZ();
-		    a.setScreenY((x*rot_[1][0] +
-				  y*rot_[1][1] +
-				  z*rot_[1][2])*scale_ + trans_[1]);
-		    a.setScreenZ((x*rot_[2][0] +
-				  y*rot_[2][1] +
-				  z*rot_[2][2])*scale_ + trans_[2]);
-		}
+	transform(false,true,true);
     }
 
     public void transformZX()
     {
-	for (Chain c = chainList();c != null;c = c.next())
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    double x = a.getDerivedX();
-		    double y = a.getDerivedY();
-		    double z = a.getDerivedZ();
-		    a.setScreenX((x*rot_[0][0] +
-				  y*rot_[0][1] +
-				  z*rot_[0][2])*scale_ + trans_[0]);
-		    a.setScreenZ((x*rot_[2][0] +
-				  y*rot_[2][1] +
-				  z*rot_[2][2])*scale_ + trans_[2]);
-		}
+	transform(true,false,true);
+    }
+
+    // Sets given screen coordinates of atoms
+    private void transform(boolean setX,boolean setY,boolean setZ)
+    {
+	final double scale = Atom_imp.SCALE_COORD_TO_PIXELS;
+	double r00 = rot_[0][0], r01 = rot_[0][1], r02 = rot_[0][2];
+	double r10 = rot_[1][0], r11 = rot_[1][1], r12 = rot_[1][2];
+	double r20 = rot_[2][0], r21 = rot_[2][1], r22 = rot_[2][2];
+	double t0 = trans_[0], t1 = trans_[1], t2 = trans_[2];
+	double s = scale_;
+	CoordinateStore st = coordinates();
+	double[] xd = st.xDer_,    yd = st.yDer_,    zd = st.zDer_;
+	int[]    xs = st.xScreen_, ys = st.yScreen_, zs = st.zScreen_;
+	int n = st.size();
+	if (setX)
+	    for (int i = 0;i < n;i++)
+		xs[i] = (int)(scale*((xd[i]*r00 + yd[i]*r01 + zd[i]*r02)*s +
+				     t0));
+	if (setY)
+	    for (int i = 0;i < n;i++)
+		ys[i] = (int)(scale*((xd[i]*r10 + yd[i]*r11 + zd[i]*r12)*s +
+				     t1));
+	if (setZ)
+	    for (int i = 0;i < n;i++)
+		zs[i] = (int)(scale*((xd[i]*r20 + yd[i]*r21 + zd[i]*r22)*s +
+				     t2));
     }
 
     public void transformSize()
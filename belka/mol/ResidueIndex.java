@@ -0,0 +1,129 @@
+package belka.mol;
+
+//--- Java import ---
+import java.util.*;
+
+/**
+ * Index of assemblies of a chain and of their main atoms. Assemblies,
+ * including gaps, get slots in the order of the chain, original coordinates
+ * of main atoms are packed in the same order. Chains keep their index until
+ * assemblies or atoms are added or moved, so residue level algorithms can
+ * share it and do passes over arrays instead of searching atoms of each
+ * assembly.
+ *
+ * @author Alexej Abyzov
+ */
+public class ResidueIndex
+{
+    // Assemblies and their main atoms by slot
+    private Assembly[] assemblies_ = null;
+    private Atom[]     atoms_      = null;
+
+    // Original coordinates of main atoms, three values per slot
+    private double[] coords_ = null;
+
+    // Slots of assemblies
+    private IdentityHashMap<Assembly,Integer> slots_ = null;
+
+    // Constructor
+    ResidueIndex(Chain chain)
+    {
+	int n = 0; // Gaps also get slots
+	for (Assembly s = chain.assemblyList();s != null;s = s.next()) n++;
+	assemblies_ = new Assembly[n];
+	atoms_      = new Atom[n];
+	coords_     = new double[3*n];
+	slots_      = new IdentityHashMap<Assembly,Integer>(2*n);
+	int slot = 0;
+	for (Assembly s = chain.assemblyList();s != null;s = s.next()) {
+	    Atom a = s.getMainAtom();
+	    assemblies_[slot] = s;
+	    atoms_[slot]      = a;
+	    if (a != null) {
+		coords_[3*slot]     = a.getX();
+		coords_[3*slot + 1] = a.getY();
+		coords_[3*slot + 2] = a.getZ();
+	    }
+	    slots_.put(s,slot);
+	    slot++;
+	}
+    }
+
+    /**
+     * Returns number of slots, i.e. number of assemblies and gaps in the
+     * chain.
+     *
+     * @return number of slots.
+     */
+    public int size() { return assemblies_.length; }
+
+    /**
+     * Returns assembly in the slot.
+     *
+     * @param slot slot of the assembly.
+     *
+     * @return assembly in the slot.
+     */
+    public Assembly getAssembly(int slot) { return assemblies_[slot]; }
+
+    /**
+     * Returns main atom of the assembly in the slot.
+     *
+     * @param slot slot of the assembly.
+     *
+     * @return main atom or null if assembly does not have it.
+     */
+    public Atom getMainAtom(int slot) { return atoms_[slot]; }
+
+    /**
+     * Returns main atom of the assembly. The atom is searched in the
+     * assembly if it is not in the chain.
+     *
+     * @param ass assembly.
+     *
+     * @return main atom or null if assembly does not have it.
+     */
+    public Atom getMainAtom(Assembly ass)
+    {
+	Integer slot = slots_.get(ass);
+	if (slot == null) return ass.getMainAtom();
+	return atoms_[slot];
+    }
+
+    /**
+     * Returns main atom of the assembly using the index of its chain.
+     *
+     * @param ass assembly.
+     *
+     * @return main atom or null if assembly does not have it.
+     */
+    public static Atom mainAtomOf(Assembly ass)
+    {
+	Chain chain = ass.chain();
+	if (chain == null) return ass.getMainAtom();
+	return chain.residueIndex().getMainAtom(ass);
+    }
+
+    /**
+     * Returns slot of the assembly.
+     *
+     * @param ass assembly.
+     *
+     * @return slot of the assembly, -1 if assembly is not in the chain.
+     */
+    public int getSlot(Assembly ass)
+    {
+	Integer slot = slots_.get(ass);
+	if (slot == null) return -1;
+	return slot;
+    }
+
+    /**
+     * Returns original coordinates of main atoms packed as x, y and z for
+     * each slot. Coordinates are zero for assemblies without main atom. The
+     * array is shared and must not be changed.
+     *
+     * @return packed coordinates of main atoms.
+     */
+    public double[] getCoordinates() { return coords_; }
+}
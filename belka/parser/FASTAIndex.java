@@ -0,0 +1,361 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+//--- Application imports ---
+import belka.mol.*;
+
+/**
+ * Object of this class gives random access to records of a FASTA-file by
+ * their names. Byte offsets of records are kept in an index file next to
+ * the FASTA-file. The index file has the same format as ".fai" files of
+ * samtools: name, length, offset of the first residue, number of residues
+ * and number of bytes in a line. The index is built once and is used while
+ * it is newer than the FASTA-file. Records are read through a file channel
+ * when they are requested. Records with lines of different length are
+ * marked with zero line length and are read until the next header.
+ *
+ * @author Alexej Abyzov
+ */
+public class FASTAIndex
+{
+    /** Extension of index files. */
+    public static final String INDEX_EXTENSION = ".fai";
+
+    // Size of blocks to read
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    // Indexed record
+    private static class Record
+    {
+	String name_      = null;
+	long   length_    = 0;
+	long   offset_    = 0;
+	int    lineBases_ = 0;
+	int    lineWidth_ = 0;
+    }
+
+    // Records in the order of file and by name
+    private ArrayList<Record>      records_ = new ArrayList<Record>();
+    private HashMap<String,Record> byName_  = new HashMap<String,Record>();
+
+    // Indexed file
+    private RandomAccessFile file_    = null;
+    private FileChannel      channel_ = null;
+
+    private FASTAIndex() {}
+
+    /**
+     * Opens FASTA-file for random access. The index file is read if it
+     * exists and is up to date. Otherwise it is built and written.
+     *
+     * @param fasta FASTA-file.
+     *
+     * @return index of the file. Null if error happend.
+     */
+    public static FASTAIndex open(File fasta)
+    {
+	if (FormatResolver.zippedByExtension(fasta.getName()) ||
+	    FormatResolver.gzippedByExtension(fasta.getName())) {
+	    System.err.println("Can't index compressed file '" +
+			       fasta.getName() + "'.");
+	    return null;
+	}
+
+	FASTAIndex ret = new FASTAIndex();
+	try {
+	    ret.file_    = new RandomAccessFile(fasta,"r");
+	    ret.channel_ = ret.file_.getChannel();
+	    File fai = new File(fasta.getPath() + INDEX_EXTENSION);
+	    if (!fai.isFile() || fai.lastModified() < fasta.lastModified() ||
+		!ret.readIndex(fai)) {
+		ret.buildIndex();
+		ret.writeIndex(fai);
+	    }
+	} catch (Exception e) {
+	    System.err.print("Exception while indexing FASTA-file: ");
+	    System.err.println(fasta.getName());
+	    System.err.println(e.toString());
+	    ret.close();
+	    return null;
+	}
+	return ret;
+    }
+
+    /**
+     * Closes the FASTA-file.
+     */
+    public void close()
+    {
+	try { file_.close(); } catch (Exception e) {}
+	channel_ = null;
+    }
+
+    /**
+     * Returns number of records.
+     *
+     * @return number of records.
+     */
+    public int size() { return records_.size(); }
+
+    /**
+     * Returns name of the record with given index. Name is the first word
+     * of the header line.
+     *
+     * @param index index of the record.
+     *
+     * @return name of the record.
+     */
+    public String getName(int index) { return records_.get(index).name_; }
+
+    /**
+     * Returns 'true' if there is a record with given name.
+     *
+     * @param name name of the record.
+     *
+     * @return 'true' if there is a record with given name.
+     */
+    public boolean contains(String name) { return byName_.containsKey(name); }
+
+    /**
+     * Reads record with given name and creates molecule from it. The
+     * molecule is named by the whole header line as done by
+     * {@link FASTAParser}.
+     *
+     * @param name name of the record.
+     *
+     * @return new molecule. Null if there is no such record or error
+     * happend.
+     */
+    public Molecule fetch(String name)
+    {
+	Record rec = byName_.get(name);
+	if (rec == null) {
+	    System.err.println("No record '" + name + "' in FASTA-file.");
+	    return null;
+	}
+	try {
+	    return readRecord(rec);
+	} catch (Exception e) {
+	    System.err.println("Exception while reading FASTA record: " +
+			       name);
+	    System.err.println(e.toString());
+	}
+	return null;
+    }
+
+    // Reads record and creates molecule
+    private Molecule readRecord(Record rec) throws IOException
+    {
+	String header = readHeader(rec.offset_);
+	StringBuilder seq = new StringBuilder((int)rec.length_);
+
+	// Number of bytes is known for records with lines of equal length
+	long end = -1;
+	if (rec.lineBases_ > 0)
+	    end = rec.offset_ + rec.length_/rec.lineBases_*rec.lineWidth_ +
+		rec.length_%rec.lineBases_;
+
+	ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+	long pos = rec.offset_;
+	boolean lineStart = true;  // Position is at the start of line
+	boolean content   = false; // Line has non-space characters
+	int     trailing  = 0;     // Number of trailing spaces appended
+	boolean done = false;
+	while (!done && (end < 0 || pos < end)) {
+	    buf.clear();
+	    if (end >= 0 && end - pos < BLOCK_SIZE) buf.limit((int)(end - pos));
+	    int n = channel_.read(buf,pos);
+	    if (n <= 0) break;
+	    byte[] bytes = buf.array();
+	    for (int i = 0;i < n;i++) {
+		int c = bytes[i] & 0xff;
+		if (c == '\n') {
+		    seq.setLength(seq.length() - trailing);
+		    lineStart = true;
+		    content   = false;
+		    trailing  = 0;
+		    continue;
+		}
+		if (lineStart && c == '>' && end < 0) {
+		    done = true;
+		    break;
+		}
+		lineStart = false;
+		if (c > ' ') {
+		    seq.append((char)c);
+		    content  = true;
+		    trailing = 0;
+		} else if (content) {
+		    seq.append((char)c);
+		    trailing++;
+		}
+	    }
+	    pos += n;
+	}
+	seq.setLength(seq.length() - trailing);
+	return FASTAParser.createMolecule(header,seq);
+    }
+
+    // Reads header line ending right before the offset and returns it
+    // without leading '>'
+    private String readHeader(long offset) throws IOException
+    {
+	int size = 256;
+	while (true) {
+	    long start = Math.max(0,offset - size);
+	    ByteBuffer buf = ByteBuffer.allocate((int)(offset - start));
+	    while (buf.hasRemaining())
+		if (channel_.read(buf,start + buf.position()) <= 0) break;
+	    byte[] bytes = buf.array();
+	    int e = buf.position();
+	    while (e > 0 && (bytes[e - 1] == '\n' || bytes[e - 1] == '\r')) e--;
+	    int b = e;
+	    while (b > 0 && bytes[b - 1] != '\n' && bytes[b - 1] != '\r') b--;
+	    if (b > 0 || start == 0) {
+		if (b < e && bytes[b] == '>') b++;
+		return new String(bytes,b,e - b,"ISO-8859-1");
+	    }
+	    size *= 4;
+	}
+    }
+
+    // Scans file and creates records
+    private void buildIndex() throws IOException
+    {
+	records_.clear();
+	byName_.clear();
+
+	InputStream in = new BufferedInputStream(Channels.newInputStream(
+						      channel_.position(0)),
+						  BLOCK_SIZE);
+	StringBuilder header = new StringBuilder();
+	Record rec = null;
+	boolean inHeader = false;
+	boolean uniform  = true;  // Lines of the record have equal length
+	boolean shortLine = false; // Line shorter than the first was found
+	long pos = 0, lineStart = 0;
+	int  first = -1, last = -1, width = 0; // Content of current line
+	int  c;
+	do {
+	    c = in.read();
+	    if (c >= 0 && c != '\n') {
+		if (pos == lineStart && c == '>') inHeader = true;
+		if (inHeader) {
+		    header.append((char)c);
+		} else if (rec != null && c > ' ') {
+		    if (first < 0) first = (int)(pos - lineStart);
+		    last = (int)(pos - lineStart);
+		}
+		pos++;
+		continue;
+	    }
+
+	    // End of line
+	    if (c >= 0) pos++;
+	    width = (int)(pos - lineStart);
+	    if (inHeader) {
+		if (rec != null) addRecord(rec,uniform);
+		rec = new Record();
+		rec.name_   = firstWord(header);
+		rec.offset_ = pos;
+		header.setLength(0);
+		inHeader  = false;
+		uniform   = true;
+		shortLine = false;
+	    } else if (rec != null && width > 0) {
+		int bases = first < 0 ? 0 : last - first + 1;
+		if (bases > 0) {
+		    if (first > 0 || shortLine) uniform = false;
+		    if (rec.lineBases_ == 0) {
+			rec.lineBases_ = bases;
+			rec.lineWidth_ = width;
+		    } else if (bases > rec.lineBases_ ||
+			       (bases == rec.lineBases_ &&
+				width != rec.lineWidth_)) {
+			uniform = false;
+		    }
+		}
+		if (bases < rec.lineBases_ || bases == 0) shortLine = true;
+		rec.length_ += bases;
+	    }
+	    lineStart = pos;
+	    first = last = -1;
+	} while (c >= 0);
+	if (rec != null) addRecord(rec,uniform);
+    }
+
+    // Adds record to the index
+    private void addRecord(Record rec,boolean uniform)
+    {
+	if (!uniform || rec.length_ == 0) rec.lineBases_ = rec.lineWidth_ = 0;
+	records_.add(rec);
+	if (byName_.containsKey(rec.name_))
+	    System.err.println("Duplicated name '" + rec.name_ +
+			       "' in FASTA-file. Using the first record.");
+	else byName_.put(rec.name_,rec);
+    }
+
+    // Returns first word of header without leading '>'
+    private static String firstWord(StringBuilder header)
+    {
+	int b = 1, e = 1, n = header.length();
+	while (b < n && header.charAt(b) <= ' ') b++;
+	e = b;
+	while (e < n && header.charAt(e) > ' ') e++;
+	return header.substring(b,e);
+    }
+
+    // Reads index file, returns 'false' if it can not be used
+    private boolean readIndex(File fai)
+    {
+	records_.clear();
+	byName_.clear();
+	BufferedReader in = null;
+	boolean ret = true;
+	try {
+	    in = new BufferedReader(new FileReader(fai));
+	    String line = null;
+	    while ((line = in.readLine()) != null) {
+		if (line.length() == 0) continue;
+		String[] words = line.split("\t");
+		if (words.length < 5) {
+		    ret = false;
+		    break;
+		}
+		Record rec = new Record();
+		rec.name_      = words[0];
+		rec.length_    = Long.parseLong(words[1]);
+		rec.offset_    = Long.parseLong(words[2]);
+		rec.lineBases_ = Integer.parseInt(words[3]);
+		rec.lineWidth_ = Integer.parseInt(words[4]);
+		records_.add(rec);
+		if (!byName_.containsKey(rec.name_)) byName_.put(rec.name_,rec);
+	    }
+	} catch (Exception e) {
+	    ret = false;
+	}
+	try { in.close(); } catch (Exception e) {}
+	return ret;
+    }
+
+    // Writes index file
+    private void writeIndex(File fai)
+    {
+	try {
+	    PrintWriter out = new PrintWriter(new BufferedWriter(
+						  new FileWriter(fai)));
+	    for (Record rec : records_)
+		out.print(rec.name_ + "\t" + rec.length_ + "\t" + rec.offset_ +
+			  "\t" + rec.lineBases_ + "\t" + rec.lineWidth_ + "\n");
+	    out.close();
+	} catch (Exception e) {
+	    System.err.println("Can't write index file '" + fai.getName() +
+			       "'.");
+	}
+    }
+}
@@ -14,59 +14,144 @@ import belka.chem.*;
 
 /**
  * Object of this class parses FASTA-file either from file or from URL and 
- * creates a molecule. Molecule name is read from the header line.
+ * creates a molecule. Molecule name is read from the header line. If the
+ * load filter names records, only they are loaded. From local files they
+ * are then read by {@link FASTAIndex} without parsing the whole file.
  *
  * @author Alexej Abyzov
  */
 public class FASTAParser extends Parser
 {
+    /**
+     * Parses a file and creates molecules. Records named by the load
+     * filter are read through the index of the file.
+     *
+     * @param file file to parse.
+     *
+     * @return new molecules.
+     */
+    public Molecule[] parseFile(File file)
+    {
+	LoadFilter filter = getLoadFilter();
+	if (filter == null || filter.getRecords() == null ||
+	    FormatResolver.zippedByExtension(file.getName()) ||
+	    FormatResolver.gzippedByExtension(file.getName()))
+	    return super.parseFile(file);
+
+	FASTAIndex index = FASTAIndex.open(file);
+	if (index == null) return super.parseFile(file);
+	String[] names = filter.getRecords();
+	for (int i = 0;i < names.length;i++)
+	    if (!index.contains(names[i]))
+		System.err.println("No record '" + names[i] +
+				   "' in FASTA-file.");
+	ArrayList<Molecule> ret = new ArrayList<Molecule>();
+	for (int i = 0;i < index.size();i++) { // In the order of file
+	    if (!filter.acceptRecord(index.getName(i))) continue;
+	    Molecule mol = index.fetch(index.getName(i));
+	    if (mol != null) ret.add(mol);
+	}
+	index.close();
+	return ret.toArray(new Molecule[ret.size()]);
+    }
+
     // Parsing stream
     protected ArrayList<Molecule> parseStream(InputStream is,
 					      String molName) throws Exception
     {
 	if (is == null) return null;
-	ArrayList<Molecule> ret = new ArrayList<Molecule>();
+	final ArrayList<Molecule> ret = new ArrayList<Molecule>();
+	parseStream(is,molName,new MoleculeListener() {
+		public boolean moleculeParsed(Molecule mol) {
+		    ret.add(mol);
+		    return true;
+		}
+	    });
+	return ret;
+    }
+
+    // Parsing stream record by record
+    protected boolean parseStream(InputStream is,String molName,
+				  MoleculeListener listener) throws Exception
+    {
+	if (is == null) return true;
 
-	BufferedReader in = new BufferedReader(new InputStreamReader(is));
-	String line = null;
-	while ((line = in.readLine()) != null) { 
-	    if (line.startsWith(">")) break;
-	    if (line.length() > 0) {
+	RecordReader in = new RecordReader(is);
+	boolean more = in.next();
+	while (more && !in.startsWith(">")) {
+	    if (in.length() > 0) {
 		System.err.println("Skipping line:");
-		System.err.println(line);
-		continue;
+		System.err.println(in.toString());
 	    }
+	    more = in.next();
 	}
-		
-	while (line != null && line.startsWith(">")) {
-	    Molecule mol = Molecule.create(line.substring(1));
-	    String seq = "";
-	    while ((line = in.readLine()) != null) { 
-		if (line.startsWith(">")) break;
-		seq += line.trim();
-	    }
-	    if (seq.endsWith("*")) seq = seq.substring(0,seq.length() - 1);
-	    Chain c = Chain.create('_');
-	    mol.addChain(c);
-	    boolean isProtein = (getACGTUCounts(seq) < seq.length()>>1);
-	    for (int i = 0;i < seq.length();i++) {
-		char letter = seq.charAt(i);
-		if (Assembly.isGap(letter)) {
-		    c.addAssembly(Assembly.createGap());
-		    continue;
-		}
-		Compound comp = null;
-		if (isProtein) comp = Compound.getAminoAcid(letter);
-		else           comp = Compound.getNucleicAcid(letter);
-		if (comp == null) comp = new Compound("seq");
-		Assembly a = Assembly.create(comp);
-		a.setSerialNum(i + 1);
-		c.addAssembly(a);
-	    }
-	    ret.add(mol);
+
+	LoadFilter filter = getLoadFilter();
+	StringBuilder seq = new StringBuilder();
+	while (more) {
+	    String name = in.string(1,in.length());
+	    boolean accept = (filter == null ||
+			      filter.acceptRecord(firstWord(name)));
+	    seq.setLength(0);
+	    while ((more = in.next()) && !in.startsWith(">"))
+		if (accept) appendTrimmed(seq,in);
+	    if (accept && !listener.moleculeParsed(createMolecule(name,seq)))
+		return false;
 	}
+	return true;
+    }
 
-	return ret;
+    // Returns first word of the header, it is the name of record
+    private static String firstWord(String header)
+    {
+	if (header == null) return "";
+	header = header.trim();
+	int end = 0;
+	while (end < header.length() && header.charAt(end) > ' ') end++;
+	return header.substring(0,end);
+    }
+
+    // Appends trimmed content of current line
+    private static void appendTrimmed(StringBuilder seq,RecordReader in)
+    {
+	int b = 0, e = in.length();
+	while (b < e && in.charAt(b) <= ' ')     b++;
+	while (e > b && in.charAt(e - 1) <= ' ') e--;
+	for (int i = b;i < e;i++) seq.append(in.charAt(i));
+    }
+
+    /**
+     * Creates molecule with one chain from the sequence. Trailing '*' of
+     * the sequence is ignored.
+     *
+     * @param name name of molecule.
+     * @param seq sequence.
+     *
+     * @return new molecule.
+     */
+    static Molecule createMolecule(String name,CharSequence seq)
+    {
+	Molecule mol = Molecule.create(name);
+	int len = seq.length();
+	if (len > 0 && seq.charAt(len - 1) == '*') len--;
+	Chain c = Chain.create('_');
+	mol.addChain(c);
+	boolean isProtein = (getACGTUCounts(seq,len) < len>>1);
+	for (int i = 0;i < len;i++) {
+	    char letter = seq.charAt(i);
+	    if (Assembly.isGap(letter)) {
+		c.addAssembly(Assembly.createGap());
+		continue;
+	    }
+	    Compound comp = null;
+	    if (isProtein) comp = Compound.getAminoAcid(letter);
+	    else           comp = Compound.getNucleicAcid(letter);
+	    if (comp == null) comp = new Compound("seq");
+	    Assembly a = Assembly.create(comp);
+	    a.setSerialNum(i + 1);
+	    c.addAssembly(a);
+	}
+	return mol;
     }
 
     protected int save(PrintWriter pw,Molecule mol,SelectExpression expr)
@@ -74,11 +159,10 @@ public class FASTAParser extends Parser
 	return 0;
     }
 
-    private int getACGTUCounts(String seq)
+    private static int getACGTUCounts(CharSequence seq,int len)
     {
-	String s = seq.toLowerCase();
 	int ret = 0;
-	for (int i = 0;i < s.length();i++) {
+	for (int i = 0;i < len;i++) {
 	    char c = seq.charAt(i);
 	    if (c == 'a' || c == 'c' || c == 't' || c == 'u' || c == 'g')
 		ret++;
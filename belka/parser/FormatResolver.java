@@ -40,6 +40,11 @@ public class FormatResolver
      */ 
     public final static String FORMAT_GROUP_EXTENSIONS[] = { ".gr"};
 
+    /**
+     * Standard extensions for binary annotation/group file format
+     */ 
+    public final static String FORMAT_GROUP_BINARY_EXTENSIONS[] = { ".grb"};
+
     /**
      * Standard extensions for gzipped files.
      */ 
@@ -73,11 +78,27 @@ public class FormatResolver
 	    return FORMAT_FASTA;
 	if (matchExtension(fn,FORMAT_PROJECT_EXTENSIONS))
 	    return FORMAT_PROJECT;
-	if (matchExtension(fn,FORMAT_GROUP_EXTENSIONS))
+	if (matchExtension(fn,FORMAT_GROUP_EXTENSIONS) ||
+	    matchExtension(fn,FORMAT_GROUP_BINARY_EXTENSIONS))
 	    return FORMAT_GROUP;
 
 	return FORMAT_UNKNOWN;
     }
+
+    /**
+     * The function tells from file extension whether it seems to be binary
+     * annotation/group file.
+     *
+     * @param fileName name of file.
+     *
+     * @return true or false.
+     */
+    public static boolean binaryGroupByExtension(String fileName)
+    {
+	if (fileName == null) return false;
+	String fn = fileName.toLowerCase().trim();
+	return matchExtension(fn,FORMAT_GROUP_BINARY_EXTENSIONS);
+    }
     
     /**
      * The function tells from file extension whether it seems to be gzipped.
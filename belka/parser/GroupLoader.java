@@ -34,7 +34,8 @@ public class GroupLoader
  	    URLConnection conn = urlFileName.openConnection();
 	    conn.setDoOutput(true);
 	    outStream = new BufferedOutputStream(conn.getOutputStream());
-	    ret = saveToFile(outStream,molsToSave);
+	    ret = saveToFile(outStream,molsToSave,
+		     FormatResolver.binaryGroupByExtension(urlFileName.getFile()));
 	} catch (Exception e) {
 	    System.err.println("Exception while writing group file to URL:");
 	    System.err.println(urlFileName.toString());
@@ -60,7 +61,8 @@ public class GroupLoader
 	OutputStream outStream = null;
 	try {
 	    outStream =	new BufferedOutputStream(new FileOutputStream(file));
-	    ret = saveToFile(outStream,molsToSave);
+	    ret = saveToFile(outStream,molsToSave,
+			     FormatResolver.binaryGroupByExtension(file.getName()));
 	} catch (Exception e) {
 	    System.err.println("Exception while writing group file:");
 	    System.err.println(file.getName());
@@ -71,18 +73,28 @@ public class GroupLoader
 	return ret;
     }
 
+    // Signature and version of binary annotation/group format
+    private static final int GROUP_MAGIC   = 0x42475250; // "BGRP"
+    private static final int GROUP_VERSION = 1;
+
     // Saving annotation/group
-    private int saveToFile(OutputStream outStream,Molecule mols)
+    private int saveToFile(OutputStream outStream,Molecule mols,
+			   boolean binary)
     {
 	int ret = 0;
 	try {
 	    GZIPOutputStream zos = new GZIPOutputStream(outStream);
-	    PrintWriter      out = new PrintWriter(zos);
-	    for (Molecule m = mols;m != null;m = m.next())
-		for (Chain c = m.chainList();c != null;c = c.next())
-		    for (Assembly a = c.assemblyList();a != null;a = a.next())
-			if (!a.isGap())	out.println(a.getGroupId());
-	    out.close();
+	    if (binary) {
+		saveBinary(zos,mols);
+	    } else {
+		PrintWriter out = new PrintWriter(zos);
+		for (Molecule m = mols;m != null;m = m.next())
+		    for (Chain c = m.chainList();c != null;c = c.next())
+			for (Assembly a = c.assemblyList();a != null;
+			     a = a.next())
+			    if (!a.isGap()) out.println(a.getGroupId());
+		out.close();
+	    }
 	} catch (Exception e) {
 	    System.err.println("Exception while writing to group file.");
 	    System.err.println(e.toString());
@@ -93,6 +105,52 @@ public class GroupLoader
 	return ret;
     }
 
+    /**
+     * Saves group ids in binary format: signature, version, number of
+     * residues and then runs of equal group ids as pairs of zigzag varint
+     * group id and varint run length.
+     */
+    private void saveBinary(OutputStream os,Molecule mols) throws IOException
+    {
+	Assembly[] asses = getAssemblies(mols);
+	DataOutputStream out =
+	    new DataOutputStream(new BufferedOutputStream(os));
+	out.writeInt(GROUP_MAGIC);
+	out.writeByte(GROUP_VERSION);
+	writeVarint(out,asses.length);
+	for (int i = 0;i < asses.length;) {
+	    int id  = asses[i].getGroupId();
+	    int end = i + 1;
+	    while (end < asses.length && asses[end].getGroupId() == id) end++;
+	    writeVarint(out,(id << 1) ^ (id >> 31));
+	    writeVarint(out,end - i);
+	    i = end;
+	}
+	out.close();
+    }
+
+    // Writes unsigned variable length integer
+    private void writeVarint(DataOutputStream out,int val) throws IOException
+    {
+	while ((val & ~0x7F) != 0) {
+	    out.writeByte((val & 0x7F) | 0x80);
+	    val >>>= 7;
+	}
+	out.writeByte(val);
+    }
+
+    // Reads unsigned variable length integer
+    private int readVarint(DataInputStream in) throws IOException
+    {
+	int ret = 0;
+	for (int shift = 0;shift < 32;shift += 7) {
+	    int b = in.readUnsignedByte();
+	    ret |= (b & 0x7F) << shift;
+	    if ((b & 0x80) == 0) return ret;
+	}
+	throw new IOException("Malformed varint in group file.");
+    }
+
     /**
      * Loads annotation/group file and creates a molecule.
      *
@@ -150,52 +208,96 @@ public class GroupLoader
 	return ret;
     }
 
-    // Loading annotation/group
+    // Loading annotation/group. The file is read once and group ids are
+    // assigned while reading. If number of annotations does not match
+    // number of residues previous group ids are restored.
     private boolean loadFile(InputStream inStream,Molecule mols)
     {
-	boolean ret = false;
-	inStream.mark(1024*1024*128);
+	Assembly[] asses = getAssemblies(mols);
+	int[] old = new int[asses.length];
+	for (int i = 0;i < asses.length;i++) old[i] = asses[i].getGroupId();
+
+	int n_read = -1;
 	try {
-	    GZIPInputStream zis = new GZIPInputStream(inStream);
-	    BufferedReader in = new BufferedReader(new InputStreamReader(zis));
-	    if (countAnnotations(in) != countAssemblies(mols))
-		return false;
-	    inStream.reset();
-	    zis = new GZIPInputStream(inStream);
-	    in  = new BufferedReader(new InputStreamReader(zis));
-	    for (Molecule m = mols;m != null;m = m.next())
-		for (Chain c = m.chainList();c != null;c = c.next())
-		    for (Assembly a = c.assemblyList();a != null;
-			 a = a.next())
-			if (!a.isGap())	{
-			    String line = in.readLine();
-			    a.setGroupId(Integer.parseInt(line));
-			}
-	    ret = true;
+	    BufferedInputStream in =
+		new BufferedInputStream(new GZIPInputStream(inStream),1 << 16);
+	    in.mark(4);
+	    DataInputStream din = new DataInputStream(in);
+	    int magic = 0;
+	    try { magic = din.readInt(); } catch (EOFException e) {}
+	    if (magic == GROUP_MAGIC) {
+		n_read = loadBinary(din,asses);
+	    } else {
+		in.reset();
+		n_read = loadText(in,asses);
+	    }
 	} catch (Exception e) {
 	    System.err.println("Exception while loading group file.");
 	    System.err.println(e.toString());
 	}
-	return ret;
+
+	if (n_read == asses.length) return true;
+
+	if (n_read >= 0)
+	    System.err.println("Number of annotations (" + n_read + ") " +
+			       "differs from number of residues (" +
+			       asses.length + ").");
+	for (int i = 0;i < asses.length;i++) asses[i].setGroupId(old[i]);
+	return false;
     }
 
-    // Count number of annotations in a file
-    private int countAnnotations(BufferedReader in)
+    // Loads annotations in text format. Returns number of annotations or
+    // negative if error happend.
+    private int loadText(InputStream is,Assembly[] asses) throws IOException
     {
+	RecordReader rec = new RecordReader(is);
 	int ret = 0;
-	String line = null;
-	try {
-	    while ((line = in.readLine()) != null) ret++;
-	} catch (Exception e) {}
+	while (rec.next()) {
+	    if (ret < asses.length) {
+		int id = rec.intField(0,rec.length());
+		if (id == RecordReader.NO_INT) {
+		    System.err.println("Invalid annotation '" + rec + "'.");
+		    return -1;
+		}
+		asses[ret].setGroupId(id);
+	    }
+	    ret++;
+	}
 	return ret;
     }
 
-    // Count number of residues/nucleotides in molecules
-    private int countAssemblies(Molecule mols)
+    // Loads annotations in binary format. Returns number of annotations or
+    // negative if error happend.
+    private int loadBinary(DataInputStream in,Assembly[] asses)
+	throws IOException
     {
-	int ret = 0;
-	for (Molecule m = mols;m != null;m = m.next())
-	    ret += m.countAssemblies();
+	int version = in.readUnsignedByte();
+	if (version > GROUP_VERSION) {
+	    System.err.println("Unsupported version " + version +
+			       " of group file.");
+	    return -1;
+	}
+	int ret = readVarint(in);
+	if (ret != asses.length) return ret;
+	for (int i = 0;i < ret;) {
+	    int zz  = readVarint(in);
+	    int id  = (zz >>> 1) ^ -(zz & 1);
+	    int len = readVarint(in);
+	    if (len <= 0 || i + len > ret)
+		throw new IOException("Malformed run in group file.");
+	    for (int end = i + len;i < end;i++) asses[i].setGroupId(id);
+	}
 	return ret;
     }
+
+    // Returns residues/nucleotides (not gaps) of molecules
+    private Assembly[] getAssemblies(Molecule mols)
+    {
+	ArrayList<Assembly> ret = new ArrayList<Assembly>();
+	for (Molecule m = mols;m != null;m = m.next())
+	    for (Chain c = m.chainList();c != null;c = c.next())
+		for (Assembly a = c.assemblyList();a != null;a = a.next())
+		    if (!a.isGap()) ret.add(a);
+	return ret.toArray(new Assembly[ret.size()]);
+    }
 }
@@ -0,0 +1,225 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.util.*;
+
+//--- Application imports ---
+import belka.chem.*;
+
+/**
+ * Object of this class describes which atoms of a structure are loaded.
+ * Parsers check atom records against the filter before atoms are created,
+ * so atoms which are filtered out are never allocated or bonded. The
+ * filter also names records of sequence files to load. By default all
+ * atoms and records are loaded.
+ *
+ * @author Alexej Abyzov
+ */
+public class LoadFilter
+{
+    /** All atoms are loaded. */
+    public static final int ALL_ATOMS      = 0;
+    /** Only backbone atoms are loaded. */
+    public static final int BACKBONE_ATOMS = 1;
+    /** Only CA atoms are loaded. */
+    public static final int CA_ATOMS       = 2;
+
+    // Names of backbone atoms of amino and nucleic acids
+    private static final HashSet<String> BACKBONE_NAMES =
+	new HashSet<String>(Arrays.asList(new String[] {
+		    "N", "CA", "C", "O", "OXT",
+		    "P", "OP1", "OP2", "O1P", "O2P",
+		    "O5'", "C5'", "C4'", "C3'", "O3'"}));
+
+    // Names of water residues
+    private static final HashSet<String> WATER_NAMES =
+	new HashSet<String>(Arrays.asList(new String[] {
+		    "HOH", "H2O", "WAT", "DOD"}));
+
+    // Filters
+    private int     firstModel_ = Integer.MIN_VALUE;
+    private int     lastModel_  = Integer.MAX_VALUE;
+    private String  chains_     = null;
+    private int     atoms_      = ALL_ATOMS;
+    private boolean firstAlt_   = false;
+    private boolean skipWater_  = false;
+    private ArrayList<String> records_ = null;
+
+    /**
+     * Sets range of models to load. Atoms outside of MODEL records are
+     * always loaded, atoms of MODEL records without number are not.
+     *
+     * @param first first model to load.
+     * @param last last model to load.
+     */
+    public void setModels(int first,int last)
+    {
+	firstModel_ = first;
+	lastModel_  = last;
+    }
+
+    /**
+     * Returns 'true' if only some models are loaded.
+     *
+     * @return 'true' if only some models are loaded.
+     */
+    public boolean hasModels()
+    {
+	return firstModel_ != Integer.MIN_VALUE ||
+	    lastModel_ != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sets identifiers of chains to load. Chain without identifier is
+     * denoted by '_'. All chains are loaded if identifiers are null.
+     *
+     * @param ids identifiers of chains.
+     */
+    public void setChains(String ids) { chains_ = ids; }
+
+    /**
+     * Sets which atoms to load: ALL_ATOMS, BACKBONE_ATOMS or CA_ATOMS.
+     *
+     * @param atoms which atoms to load.
+     */
+    public void setAtoms(int atoms) { atoms_ = atoms; }
+
+    /**
+     * Sets whether only the first alternative location of atoms in each
+     * residue is loaded.
+     *
+     * @param val 'true' to load only the first alternative location.
+     */
+    public void setFirstAlternativeOnly(boolean val) { firstAlt_ = val; }
+
+    /**
+     * Returns 'true' if only the first alternative location of atoms is
+     * loaded.
+     *
+     * @return 'true' if only the first alternative location is loaded.
+     */
+    public boolean firstAlternativeOnly() { return firstAlt_; }
+
+    /**
+     * Sets whether water molecules are skipped.
+     *
+     * @param val 'true' to skip water.
+     */
+    public void setSkipWater(boolean val) { skipWater_ = val; }
+
+    /**
+     * Adds name of a record of sequence files to load. All records are
+     * loaded if no names are added.
+     *
+     * @param name name of record.
+     */
+    public void addRecord(String name)
+    {
+	if (records_ == null) records_ = new ArrayList<String>(4);
+	records_.add(name);
+    }
+
+    /**
+     * Returns names of records to load.
+     *
+     * @return names of records, null if all records are loaded.
+     */
+    public String[] getRecords()
+    {
+	if (records_ == null) return null;
+	return records_.toArray(new String[records_.size()]);
+    }
+
+    /**
+     * Returns 'true' if record with given name is loaded.
+     *
+     * @param name name of the record.
+     *
+     * @return 'true' if record is loaded.
+     */
+    public boolean acceptRecord(String name)
+    {
+	return records_ == null || records_.contains(name);
+    }
+
+    /**
+     * Returns 'true' if all atoms and records pass the filter.
+     *
+     * @return 'true' if all atoms and records pass the filter.
+     */
+    public boolean isEmpty()
+    {
+	return !hasModels() && chains_ == null && atoms_ == ALL_ATOMS &&
+	    !firstAlt_ && !skipWater_ && records_ == null;
+    }
+
+    /**
+     * Returns 'true' if atoms of the model are loaded.
+     *
+     * @param model model number, -1 outside of MODEL records.
+     *
+     * @return 'true' if atoms of the model are loaded.
+     */
+    public boolean acceptModel(int model)
+    {
+	if (model < 0) return true;
+	return model >= firstModel_ && model <= lastModel_;
+    }
+
+    /**
+     * Returns 'true' if atom with given chain identifier, residue name and
+     * atom name is loaded. Backbone and CA atoms are loaded only from
+     * residues of amino and nucleic acids, hetero atoms of other residues
+     * (water, ions, ligands) and water are not loaded then.
+     *
+     * @param chainId chain identifier, '_' for no identifier.
+     * @param resName name of residue.
+     * @param atomName name of atom.
+     * @param hetero 'true' for atom from HETATM record.
+     *
+     * @return 'true' if atom is loaded.
+     */
+    public boolean acceptAtom(char chainId,String resName,String atomName,
+			      boolean hetero)
+    {
+	if (chains_ != null && chains_.indexOf(chainId) < 0) return false;
+	boolean water = resName != null &&
+	    WATER_NAMES.contains(resName.toUpperCase());
+	if (skipWater_ && water) return false;
+	if (atoms_ == ALL_ATOMS) return true;
+	if ((hetero || water) && !isPolymerResidue(resName)) return false;
+	if (atoms_ == CA_ATOMS) return "CA".equals(atomName);
+	return BACKBONE_NAMES.contains(atomName);
+    }
+
+    // Returns 'true' if residue is amino or nucleic acid, only they have
+    // templates of bonds
+    private static boolean isPolymerResidue(String resName)
+    {
+	Compound comp = Compound.getCompoundByShortName(resName);
+	return comp != null && comp.getBondTemplate() != null;
+    }
+
+    /**
+     * Returns description of the filter. Equal filters have equal
+     * descriptions.
+     *
+     * @return description of the filter.
+     */
+    public String toString()
+    {
+	StringBuilder ret = new StringBuilder();
+	if (hasModels())
+	    ret.append("model ").append(firstModel_).append('-')
+		.append(lastModel_).append(' ');
+	if (chains_ != null) ret.append("chain ").append(chains_).append(' ');
+	if (atoms_ == BACKBONE_ATOMS) ret.append("backbone ");
+	if (atoms_ == CA_ATOMS)       ret.append("trace ");
+	if (firstAlt_)                ret.append("altloc ");
+	if (skipWater_)               ret.append("nowater ");
+	if (records_ != null)
+	    for (String name : records_)
+		ret.append("record ").append(name).append(' ');
+	return ret.toString().trim();
+    }
+}
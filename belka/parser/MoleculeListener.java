@@ -0,0 +1,25 @@
+package belka.parser;
+
+//--- Application imports ---
+import belka.mol.*;
+
+/**
+ * Interface for receiving molecules from a parser one by one as soon as
+ * they are parsed. A listener may process a molecule and drop it, so files
+ * with thousands of models are handled without keeping all of them in
+ * memory.
+ *
+ * @author Alexej Abyzov
+ */
+public interface MoleculeListener
+{
+    /**
+     * Called for every parsed molecule in the order of appearance in the
+     * file.
+     *
+     * @param mol parsed molecule.
+     *
+     * @return 'true' to continue parsing, 'false' to stop it.
+     */
+    public boolean moleculeParsed(Molecule mol);
+}
@@ -4,7 +4,10 @@ package belka.parser;
 import java.io.*;
 import java.lang.*;
 import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 //--- Application imports ---
@@ -36,55 +39,94 @@ public class PDBParser extends Parser
     private Bond[]   current_bonds = null;
     private int      current_model =   -1;
 
+    // Flags of being inside of MODEL record without number and of
+    // warning about it
+    private boolean  unnumbered_model = false, unnumbered_warned = false;
+
+    // Minimal size of uncompressed file to be parsed by memory mapping
+    private static final long MAPPED_FILE_MIN_SIZE = 4 << 20;
+
+    // Minimal size of a chunk for parallel parsing
+    private static final int  MIN_CHUNK_SIZE = 1 << 16;
+
+    // Number of chunks per available processor
+    private static final int  CHUNKS_PER_THREAD = 4;
+
     protected int save(PrintWriter pw,Molecule mol,SelectExpression expr)
     {
 	int ret = 0;
-	
-	StringBuffer hline = new StringBuffer("HEADER");
-	while (hline.length() < 62) hline.append(' ');
-	hline.append(mol.getPDBCode());
-	pw.println(hline.toString());
+	try {
+	    ByteArrayOutputStream os = new ByteArrayOutputStream();
+	    ret = save(Channels.newChannel(os),mol,expr);
+	    pw.print(os.toString("ISO-8859-1"));
+	} catch (IOException e) {
+	    System.err.println("Exception while formatting PDB records.");
+	    System.err.println(e.toString());
+	}
+	return ret;
+    }
 
+    protected int save(WritableByteChannel channel,Molecule mol,
+		       SelectExpression expr) throws IOException
+    {
+	int ret = 0;
+	RecordWriter w = new RecordWriter(channel);
+
+	w.append("HEADER");
+	w.pad(' ',56);
+	w.append(mol.getPDBCode());
+	w.newLine();
+
+	// Atoms satisfying selection are numbered as in the index of atoms
+	BitSet satisfying = null;
+	if (expr != null) satisfying = expr.satisfyingAtoms(mol);
+	int i = 0;
 	for (Chain c = mol.chainList();c != null;c = c.next()) {
 	    int n_saved = 0;
-	    for (Assembly s = c.assemblyList();s != null;s = s.next())
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    if (expr != null && !expr.satisfy(mol,c,s,a)) continue;
+	    for (Assembly s = c.assemblyList();s != null;s = s.next()) {
+		String resName = null;
+		for (Atom a = s.atomList();a != null;a = a.next(),i++) {
+		    if (satisfying != null && !satisfying.get(i)) continue;
 		    if (!a.isSelected()) continue;
+		    if (resName == null) resName = s.getName().toUpperCase();
 		    n_saved++;
-		    pw.print("ATOM  ");
-		    pw.format("%5d",a.getSerialNum());
-		    pw.print(" ");
+		    w.append("ATOM  ");
+		    w.appendInt(a.getSerialNum(),5);
+		    w.append(' ');
 		    String name = a.getName();
-		    if (name.length() < 4) name = " " + name;
-		    pw.print(name);
-		    for (int j = name.length();j < 4;j++)
-			pw.print(" ");
-		    pw.print(a.getAlternative());
-		    pw.print(s.getName().toUpperCase());
-		    pw.print(" ");
-		    pw.print(c.getId());
-		    pw.format("%4d",s.getSerialNum());
-		    pw.print(s.getICode());
-		    pw.print("   ");
-		    pw.format("%8.3f",a.getDerivedX());
-		    pw.format("%8.3f",a.getDerivedY());
-		    pw.format("%8.3f",a.getDerivedZ());
-		    pw.format("%6.2f",a.getOccupancy());
-		    pw.format("%6.2f",a.getTemperature());
-		    pw.print("          ");
+		    if (name.length() < 4) w.append(' ');
+		    w.append(name);
+		    w.pad(' ',3 - name.length());
+		    w.append(a.getAlternative());
+		    w.append(resName);
+		    w.append(' ');
+		    w.append(c.getId());
+		    w.appendInt(s.getSerialNum(),4);
+		    w.append(s.getICode());
+		    w.append("   ");
+		    w.appendFixed(a.getDerivedX(),8,3);
+		    w.appendFixed(a.getDerivedY(),8,3);
+		    w.appendFixed(a.getDerivedZ(),8,3);
+		    w.appendFixed(a.getOccupancy(),6,2);
+		    w.appendFixed(a.getTemperature(),6,2);
+		    w.append("          ");
 		    if (a.getElement() != null) {
 			name = a.getElement().getSign();
-			for (int j = name.length();j < 2;j++)
-			    pw.print(" ");
-			pw.print(name);
+			w.pad(' ',2 - name.length());
+			w.append(name);
 		    }
-		    pw.println();
+		    w.newLine();
 		    ret++;
 		}
-	    if (n_saved > 0) pw.println("TER");
+	    }
+	    if (n_saved > 0) {
+		w.append("TER");
+		w.newLine();
+	    }
 	}
-	pw.println("END");
+	w.append("END");
+	w.newLine();
+	w.flush();
 	return ret;
     }
     
@@ -95,159 +137,439 @@ public class PDBParser extends Parser
 	if (is == null) return null;
 	if (molName == null) molName = MOLECULE_NAME_UNKNOWN;
 
-	ArrayList<Molecule> ret = new ArrayList<Molecule>();
-
-	current_mol   = Molecule.create(molName);
- 	current_chain = null;
- 	current_ass   = null;
-	current_atom  = null;
-	current_bonds = null;
-
-	int n_atoms_added  = 0, n_a = 0;
-	int n_chains_added = 0;
-	int n_res_added    = 0;
-	BufferedReader in = new BufferedReader(new InputStreamReader(is));
-	String line = null;
-	while ((line = in.readLine()) != null) {
-	    char firstChar = line.charAt(0);
+	startStitching(molName);
+	decodeRecords(new RecordReader(is));
+	return finishStitching();
+    }
+
+    // Parsing stream and passing one molecule per model to the listener
+    protected boolean parseStream(InputStream is,String molName,
+				  MoleculeListener listener) throws Exception
+    {
+	if (is == null || listener == null) return true;
+	if (molName == null) molName = MOLECULE_NAME_UNKNOWN;
+
+	try {
+	    stitch_listener = listener;
+	    startStitching(molName);
+	    decodeRecords(new RecordReader(is));
+	    finishStitching();
+	    return !stitch_stopped;
+	} finally {
+	    stitch_listener = null;
+	}
+    }
+
+    /**
+     * Parses a file and creates molecules. Large uncompressed files are
+     * memory mapped, split on MODEL/TER/END records and the pieces are
+     * parsed in parallel. Other files are parsed as a stream.
+     *
+     * @param file file to parse.
+     *
+     * @return new molecules.
+     */
+    public Molecule[] parseFile(File file)
+    {
+	if (file == null) return null;
+	String name = file.getName();
+	long   size = file.length();
+	if (FormatResolver.zippedByExtension(name)  ||
+	    FormatResolver.gzippedByExtension(name) ||
+	    size < MAPPED_FILE_MIN_SIZE || size > Integer.MAX_VALUE)
+	    return super.parseFile(file);
+
+	// Chunks do not know model they start in
+	LoadFilter filter = getLoadFilter();
+	if (filter != null && filter.hasModels()) return super.parseFile(file);
+
+	Molecule[] ret = null;
+	FileInputStream inStream = null;
+	try {
+	    inStream = new FileInputStream(file);
+	    FileChannel channel = inStream.getChannel();
+	    MappedByteBuffer buf =
+		channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+	    ArrayList<Molecule> mols = parseBuffer(buf,name);
+	    if (mols != null && mols.size() > 0)
+		ret = mols.toArray(new Molecule[mols.size()]);
+	} catch (Exception e) {
+	    System.err.print("Exception while parsing local file: ");
+	    System.err.println(file.getName());
+	    System.err.println(e.toString());
+	}
+	try { inStream.close(); } catch (Exception e) {}
+	return ret;
+    }
+
+    /**
+     * Splits buffer into chunks, decodes chunks in parallel into chain
+     * fragments and stitches the fragments into molecules in the order they
+     * appear in the buffer.
+     */
+    private ArrayList<Molecule> parseBuffer(final ByteBuffer buf,
+					    String molName) throws Exception
+    {
+	if (buf == null) return null;
+	if (molName == null) molName = MOLECULE_NAME_UNKNOWN;
+
+	int size      = buf.limit();
+	int n_threads = Runtime.getRuntime().availableProcessors();
+	int chunk     = Math.max(size/(n_threads*CHUNKS_PER_THREAD),
+				 MIN_CHUNK_SIZE);
+
+	ExecutorService pool = Executors.newFixedThreadPool(n_threads);
+	ArrayList<Future<ArrayList<Object>>> parts =
+	    new ArrayList<Future<ArrayList<Object>>>();
+	try {
+	    int start = 0;
+	    while (start < size) {
+		final int s = start;
+		final int e = findChunkEnd(buf,start + chunk,size);
+		parts.add(pool.submit(new Callable<ArrayList<Object>>() {
+			public ArrayList<Object> call() throws Exception {
+			    PDBParser parser = new PDBParser();
+			    parser.setLoadFilter(getLoadFilter());
+			    parser.chunk_items = new ArrayList<Object>();
+			    parser.decodeRecords(new RecordReader(buf.duplicate(),
+								  s,e));
+			    return parser.chunk_items;
+			}
+		    }));
+		start = e;
+	    }
+
+	    startStitching(molName);
+	    for (Future<ArrayList<Object>> part : parts) {
+		stitch_inherit = true;
+		for (Object item : part.get()) stitch(item);
+	    }
+	    return finishStitching();
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    /**
+     * Returns position after the first line that ends a chain (TER, ENDMDL
+     * or END) and starts at or after the given position. If there is no
+     * such line size of the buffer is returned.
+     */
+    private static int findChunkEnd(ByteBuffer buf,int pos,int size)
+    {
+	if (pos >= size) return size;
+	while (pos < size && buf.get(pos - 1) != '\n') pos++;
+	while (pos < size) {
+	    int end = pos;
+	    while (end < size && buf.get(end) != '\n') end++;
+	    int len = end - pos;
+	    if (len > 0 && buf.get(end - 1) == '\r') len--;
+	    if (end < size) end++;
+	    if (startsWith(buf,pos,len,"TER")    ||
+		startsWith(buf,pos,len,"ENDMDL") ||
+		(len == 3 && startsWith(buf,pos,len,"END"))) return end;
+	    pos = end;
+	}
+	return size;
+    }
+
+    // Checks if a line in the buffer starts with the prefix
+    private static boolean startsWith(ByteBuffer buf,int pos,int len,
+				      String prefix)
+    {
+	int n = prefix.length();
+	if (len < n) return false;
+	for (int i = 0;i < n;i++)
+	    if (buf.get(pos + i) != prefix.charAt(i)) return false;
+	return true;
+    }
+
+    /**
+     * Decodes records and emits, in the order of appearance, new chains
+     * with assemblies and atoms, model numbers (as Integer), PDB codes
+     * from HEADER records (as String), end of molecule marks and
+     * serial numbers from CONECT records (as int[]).
+     */
+    private void decodeRecords(RecordReader rec) throws Exception
+    {
+	current_chain = null;
+	current_ass   = null;
+	current_model = -1;
+	unnumbered_model = false;
+	alt_chain     = 0;
+	LoadFilter filter = getLoadFilter();
+	if (filter != null && filter.isEmpty()) filter = null;
+	while (!stitch_stopped && rec.next()) {
+	    if (rec.length() == 0) continue;
+
+	    Atom atom = null;
+	    char firstChar = rec.charAt(0);
 	    if (firstChar == 'A') {
-		if (line.startsWith("ATOM"))
-		    current_atom = parseAtomDescription(line);
+		if (rec.startsWith("ATOM") &&
+		    (filter == null || acceptAtomRecord(rec,filter)))
+		    atom = parseAtomDescription(rec);
 	    } else if (firstChar == 'C') {
-		if (line.startsWith("CONECT"))
-		    current_bonds = parseConnectDescription(line);
+		if (rec.startsWith("CONECT"))
+		    emit(parseConnectSerials(rec));
 	    } else if (firstChar == 'E') {
-		if (line.equals("END")) {
-		    if (n_a > 0) {
-			ret.add(current_mol);
-			n_a = 0;
-		    }
-		    current_mol = Molecule.create(molName);
+		if (rec.is("END")) {
+		    unnumbered_model = false;
+		    emit(END_OF_MOLECULE);
 		    current_chain = null;
 		    current_ass   = null;
-		    current_atom  = null;
-		    current_bonds = null;
-		} else if (line.startsWith("ENDMDL"))
+		} else if (rec.startsWith("ENDMDL")) {
+		    unnumbered_model = false;
 		    current_chain = null;
+		}
 	    } else if (firstChar == 'H') {
-		if (line.startsWith("HETATM"))
-		    current_atom = parseAtomDescription(line);
-		else if (line.startsWith("HEADER")) {
-		    if (n_a > 0) {
-			ret.add(current_mol);
-			n_a = 0;
-		    }
-		    if (line.length() >= 66) {
-			String pdbCode = line.substring(62,66);
-			current_mol    = Molecule.create(molName,pdbCode);
-		    } else {
-			current_mol    = Molecule.create(molName);
-		    }
+		if (rec.startsWith("HETATM")) {
+		    if (filter == null || acceptAtomRecord(rec,filter))
+			atom = parseAtomDescription(rec);
+		}
+		else if (rec.startsWith("HEADER")) {
+		    String pdbCode = rec.string(62,66);
+		    emit(pdbCode == null ? "" : pdbCode);
 		    current_chain = null;
 		    current_ass   = null;
-		    current_atom  = null;
-		    current_bonds = null;
 		}
 	    } else if (firstChar == 'M') {
-		if (line.startsWith("MODEL"))
-		    current_model = parseModelDescription(line);
-	    } else if (firstChar == 'R') {
-		    
+		if (rec.startsWith("MODEL")) {
+		    current_model = parseModelDescription(rec);
+		    unnumbered_model = current_model < 0;
+		    emit(Integer.valueOf(current_model));
+		}
 	    } else if (firstChar == 'T') {
-		if (line.startsWith("TER"))
+		if (rec.startsWith("TER"))
 		    current_chain = null;
 	    }
 
-	    if (current_atom != null) {
-		if (needToParseChain(line)) {
-		    current_chain = parseChainDescription(line);
-		    current_mol.addChain(current_chain);
-		    n_chains_added++;
-		    current_ass = parseAssemblyDescription(line);
-		    current_chain.addAssembly(current_ass);
-		    n_res_added++;
-		} else if (needToParseAssembly(line)) {
-		    current_ass = parseAssemblyDescription(line);
-		    current_chain.addAssembly(current_ass);
-		    n_res_added++;
-		}
-		current_ass.addAtom(current_atom);
-		current_atom = null;
-		n_atoms_added++;
-		n_a++;
+	    if (atom == null) continue;
+	    if (needToParseChain(rec)) {
+		Assembly ass = parseAssemblyDescription(rec);
+		if (ass == null) continue;
+		current_chain = parseChainDescription(rec);
+		emit(current_chain);
+		current_ass = ass;
+		current_chain.addAssembly(current_ass);
+	    } else if (needToParseAssembly(rec)) {
+		Assembly ass = parseAssemblyDescription(rec);
+		if (ass == null) continue;
+		current_ass = ass;
+		current_chain.addAssembly(current_ass);
 	    }
-	    if (current_bonds != null)
-		for (int i = 0;i < 4;i++) { // Covalent bonds
-		    Bond bond = current_bonds[i];
-		    if (bond == null) continue;
-		    Atom a1 = bond.getFAtom();
-		    if (a1 != null) a1.addBond(bond);
-		    Atom a2 = bond.getSAtom();
-		    if (a2 != null) a2.addBond(bond);
-		}
+	    current_ass.addAtom(atom);
+	    if (chunk_items == null) indexAtom(atom);
+	}
+    }
+
+    // Mark of the end of a molecule
+    private static final Object END_OF_MOLECULE = new Object();
+
+    // Residue and its first alternative location when filtering them
+    private char alt_chain = 0, alt_icode = 0, alt_first = ' ';
+    private int  alt_num   = 0;
+
+    /**
+     * Returns 'true' if atom record passes the load filter. Filter is
+     * checked on columns of the record, so no objects are created for
+     * atoms which are filtered out.
+     */
+    private boolean acceptAtomRecord(RecordReader rec,LoadFilter filter)
+    {
+	if (unnumbered_model && filter.hasModels()) {
+	    if (!unnumbered_warned)
+		System.err.println("WARNING: Atoms of MODEL without number " +
+				   "are not loaded by model filter.");
+	    unnumbered_warned = true;
+	    return false;
 	}
+	if (!filter.acceptModel(current_model)) return false;
+	char chainId = rec.charAt(21);
+	if (Character.isSpaceChar(chainId)) chainId = '_';
+	if (!filter.acceptAtom(chainId,rec.field(17,20),rec.field(12,16),
+			       rec.charAt(0) == 'H'))
+	    return false;
+	if (!filter.firstAlternativeOnly()) return true;
+
+	int  resNum = rec.intField(22,26);
+	char iCode  = rec.charAt(26);
+	if (chainId != alt_chain || resNum != alt_num || iCode != alt_icode) {
+	    alt_chain = chainId;
+	    alt_num   = resNum;
+	    alt_icode = iCode;
+	    alt_first = ' ';
+	}
+	char altern = rec.charAt(16);
+	if (Character.isSpaceChar(altern)) return true;
+	if (alt_first == ' ') alt_first = altern;
+	return altern == alt_first;
+    }
+
+    // Items decoded from a chunk, null when items are stitched at once
+    private ArrayList<Object> chunk_items = null;
+
+    // State of stitching
+    private String              stitch_name    = null;
+    private ArrayList<Molecule> stitch_mols    = null;
+    private int                 stitch_model   = -1;
+    private boolean             stitch_inherit = true;
+    private int                 stitch_chains  = 0;
+    private String              stitch_code    = null;
+
+    // Listener receiving molecules as soon as they are stitched
+    private MoleculeListener    stitch_listener = null;
+    private boolean             stitch_stopped  = false;
 
-	if (n_a > 0) {
-	    ret.add(current_mol);
-	    n_a = 0;
+    // Passes decoded item either to chunk or to stitching
+    private void emit(Object item)
+    {
+	if (chunk_items != null) chunk_items.add(item);
+	else                     stitch(item);
+    }
+
+    // Starts stitching of decoded items into molecules
+    private void startStitching(String molName)
+    {
+	stitch_name    = molName;
+	stitch_mols    = new ArrayList<Molecule>();
+	stitch_model   = -1;
+	stitch_inherit = true;
+	stitch_chains  = 0;
+	stitch_code    = null;
+	stitch_stopped = false;
+	current_mol    = Molecule.create(molName);
+    }
+
+    // Passes stitched molecule either to the list or to the listener
+    private void completeMolecule()
+    {
+	if (stitch_chains == 0) return;
+	if (stitch_listener == null)
+	    stitch_mols.add(current_mol);
+	else if (!stitch_listener.moleculeParsed(current_mol))
+	    stitch_stopped = true;
+	stitch_chains = 0;
+    }
+
+    // Stitches decoded item into molecules
+    private void stitch(Object item)
+    {
+	if (item instanceof Chain) {
+	    Chain c = (Chain)item;
+	    if (stitch_inherit && stitch_model >= 0) c.setModel(stitch_model);
+	    current_mol.addChain(c);
+	    indexAtoms(c);
+	    stitch_chains++;
+	} else if (item instanceof Integer) {
+	    stitch_model   = ((Integer)item).intValue();
+	    stitch_inherit = false;
+	    if (stitch_listener != null && stitch_chains > 0) {
+		// Each model is passed to the listener as a molecule
+		completeMolecule();
+		current_mol = createMolecule();
+	    }
+	} else if (item instanceof int[]) {
+	    addBonds(parseConnectDescription((int[])item));
+	} else {
+	    completeMolecule();
+	    stitch_code = null;
+	    if (item instanceof String) stitch_code = (String)item;
+	    current_mol = createMolecule();
 	}
+    }
 
+    // Creates new molecule to stitch items into
+    private Molecule createMolecule()
+    {
+	if (stitch_code != null && stitch_code.length() > 0)
+	    return Molecule.create(stitch_name,stitch_code);
+	return Molecule.create(stitch_name);
+    }
+
+    // Finishes stitching and returns new molecules
+    private ArrayList<Molecule> finishStitching()
+    {
+	if (!stitch_stopped) completeMolecule();
+	ArrayList<Molecule> ret = stitch_mols;
+	stitch_mols   = null;
+	stitch_chains = 0;
+	current_mol   = null;
+	current_chain = null;
+	current_ass   = null;
+	atom_index    = null;
+	index_mol     = null;
 	return ret;
     }
-    
+
+    // Adds covalent bonds from parsed CONECT record to atoms. Bonds are
+    // new, so they are not checked against bonds of atoms.
+    private void addBonds(Bond[] bonds)
+    {
+	if (bonds == null) return;
+	for (int i = 0;i < 4;i++) { // Covalent bonds
+	    Bond bond = bonds[i];
+	    if (bond == null) continue;
+	    Atom a1 = bond.getFAtom();
+	    if (a1 != null) a1.addNewBond(bond);
+	    Atom a2 = bond.getSAtom();
+	    if (a2 != null) a2.addNewBond(bond);
+	}
+    }
+
+    // Elements for one letter signs
+    private static final Element[] ELEMENT_BY_LETTER = new Element[128];
+    static {
+	for (char c = 'A';c <= 'Z';c++)
+	    ELEMENT_BY_LETTER[c] = Element.getElementBySign(String.valueOf(c));
+    }
+
+    // Compounds found by residue name
+    private HashMap<String,Compound> compounds = null;
+
     /**
      * Parses description of an atom, creates a new atom and returns it.
      */
-    private Atom parseAtomDescription(String line)
+    private Atom parseAtomDescription(RecordReader rec)
     {
 	Atom ret = null;
 
 	Element elem = null;
-	try {
-	    String elementSign = line.substring(76,78).trim();
-	    elem = Element.getElementBySign(elementSign);
-	} catch (Exception e) {}
-
-	try {
-	    String atom_name = line.substring(12,16).trim();
-	    double x = Double.parseDouble(line.substring(30,38).trim());
-	    double y = Double.parseDouble(line.substring(38,46).trim());
-	    double z = Double.parseDouble(line.substring(46,54).trim());
-	    if (elem == null) {
-		char firstChar = atom_name.charAt(0);
-		if (Character.isDigit(firstChar))
-		    firstChar = atom_name.charAt(1);
-		String elementSign = "";
-		elementSign += firstChar;
-		elem = Element.getElementBySign(elementSign);
-	    }
-	    ret = Atom.create(atom_name,x,y,z,elem);
-	} catch(Exception e) {
+	String elementSign = rec.field(76,78);
+	if (elementSign != null) elem = Element.getElementBySign(elementSign);
+
+	String atom_name = rec.field(12,16);
+	double x = rec.doubleField(30,38);
+	double y = rec.doubleField(38,46);
+	double z = rec.doubleField(46,54);
+	if (atom_name == null || atom_name.length() == 0 ||
+	    Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(z)) {
 	    System.err.println("Error in parsing line:");
-	    System.err.println(line);
+	    System.err.println(rec.toString());
 	    return null;
 	}
+	if (elem == null) {
+	    char firstChar = atom_name.charAt(0);
+	    if (Character.isDigit(firstChar) && atom_name.length() > 1)
+		firstChar = atom_name.charAt(1);
+	    if (firstChar < ELEMENT_BY_LETTER.length)
+		elem = ELEMENT_BY_LETTER[firstChar];
+	}
+	ret = Atom.create(atom_name,x,y,z,elem);
 
 	// Parsing and setting atom's serial number.
-	try {
-	    int serial = Integer.parseInt(line.substring( 6,11).trim());
-	    ret.setSerialNum(serial);
-	} catch (Exception e) {}
+	int serial = rec.intField(6,11);
+	if (serial != RecordReader.NO_INT) ret.setSerialNum(serial);
 
-	char altern = line.charAt(16);
+	char altern = rec.charAt(16);
 	if (!Character.isSpaceChar(altern))
 	    ret.setAlternative(altern);
 
-	// Parsing and setting atom's serial number.
-	try {
-	    double occup = Double.parseDouble(line.substring(54,60).trim());
-	    ret.setOccupancy(occup);
-	} catch (Exception e) {}
+	// Parsing and setting atom's occupancy and temperature factor.
+	double occup = rec.doubleField(54,60);
+	if (!Double.isNaN(occup)) ret.setOccupancy(occup);
 
-	try {
-	    double temper = Double.parseDouble(line.substring(60,66).trim());
-	    ret.setTemperature(temper);
-	} catch (Exception e) {}
+	double temper = rec.doubleField(60,66);
+	if (!Double.isNaN(temper)) ret.setTemperature(temper);
 
 	return ret;
     }
@@ -255,20 +577,23 @@ public class PDBParser extends Parser
     /**
      * Parses description of a assembly, creates a new chain and returns it.
      */
-    private Assembly parseAssemblyDescription(String line)
+    private Assembly parseAssemblyDescription(RecordReader rec)
     {
-	String compoundName = line.substring(17,20).trim();
-	Compound comp = Compound.getCompoundByShortName(compoundName);
-	if (comp == null) comp = new Compound(compoundName);
+	int pdb_num = rec.intField(22,26);
+	if (pdb_num == RecordReader.NO_INT) return null;
+
+	String compoundName = rec.field(17,20);
+	if (compounds == null) compounds = new HashMap<String,Compound>();
+	Compound comp = compounds.get(compoundName);
+	if (comp == null) {
+	    comp = Compound.getCompoundByShortName(compoundName);
+	    if (comp == null) comp = new Compound(compoundName);
+	    compounds.put(compoundName,comp);
+	}
 	    
 	Assembly ret = Assembly.create(comp);
-	
-	try {
-	    int pdb_num = Integer.parseInt(line.substring(22,26).trim());
-	    ret.setSerialNum(pdb_num);
-	} catch (Exception e) { return null; }
-
-	ret.setICode(line.charAt(26));
+	ret.setSerialNum(pdb_num);
+	ret.setICode(rec.charAt(26));
 	
 	return ret;
     }
@@ -276,9 +601,9 @@ public class PDBParser extends Parser
     /**
      * Parses description of a chain, creates a new chain and returns it.
      */
-    private Chain parseChainDescription(String line)
+    private Chain parseChainDescription(RecordReader rec)
     {
-	char newChainId = line.charAt(21);
+	char newChainId = rec.charAt(21);
 	if (Character.isSpaceChar(newChainId)) newChainId = '_';
 
 	Chain ret = Chain.create(newChainId);
@@ -291,131 +616,87 @@ public class PDBParser extends Parser
     /**
      * Parses model number and returns it.
      */
-    private int parseModelDescription(String line)
+    private int parseModelDescription(RecordReader rec)
     {
-	int ret = -1;
-	try {
-	    ret = Integer.parseInt(line.substring(10,15).trim());
-	} catch (Exception e) {}
+	// Serial number is in columns 11-14, the line can end before them
+	int end = Math.min(14,rec.length());
+	if (end <= 10) return -1;
+	int ret = rec.intField(10,end);
+	if (ret == RecordReader.NO_INT) ret = -1;
 	return ret;
     }
 
-    // Atom where the last bond was made
-    private Molecule m_last = null;
-    private Chain    c_last = null;
-    private Assembly s_last = null;
-    private Atom     a_last = null;
     /**
-     * Parses conect record, creates described bonds and returns the in array.
+     * Parses serial numbers of atoms in conect record. The first element
+     * of returned array is serial number of the described atom, the rest
+     * are serial numbers of bonded atoms. Absent numbers are set to
+     * RecordReader.NO_INT.
+     */
+    private int[] parseConnectSerials(RecordReader rec)
+    {
+	int[] ret = new int[11];
+	ret[0] = rec.intField(6,11);
+	for (int i = 1, start = 11;i < 11;i++, start += 5)
+	    ret[i] = rec.intField(start,start + 5);
+	return ret;
+    }
+
+    // Atoms of the current molecule by serial number
+    private SerialAtomMap atom_index = null;
+    private Molecule      index_mol  = null;
+
+    // Initial capacity of atom index
+    private static final int ATOM_INDEX_CAPACITY = 1024;
+
+    // Adds atom to the index of atoms of the current molecule
+    private void indexAtom(Atom atom)
+    {
+	if (index_mol != current_mol) {
+	    atom_index = new SerialAtomMap(ATOM_INDEX_CAPACITY);
+	    index_mol  = current_mol;
+	}
+	atom_index.put(atom.getSerialNum(),atom);
+    }
+
+    // Adds atoms of a chain to the index of atoms of the current molecule
+    private void indexAtoms(Chain chain)
+    {
+	for (Assembly s = chain.assemblyList();s != null;s = s.next())
+	    for (Atom a = s.atomList();a != null;a = a.next())
+		indexAtom(a);
+    }
+
+    /**
+     * Creates bonds described in conect record and returns them in array.
      * Index of bonds in the array correspond to the index of described bonds
      * in PDB-file: #1-4 are convaent bonds, #5-6 and 8-9 are hydrogen bonds,
      * and #7 and 10 are salt bridges. The function creates bonds only if
      * serial number of the bonded atom is larger than the original.
      * For example, bond between 402  405 is created while bond between 405 402
      * is not created. Because PDB-file contatins two description of same bond
-     * (see abouve), such trick saves time on parsing.
+     * (see abouve), such trick saves time on parsing. Atoms are found by
+     * serial number in the index of atoms of the current molecule.
      */
-    private Bond[] parseConnectDescription(String line)
+    private Bond[] parseConnectDescription(int[] serials)
     {
-	if (line == null)        return null;
+	if (serials == null)     return null;
 	if (current_mol == null) return null;
+	if (index_mol != current_mol) return null; // No atoms yet
 
-	if (current_mol != m_last) {
-	    m_last = null;
-	    c_last = null;
-	    s_last = null;
-	    a_last = null;
-	}
-
-	// Place to start search for second atom
-	Molecule m_start = null;
-	Chain    c_start = null;
-	Assembly s_start = null;
-	Atom     a_start = null;
-
-	int  ser1 = 0,  ser2 = 0;
-	Atom a1 = null, a2 = null;
-
-	try { ser1 = Integer.parseInt(line.substring(6,11).trim()); }
-	catch (Exception e) { return null; }
-
-	// Finding first atom
-	Molecule m_tmp = m_last;
-	Chain    c_tmp = c_last;
-	Assembly s_tmp = s_last;
-	Atom     a_tmp = a_last;
-	Molecule m = current_mol;
-	if (m_tmp != null) { m = m_tmp; m_tmp = null; }
-	Chain c = m.chainList();
-	if (c_tmp != null) { c = c_tmp; c_tmp = null; }
-	for (;c != null;c = c.next()) {
-	    Assembly s = c.assemblyList();
-	    if (s_tmp != null) { s = s_tmp; s_tmp = null; }
-	    for (;s != null;s = s.next()) {
-		Atom a = s.atomList();
-		if (a_tmp != null) { a = a_tmp; a_tmp = null; }
-		for (;a != null;a = a.next())
-		    if (a.getSerialNum() == ser1) {
-			a1 = a;
-			m_start = m_last = m;
-			c_start = c_last = c;
-			s_start = s_last = s;
-			a_start = a_last = a;
-			break;
-		    }
-		if (a1 != null) break;
-	    }
-	    if (a1 != null) break;
-	}
+	int ser1 = serials[0];
+	if (ser1 == RecordReader.NO_INT) return null;
 
+	Atom a1 = atom_index.get(ser1);
 	if (a1 == null) return null;
 
 	Bond[] ret = new Bond[10];
-
-	int width = 5;
-	for (int i = 0, start = 11;i < 10;i++, start += 5 ) {
-
-	    String new_number = line.substring(start,start + width).trim();
-
-	    try { ser2 = Integer.parseInt(new_number); }
-	    catch (Exception e) { continue; }
-
+	for (int i = 0;i < 10;i++) {
+	    int ser2 = serials[i + 1];
+	    if (ser2 == RecordReader.NO_INT) continue;
 	    if (ser2 < ser1) continue; // Bond was already created.
 
-	    // Finding second atom
-	    a2 = null;
-	    m_tmp = m_start;
-	    c_tmp = c_start;
-	    s_tmp = s_start;
-	    a_tmp = a_start;
-	    m = current_mol;
-	    if (m_tmp != null) { m = m_tmp; m_tmp = null; }
-	    c = m.chainList();
-	    if (c_tmp != null) { c = c_tmp; c_tmp = null; }
-	    for (;c != null;c = c.next()) {
-		Assembly s = c.assemblyList();
-		if (s_tmp != null) { s = s_tmp; s_tmp = null; }
-		for (;s != null;s = s.next()) {
-		    Atom a = s.atomList();
-		    if (a_tmp != null) { a = a_tmp; a_tmp = null; }
-		    for (;a != null;a = a.next())
-			if (a.getSerialNum() == ser2) {
-			    a2 = a;
-			    m_start = m;
-			    c_start = c;
-			    s_start = s;
-			    a_start = a;
-			    break;
-			}
-		    if (a2 != null) break;
-		}
-		if (a2 != null) break;
-	    }
-
-	    Bond new_bond = null;
-	    if (a2 != null) new_bond = Bond.create(a1,a2);
-	
-	    ret[i] = new_bond;
+	    Atom a2 = atom_index.get(ser2);
+	    if (a2 != null) ret[i] = Bond.create(a1,a2);
 	}
 
 	return ret;
@@ -426,9 +707,9 @@ public class PDBParser extends Parser
      * that line has new chain description or there is no current chain
      * used.
      */
-    private boolean needToParseChain(String line)
+    private boolean needToParseChain(RecordReader rec)
     {
-	char newChainId = line.charAt(21);
+	char newChainId = rec.charAt(21);
 	if (Character.isSpaceChar(newChainId))   newChainId = '_';
 	if (current_chain == null)               return true;
 	if (current_chain.getId() != newChainId) return true;
@@ -440,16 +721,14 @@ public class PDBParser extends Parser
      * be that line has new assembly description or there is no current
      * assembly used.
      */
-    private boolean needToParseAssembly(String line)
+    private boolean needToParseAssembly(RecordReader rec)
     {
 	if (current_ass == null) return true;
-	String new_name = line.substring(17,20).trim();
+	String new_name = rec.field(17,20);
 	if (!new_name.equalsIgnoreCase(current_ass.getName())) return true;
- 	if (line.charAt(26) != current_ass.getICode()) return true;
-	int pdb_num = 0;
-	try {
-	    pdb_num = Integer.parseInt(line.substring(22,26).trim());
-	} catch (Exception e) { return true; }
+ 	if (rec.charAt(26) != current_ass.getICode()) return true;
+	int pdb_num = rec.intField(22,26);
+	if (pdb_num == RecordReader.NO_INT) return true;
 	if (pdb_num != current_ass.getSerialNum()) return true;
 	return false;
     }
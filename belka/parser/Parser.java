@@ -4,7 +4,9 @@ package belka.parser;
 import java.io.*;
 import java.net.*;
 import java.lang.*;
+import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 //--- Application imports ---
@@ -21,6 +23,24 @@ public abstract class Parser
     // Default name
     protected String MOLECULE_NAME_UNKNOWN = "Unknown";
 
+    // Filter of atoms to load
+    private LoadFilter filter = null;
+
+    /**
+     * Sets filter of atoms to load. All atoms are loaded if filter is
+     * null. Parsers which do not create atoms ignore the filter.
+     *
+     * @param filter filter of atoms to load.
+     */
+    public void setLoadFilter(LoadFilter filter) { this.filter = filter; }
+
+    /**
+     * Returns filter of atoms to load.
+     *
+     * @return filter of atoms to load, null if all atoms are loaded.
+     */
+    public LoadFilter getLoadFilter() { return filter; }
+
     /**
      * Parses a file and creates a molecule.
      *
@@ -30,6 +50,9 @@ public abstract class Parser
      */
     public Molecule[] parseFile(File file)
     {
+	if (FormatResolver.zippedByExtension(file.getName()))
+	    return parseZipFile(file);
+
 	Molecule[] ret = null;
 	InputStream inStream = null;
 	try {
@@ -69,6 +92,109 @@ public abstract class Parser
 	return ret;
     }
 
+    /**
+     * Parses a file and passes molecules to the listener one by one as
+     * soon as they are parsed. Multi-model files are passed as one
+     * molecule per model. Parsing stops when the listener returns 'false'.
+     *
+     * @param file file to parse.
+     * @param listener listener to receive molecules.
+     *
+     * @return number of molecules passed to the listener. Negative if
+     * error happend.
+     */
+    public int parseFile(File file,MoleculeListener listener)
+    {
+	int ret = -1;
+	InputStream inStream = null;
+	try {
+	    inStream = new BufferedInputStream(new FileInputStream(file));
+	    ret = parseFile(inStream,file.getName(),listener);
+	} catch (Exception e) {
+	    System.err.print("Exception while parsing local file: ");
+	    System.err.println(file.getName());
+	    System.err.println(e.toString());
+	}
+	try { inStream.close(); } catch (Exception e) {}
+	return ret;
+    }
+
+    /**
+     * Parses a file from URL and passes molecules to the listener one by
+     * one as soon as they are parsed. Multi-model files are passed as one
+     * molecule per model. Parsing stops when the listener returns 'false'.
+     *
+     * @param urlFileName name of file on URL.
+     * @param listener listener to receive molecules.
+     *
+     * @return number of molecules passed to the listener. Negative if
+     * error happend.
+     */
+    public int parseFile(URL urlFileName,MoleculeListener listener)
+    {
+	int ret = -1;
+	InputStream inStream = null;
+	try {
+ 	    URLConnection conn = urlFileName.openConnection();
+	    conn.setDoInput(true);
+	    inStream = new BufferedInputStream(conn.getInputStream());
+	    ret = parseFile(inStream,
+			    new File(urlFileName.getFile()).getName(),listener);
+	} catch (Exception e) {
+	    System.err.print("Exception while parsing file from URL: ");
+	    System.err.println(urlFileName.toString());
+	    System.err.println(e.toString());
+	}
+	try { inStream.close(); } catch (Exception e) {}
+	return ret;
+    }
+
+    // Dispatch to a proper parsing function, returns number of molecules
+    // passed to the listener
+    private int parseFile(InputStream inStream,String name,
+			  final MoleculeListener listener) throws Exception
+    {
+	if (listener == null) return -1;
+
+	final int[] count = new int[1];
+	MoleculeListener counter = new MoleculeListener() {
+		public boolean moleculeParsed(Molecule mol) {
+		    count[0]++;
+		    return listener.moleculeParsed(mol);
+		}
+	    };
+
+	if (FormatResolver.zippedByExtension(name)) { // ZIPped file
+	    ZipInputStream is = new ZipInputStream(inStream);
+	    try {
+		ZipEntry ze = null;
+		while ((ze = is.getNextEntry()) != null) {
+		    boolean cont = true;
+		    if (!ze.isDirectory()) {
+			String molName = new File(ze.getName()).getName();
+			cont = parseStream(is,molName,counter);
+		    }
+		    is.closeEntry();
+		    if (!cont) break;
+		}
+	    } finally {
+		is.close();
+	    }
+	} else if (FormatResolver.gzippedByExtension(name)) { // GZipped file
+	    InputStream is = openGZippedStream(inStream);
+	    try {
+		parseStream(is,FormatResolver.stripGZIPExtension(name),
+			    counter);
+	    } finally {
+		is.close(); // Stops inflating thread
+	    }
+	} else { // Regular file
+	    parseStream(inStream,name,counter);
+	}
+
+	return count[0];
+    }
+
     // Dispatch to a proper parsing function
     private Molecule[] parseFile(InputStream inStream,String name)
     {
@@ -93,6 +219,95 @@ public abstract class Parser
 	return ret;
     }
 
+    /**
+     * Parses entries of a local zip-file in parallel. Each entry is parsed
+     * by a new parser of the same class on a pool of threads bounded by
+     * the number of processors. Molecules are returned in the order of
+     * entries in the archive. Failure to parse an entry is reported and the
+     * rest of entries are still parsed.
+     *
+     * @param file zip-file to parse.
+     *
+     * @return new molecules.
+     */
+    public Molecule[] parseZipFile(File file)
+    {
+	ArrayList<Molecule> mols = new ArrayList<Molecule>();
+	ZipFile         zip  = null;
+	ExecutorService pool = null;
+	try {
+	    zip = new ZipFile(file);
+	    ArrayList<ZipEntry> entries = new ArrayList<ZipEntry>();
+	    for (Enumeration<? extends ZipEntry> en = zip.entries();
+		 en.hasMoreElements();) {
+		ZipEntry ze = en.nextElement();
+		if (!ze.isDirectory()) entries.add(ze);
+	    }
+
+	    int n_threads = Math.min(Runtime.getRuntime().availableProcessors(),
+				     entries.size());
+	    if (n_threads < 1) n_threads = 1;
+	    pool = Executors.newFixedThreadPool(n_threads);
+	    ArrayList<Future<ArrayList<Molecule>>> parts =
+		new ArrayList<Future<ArrayList<Molecule>>>();
+	    for (ZipEntry ze : entries)
+		parts.add(pool.submit(new ZipEntryTask(zip,ze)));
+	    for (Future<ArrayList<Molecule>> part : parts) {
+		ArrayList<Molecule> res = part.get();
+		if (res != null) mols.addAll(res);
+	    }
+	} catch (Exception e) {
+	    System.err.print("Exception while parsing zip-file: ");
+	    System.err.println(file.getName());
+	    System.err.println(e.toString());
+	}
+	if (pool != null) pool.shutdownNow();
+	try { zip.close(); } catch (Exception e) {}
+
+	if (mols.size() == 0) return null;
+	return mols.toArray(new Molecule[mols.size()]);
+    }
+
+    // Task to parse one entry of zip-file
+    private class ZipEntryTask implements Callable<ArrayList<Molecule>>
+    {
+	private ZipFile  zip_ = null;
+	private ZipEntry ze_  = null;
+
+	ZipEntryTask(ZipFile zip,ZipEntry ze) { zip_ = zip; ze_ = ze; }
+
+	public ArrayList<Molecule> call()
+	{
+	    ArrayList<Molecule> ret = null;
+	    InputStream is = null;
+	    try {
+		is = new BufferedInputStream(zip_.getInputStream(ze_));
+		String molName = new File(ze_.getName()).getName();
+		ret = createParser().parseStream(is,molName);
+	    } catch (Exception e) {
+		System.err.print("Exception while parsing zip-file entry: ");
+		System.err.println(ze_.getName());
+		System.err.println(e.toString());
+	    }
+	    try { is.close(); } catch (Exception e) {}
+	    return ret;
+	}
+    }
+
+    /**
+     * Creates a new parser of the same class. Used to parse several
+     * streams at the same time, since parsers keep state while parsing.
+     * The new parser uses the same load filter.
+     *
+     * @return new parser.
+     */
+    protected Parser createParser() throws Exception
+    {
+	Parser ret = getClass().getDeclaredConstructor().newInstance();
+	ret.setLoadFilter(filter);
+	return ret;
+    }
+
     // Wraping zip stream
     private ArrayList<Molecule> parseZippedFile(InputStream inStream)
     {
@@ -120,17 +335,29 @@ public abstract class Parser
 						 String molName)
     {
 	ArrayList<Molecule> mols = null;
+	InputStream is = null;
 	try {
-	    InputStream is = new GZIPInputStream(inStream);
+	    is   = openGZippedStream(inStream);
 	    mols = parseStream(is,molName);
-	    is.close();
 	} catch (Exception e) {
 	    System.err.println("Exception while parsing gzip-file.");
 	    System.err.println(e.toString());
 	}
+	try { is.close(); } catch (Exception e) {}
 	return mols;
     }
 
+    // Opens gzip stream. If there are several processors the stream is
+    // inflated on a separate thread while the parser consumes it.
+    private InputStream openGZippedStream(InputStream inStream)
+	throws IOException
+    {
+	InputStream ret = new GZIPInputStream(inStream,1 << 16);
+	if (Runtime.getRuntime().availableProcessors() > 1)
+	    ret = new PrefetchInputStream(ret);
+	return ret;
+    }
+
     // Just parsing file
     private ArrayList<Molecule> parseRegularFile(InputStream inStream,
 						   String molName)
@@ -149,6 +376,26 @@ public abstract class Parser
 	ArrayList<Molecule> parseStream(InputStream is,
 					String molName) throws Exception;
 
+    /**
+     * Parses stream and passes molecules to the listener. This
+     * implementation parses the whole stream first; parsers that can
+     * produce molecules incrementally override it.
+     *
+     * @return 'false' if the listener requested to stop parsing.
+     */
+    protected boolean parseStream(InputStream is,String molName,
+				  MoleculeListener listener) throws Exception
+    {
+	ArrayList<Molecule> mols = parseStream(is,molName);
+	if (mols == null) return true;
+	for (int i = 0;i < mols.size();i++) {
+	    Molecule mol = mols.get(i);
+	    mols.set(i,null); // Not kept after listener is done with it
+	    if (!listener.moleculeParsed(mol)) return false;
+	}
+	return true;
+    }
+
     /**
      * Saves molecules into a file. If selection expression is provided,
      * then it is used to determine which
@@ -203,8 +450,14 @@ public abstract class Parser
 	int ret = -1;
 	OutputStream outStream = null;
 	try {
-	    outStream =	new BufferedOutputStream(new FileOutputStream(file));
-	    ret = saveToFile(molsToSave,outStream,file.getName(),expr);
+	    if (FormatResolver.gzippedByExtension(file.getName())) {
+		outStream = new BufferedOutputStream(new FileOutputStream(file));
+		ret = saveToGZippedFile(molsToSave,outStream,expr);
+	    } else {
+		FileOutputStream fos = new FileOutputStream(file);
+		outStream = fos;
+		ret = saveToRegularFile(molsToSave,fos.getChannel(),expr);
+	    }
 	} catch (Exception e) {
 	    System.err.println("Exception while writing file:");
 	    System.err.println(file.getName());
@@ -222,7 +475,8 @@ public abstract class Parser
 	if (FormatResolver.gzippedByExtension(name))
 	    return saveToGZippedFile(molsToSave,outStream,expr);
 	else
-	    return saveToRegularFile(molsToSave,outStream,expr);
+	    return saveToRegularFile(molsToSave,Channels.newChannel(outStream),
+				     expr);
     }
 
     // Wraping gzip stream
@@ -232,7 +486,7 @@ public abstract class Parser
 	int ret = 0;
 	try {
 	    outStream = new GZIPOutputStream(outStream);
-	    saveToRegularFile(molsToSave,outStream,expr);
+	    saveToRegularFile(molsToSave,Channels.newChannel(outStream),expr);
 	    outStream.close();
 	} catch (Exception e) {
 	    System.err.println("Exception while writing to a gzip file.");
@@ -243,7 +497,8 @@ public abstract class Parser
     }
 
     // Saving to regular file
-    private int saveToRegularFile(Molecule molsToSave,OutputStream outStream,
+    private int saveToRegularFile(Molecule molsToSave,
+				  WritableByteChannel channel,
 				  SelectExpression expr)
     {
 	int ret = 0;
@@ -251,9 +506,9 @@ public abstract class Parser
 	    for (Molecule m = molsToSave;m != null;m = m.next())
 		if (expr != null) {
 		    if (countSelectedAtoms(m,expr) > 0)
-			ret += saveToStream(outStream,m,expr);
+			ret += save(channel,m,expr);
 		} else if (m.countSelectedAtoms() > 0)
-		    ret += saveToStream(outStream,m,null);
+		    ret += save(channel,m,null);
 	} catch (Exception e) {
 	    System.err.println("Exception while writing to a file.");
 	    System.err.println(e.toString());
@@ -262,10 +517,17 @@ public abstract class Parser
 	return ret;
     }
 
-    private int saveToStream(OutputStream os,Molecule mol,
-			     SelectExpression expr) throws Exception
+    /**
+     * Saves molecule into a channel. This implementation writes through
+     * PrintWriter; parsers that can format records faster override it.
+     *
+     * @return number of atoms saved.
+     */
+    protected int save(WritableByteChannel channel,Molecule mol,
+		       SelectExpression expr) throws IOException
     {
-	PrintWriter pwriter = new PrintWriter(os);
+	PrintWriter pwriter =
+	    new PrintWriter(Channels.newOutputStream(channel));
 	int ret = save(pwriter,mol,expr);
 	pwriter.flush();
 	return ret;
@@ -289,36 +551,27 @@ public abstract class Parser
     {
 	if (molsToSave == null) return new StringBuffer("");
 
-	StringWriter ret = new StringWriter();
-	PrintWriter  pw  = new PrintWriter(ret);
-	for (Molecule m = molsToSave;m != null;m = m.next())
-	    if (expr != null) {
-		if (countSelectedAtoms(m,expr) > 0)
-		    save(pw,m,expr);
-	    } else if (m.countSelectedAtoms() > 0)
-		save(pw,m,null);
-	pw.flush();
-	pw.close();
-	return ret.getBuffer();
+	ByteArrayOutputStream ret = new ByteArrayOutputStream();
+	WritableByteChannel channel = Channels.newChannel(ret);
+	try {
+	    for (Molecule m = molsToSave;m != null;m = m.next())
+		if (expr != null) {
+		    if (countSelectedAtoms(m,expr) > 0)
+			save(channel,m,expr);
+		} else if (m.countSelectedAtoms() > 0)
+		    save(channel,m,null);
+	    return new StringBuffer(ret.toString("ISO-8859-1"));
+	} catch (IOException e) {
+	    System.err.println("Exception while printing molecules.");
+	    System.err.println(e.toString());
+	    return new StringBuffer("");
+	}
     }
 
     // Return nubmer of atoms in a molecule that satisfy the selection
     private int countSelectedAtoms(Molecule mol,SelectExpression expr)
     {
-	int ret = 0;
-	if (!expr.moleculeMaySatisfy(mol)) return ret;
-	for (Chain c = mol.chainList();c != null;c = c.next()) {
-	    if (!expr.chainMaySatisfy(c)) continue;
-	    for (Assembly s = c.assemblyList();s != null;s = s.next()) {
-		if (!expr.assemblyMaySatisfy(s)) continue;
-		for (Atom a = s.atomList();a != null;a = a.next()) {
-		    if (!expr.atomMaySatisfy(a) || 
-			!expr.satisfy(mol,c,s,a)) continue;
-		    ret++;
-		}
-	    }
-	}
-	return ret;
+	return expr.countSatisfying(mol);
     }
 
 }
\ No newline at end of file
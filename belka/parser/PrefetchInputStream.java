@@ -0,0 +1,150 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Object of this class reads a source stream on a separate thread into a
+ * ring of reusable buffers and gives the data to the reading thread. When
+ * all buffers are filled the source thread waits until the reader frees
+ * one. This is used to inflate compressed files on one processor while
+ * parsing them on another.
+ *
+ * @author Alexej Abyzov
+ */
+class PrefetchInputStream extends InputStream
+{
+    // Default size and number of buffers
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 18;
+    private static final int DEFAULT_N_BUFFERS   = 4;
+
+    // Buffer with data
+    private static class Chunk
+    {
+	byte[] data_ = null;
+	int    len_  = 0;
+	Chunk(int size) { data_ = new byte[size]; }
+    }
+
+    // Mark of the end of data
+    private static final Chunk END_OF_DATA = new Chunk(0);
+
+    // Buffers
+    private ArrayBlockingQueue<Chunk> free_ = null;
+    private ArrayBlockingQueue<Chunk> full_ = null;
+    private Chunk current_ = null;
+    private int   pos_     = 0;
+    private boolean eof_   = false;
+
+    // Source and thread reading it
+    private InputStream source_ = null;
+    private Thread      thread_ = null;
+    private volatile IOException error_ = null;
+
+    /**
+     * Creates stream with default buffers and starts reading of the source.
+     *
+     * @param source stream to read.
+     */
+    PrefetchInputStream(InputStream source)
+    {
+	this(source,DEFAULT_N_BUFFERS,DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates stream and starts reading of the source.
+     *
+     * @param source stream to read.
+     * @param n_buffers number of buffers in the ring.
+     * @param size size of each buffer.
+     */
+    PrefetchInputStream(InputStream source,int n_buffers,int size)
+    {
+	source_ = source;
+	free_   = new ArrayBlockingQueue<Chunk>(n_buffers);
+	full_   = new ArrayBlockingQueue<Chunk>(n_buffers + 1);
+	for (int i = 0;i < n_buffers;i++) free_.add(new Chunk(size));
+	thread_ = new Thread(new Runnable() {
+		public void run() { fill(); }
+	    },"PrefetchInputStream");
+	thread_.setDaemon(true);
+	thread_.start();
+    }
+
+    // Reads the source into free buffers
+    private void fill()
+    {
+	try {
+	    while (true) {
+		Chunk c = free_.take();
+		int len = 0, n = 0;
+		while (len < c.data_.length &&
+		       (n = source_.read(c.data_,len,c.data_.length - len)) > 0)
+		    len += n;
+		c.len_ = len;
+		if (len > 0) full_.put(c);
+		if (n < 0 || len == 0) break;
+	    }
+	} catch (InterruptedException e) {
+	    return; // Stream was closed
+	} catch (IOException e) {
+	    error_ = e;
+	} catch (RuntimeException e) {
+	    error_ = new IOException(e.toString());
+	}
+	full_.offer(END_OF_DATA);
+    }
+
+    // Makes sure that there is data in the current buffer. Returns false
+    // at the end of data.
+    private boolean nextChunk() throws IOException
+    {
+	if (eof_) return false;
+	if (current_ != null && pos_ < current_.len_) return true;
+	if (current_ != null) free_.offer(current_);
+	current_ = null;
+	try {
+	    current_ = full_.take();
+	} catch (InterruptedException e) {
+	    throw new InterruptedIOException(e.toString());
+	}
+	pos_ = 0;
+	if (current_ == END_OF_DATA) {
+	    current_ = null;
+	    eof_ = true;
+	    if (error_ != null) throw error_;
+	    return false;
+	}
+	return true;
+    }
+
+    public int read() throws IOException
+    {
+	if (!nextChunk()) return -1;
+	return current_.data_[pos_++] & 0xff;
+    }
+
+    public int read(byte[] b,int off,int len) throws IOException
+    {
+	if (len == 0) return 0;
+	if (!nextChunk()) return -1;
+	int n = Math.min(len,current_.len_ - pos_);
+	System.arraycopy(current_.data_,pos_,b,off,n);
+	pos_ += n;
+	return n;
+    }
+
+    public int available() throws IOException
+    {
+	if (current_ == null) return 0;
+	return current_.len_ - pos_;
+    }
+
+    public void close() throws IOException
+    {
+	eof_ = true;
+	thread_.interrupt();
+	source_.close();
+    }
+}
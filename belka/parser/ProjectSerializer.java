@@ -1,6 +1,7 @@
 package belka.parser;
 
 //--- Java imports ---
+import java.awt.*;
 import java.io.*;
 import java.lang.*;
 import java.net.*;
@@ -75,25 +76,238 @@ public class ProjectSerializer
 	return ret;
     }
 
+    // Signature and version of the binary project format
+    private static final int PROJECT_MAGIC   = 0x42454C4B; // "BELK"
+    private static final int PROJECT_VERSION = 1;
+
+    // Flags for atoms
+    private static final int ATOM_SELECTED  = 0x01;
+    private static final int ATOM_HAS_COLOR = 0x02;
+
     // Saving project
     private int saveToFile(Molecule molsToSave,OutputStream outStream)
     {
 	int ret = 0;
 	try {
-	    GZIPOutputStream zos   = new GZIPOutputStream(outStream);
-	    ObjectOutputStream out = new ObjectOutputStream(zos);
-	    out.writeObject(molsToSave);
+	    // Coordinates compress poorly, so fast compression is used
+	    GZIPOutputStream zos = new GZIPOutputStream(outStream) {
+		    { def.setLevel(Deflater.BEST_SPEED); }
+		};
+	    DataOutputStream out =
+		new DataOutputStream(new BufferedOutputStream(zos,1 << 16));
+	    out.writeInt(PROJECT_MAGIC);
+	    out.writeInt(PROJECT_VERSION);
+	    int n_mols = 0;
+	    for (Molecule m = molsToSave;m != null;m = m.next()) n_mols++;
+	    out.writeInt(n_mols);
+	    for (Molecule m = molsToSave;m != null;m = m.next())
+		ret += writeMolecule(out,m);
 	    out.close();
 	} catch (Exception e) {
 	    System.err.println("Exception while writing to project-file.");
 	    System.err.println(e.toString());
 	    return -1;
 	}
-	for (Molecule m = molsToSave;m != null;m = m.next())
-	    ret  += m.countAtoms();
 	return ret;
     }
 
+    /**
+     * Writes molecule. Molecule's view is written first, then
+     * compounds, chains, assemblies, atoms and bonds are written
+     * column by column. Chains and assemblies are written as ranges of
+     * assemblies and atoms, respectively. Bonds are written as pairs of
+     * atom indexes together with bond indexes for each atom and assembly.
+     */
+    private int writeMolecule(DataOutputStream out,Molecule mol)
+	throws IOException
+    {
+	out.writeUTF(mol.getName());
+	out.writeUTF(mol.getPDBCode());
+
+	// View
+	double[][] rot   = mol.getRotation();
+	double[]   trans = mol.getTranslation();
+	for (int i = 0;i < 3;i++)
+	    for (int j = 0;j < 3;j++) out.writeDouble(rot[i][j]);
+	for (int i = 0;i < 3;i++) out.writeDouble(trans[i]);
+	out.writeDouble(mol.getScale());
+	out.writeBoolean(mol.isFrozen());
+
+	// Collecting objects
+	ArrayList<Chain>    chains = new ArrayList<Chain>();
+	ArrayList<Assembly> asses  = new ArrayList<Assembly>();
+	ArrayList<Atom>     atoms  = new ArrayList<Atom>();
+	ArrayList<Integer>  chainSizes = new ArrayList<Integer>();
+	for (Chain c = mol.chainList();c != null;c = c.next()) {
+	    chains.add(c);
+	    int n_asses = asses.size();
+	    for (Assembly s = c.assemblyList();s != null;s = s.next()) {
+		asses.add(s);
+		for (Atom a = s.atomList();a != null;a = a.next())
+		    atoms.add(a);
+	    }
+	    chainSizes.add(asses.size() - n_asses); // Gaps are counted
+	}
+	IdentityHashMap<Atom,Integer> atomIndex =
+	    new IdentityHashMap<Atom,Integer>();
+	for (int i = 0;i < atoms.size();i++) atomIndex.put(atoms.get(i),i);
+	ArrayList<Bond> bonds = new ArrayList<Bond>();
+	IdentityHashMap<Bond,Integer> bondIndex =
+	    new IdentityHashMap<Bond,Integer>();
+	for (Atom a : atoms)     indexBonds(a.bondArray(),bonds,bondIndex);
+	for (Assembly s : asses) indexBonds(s.bondArray(),bonds,bondIndex);
+
+	// Strings and compounds
+	ArrayList<String> strings = new ArrayList<String>();
+	HashMap<String,Integer> stringIndex = new HashMap<String,Integer>();
+	ArrayList<Compound> comps = new ArrayList<Compound>();
+	IdentityHashMap<Compound,Integer> compIndex =
+	    new IdentityHashMap<Compound,Integer>();
+	for (Assembly s : asses) {
+	    Compound comp = s.getCompound();
+	    if (comp == null || compIndex.containsKey(comp)) continue;
+	    compIndex.put(comp,comps.size());
+	    comps.add(comp);
+	}
+	int[] nameInds = new int[atoms.size()];
+	int[] elemInds = new int[atoms.size()];
+	for (int i = 0;i < atoms.size();i++) {
+	    Atom a = atoms.get(i);
+	    nameInds[i] = stringId(a.getName(),strings,stringIndex);
+	    Element elem = a.getElement();
+	    elemInds[i] = -1;
+	    if (elem != null)
+		elemInds[i] = stringId(elem.getSign(),strings,stringIndex);
+	}
+	out.writeInt(strings.size());
+	for (String str : strings) out.writeUTF(str);
+	out.writeInt(comps.size());
+	for (Compound comp : comps) {
+	    out.writeUTF(comp.getName());
+	    out.writeUTF(comp.getShortName());
+	    out.writeChar(comp.getLetterName());
+	    out.writeInt(colorToInt(comp.getColor()));
+	}
+
+	// Chains
+	out.writeInt(chains.size());
+	for (Chain c : chains) out.writeChar(c.getId());
+	for (Chain c : chains) out.writeInt(c.getModel());
+	for (Integer n : chainSizes) out.writeInt(n);
+
+	// Assemblies
+	out.writeInt(asses.size());
+	for (Assembly s : asses) {
+	    Compound comp = s.getCompound();
+	    out.writeInt(comp == null ? -1 : compIndex.get(comp));
+	}
+	for (Assembly s : asses) out.writeInt(s.getSerialNum());
+	for (Assembly s : asses) out.writeChar(s.getICode());
+	for (Assembly s : asses) out.writeInt(s.getGroupId());
+	for (Assembly s : asses) out.writeBoolean(s.isAligned());
+	for (Assembly s : asses) out.writeInt(s.countAtoms());
+
+	// Atoms
+	int n_atoms = atoms.size();
+	out.writeInt(n_atoms);
+	for (int i = 0;i < n_atoms;i++) out.writeInt(nameInds[i]);
+	for (int i = 0;i < n_atoms;i++) out.writeInt(elemInds[i]);
+	for (Atom a : atoms) out.writeDouble(a.getX());
+	for (Atom a : atoms) out.writeDouble(a.getY());
+	for (Atom a : atoms) out.writeDouble(a.getZ());
+	boolean derived = false; // Derived coordinates differ from original
+	for (Atom a : atoms)
+	    if (a.getDerivedX() != a.getX() || a.getDerivedY() != a.getY() ||
+		a.getDerivedZ() != a.getZ()) {
+		derived = true;
+		break;
+	    }
+	out.writeBoolean(derived);
+	if (derived) {
+	    for (Atom a : atoms) out.writeDouble(a.getDerivedX());
+	    for (Atom a : atoms) out.writeDouble(a.getDerivedY());
+	    for (Atom a : atoms) out.writeDouble(a.getDerivedZ());
+	}
+	for (Atom a : atoms) out.writeDouble(a.getRadius());
+	for (Atom a : atoms) out.writeInt(a.getSerialNum());
+	for (Atom a : atoms) out.writeChar(a.getAlternative());
+	for (Atom a : atoms) out.writeDouble(a.getOccupancy());
+	for (Atom a : atoms) out.writeDouble(a.getTemperature());
+	for (Atom a : atoms) {
+	    int flags = 0;
+	    if (a.isSelected())        flags |= ATOM_SELECTED;
+	    if (a.getColor() != null) flags |= ATOM_HAS_COLOR;
+	    out.writeByte(flags);
+	}
+	for (Atom a : atoms) out.writeInt(colorToInt(a.getColor()));
+
+	// Bonds
+	out.writeInt(bonds.size());
+	for (Bond b : bonds) out.writeInt(atomId(b.getFAtom(),atomIndex));
+	for (Bond b : bonds) out.writeInt(atomId(b.getSAtom(),atomIndex));
+	for (Bond b : bonds) out.writeDouble(b.getRadius());
+	for (Bond b : bonds) out.writeBoolean(b.getColor() != null);
+	for (Bond b : bonds) out.writeInt(colorToInt(b.getColor()));
+	for (Atom a : atoms)     writeBondIds(out,a.bondArray(),bondIndex);
+	for (Assembly s : asses) writeBondIds(out,s.bondArray(),bondIndex);
+
+	return n_atoms;
+    }
+
+    // Adds bonds that are not yet indexed
+    private void indexBonds(Bond[] bonds,ArrayList<Bond> list,
+			    IdentityHashMap<Bond,Integer> index)
+    {
+	if (bonds == null) return;
+	for (int i = 0;i < bonds.length;i++) {
+	    Bond b = bonds[i];
+	    if (b == null || index.containsKey(b)) continue;
+	    index.put(b,list.size());
+	    list.add(b);
+	}
+    }
+
+    // Writes number of bonds and their indexes
+    private void writeBondIds(DataOutputStream out,Bond[] bonds,
+			      IdentityHashMap<Bond,Integer> index)
+	throws IOException
+    {
+	int n = 0;
+	if (bonds != null)
+	    for (int i = 0;i < bonds.length;i++) if (bonds[i] != null) n++;
+	out.writeInt(n);
+	if (n == 0) return;
+	for (int i = 0;i < bonds.length;i++)
+	    if (bonds[i] != null) out.writeInt(index.get(bonds[i]));
+    }
+
+    // Returns index of string in the table adding it if necessary
+    private int stringId(String str,ArrayList<String> strings,
+			 HashMap<String,Integer> index)
+    {
+	Integer ret = index.get(str);
+	if (ret != null) return ret;
+	index.put(str,strings.size());
+	strings.add(str);
+	return strings.size() - 1;
+    }
+
+    // Returns index of atom or -1 if there is no such atom
+    private int atomId(Atom a,IdentityHashMap<Atom,Integer> index)
+    {
+	if (a == null) return -1;
+	Integer ret = index.get(a);
+	if (ret == null) return -1;
+	return ret;
+    }
+
+    // Color as integer
+    private int colorToInt(Color col)
+    {
+	if (col == null) return 0;
+	return col.getRGB();
+    }
+
     /**
      * Loads project-file and creates a molecule.
      *
@@ -147,13 +361,199 @@ public class ProjectSerializer
 	Molecule mols = null;
 	try {
 	    GZIPInputStream zis = new GZIPInputStream(inStream);
-	    ObjectInputStream in = new ObjectInputStream(zis);
-	    mols = (Molecule)in.readObject();
+	    DataInputStream in =
+		new DataInputStream(new BufferedInputStream(zis,1 << 16));
+	    in.mark(4);
+	    if (in.readInt() != PROJECT_MAGIC) { // Serialized objects
+		in.reset();
+		ObjectInputStream oin = new ObjectInputStream(in);
+		mols = (Molecule)oin.readObject();
+		oin.close();
+		return mols;
+	    }
+	    int version = in.readInt();
+	    if (version > PROJECT_VERSION) {
+		System.err.println("Unsupported version " + version +
+				   " of project-file.");
+		return null;
+	    }
+	    int n_mols = in.readInt();
+	    Molecule last = null;
+	    for (int i = 0;i < n_mols;i++) {
+		Molecule m = readMolecule(in);
+		if (last == null) mols = m;
+		else              last.addAfter(m);
+		last = m;
+	    }
 	    in.close();
 	} catch (Exception e) {
 	    System.err.println("Exception while loading project-file.");
 	    System.err.println(e.toString());
+	    return null; // No partly loaded projects
 	}
 	return mols;
     }
+
+    // Reads molecule written by writeMolecule
+    private Molecule readMolecule(DataInputStream in) throws IOException
+    {
+	String name    = in.readUTF();
+	String pdbCode = in.readUTF();
+	Molecule mol   = Molecule.create(name,pdbCode);
+
+	// View
+	double[][] rot   = new double[3][3];
+	double[]   trans = new double[3];
+	for (int i = 0;i < 3;i++)
+	    for (int j = 0;j < 3;j++) rot[i][j] = in.readDouble();
+	for (int i = 0;i < 3;i++) trans[i] = in.readDouble();
+	double  scale  = in.readDouble();
+	boolean frozen = in.readBoolean();
+
+	// Strings and compounds
+	String[] strings = new String[in.readInt()];
+	for (int i = 0;i < strings.length;i++) strings[i] = in.readUTF();
+	Compound[] comps = new Compound[in.readInt()];
+	for (int i = 0;i < comps.length;i++) {
+	    String cname  = in.readUTF();
+	    String cshort = in.readUTF();
+	    char   letter = in.readChar();
+	    Color  col    = new Color(in.readInt(),true);
+	    comps[i] = Compound.getCompoundByShortName(cshort);
+	    if (comps[i] == null)
+		comps[i] = new Compound(cname,cshort,letter,col);
+	}
+
+	// Chains
+	Chain[] chains = new Chain[in.readInt()];
+	for (int i = 0;i < chains.length;i++)
+	    chains[i] = Chain.create(in.readChar());
+	for (int i = 0;i < chains.length;i++) chains[i].setModel(in.readInt());
+	int[] chainSizes = readInts(in,chains.length);
+
+	// Assemblies
+	Assembly[] asses = new Assembly[in.readInt()];
+	for (int i = 0;i < asses.length;i++) {
+	    int ind = in.readInt();
+	    if (ind < 0) asses[i] = Assembly.createGap();
+	    else         asses[i] = Assembly.create(comps[ind]);
+	}
+	for (int i = 0;i < asses.length;i++) asses[i].setSerialNum(in.readInt());
+	for (int i = 0;i < asses.length;i++) asses[i].setICode(in.readChar());
+	for (int i = 0;i < asses.length;i++) asses[i].setGroupId(in.readInt());
+	for (int i = 0;i < asses.length;i++)
+	    asses[i].setAligned(in.readBoolean());
+	int[] assSizes = readInts(in,asses.length);
+	checkSum(chainSizes,asses.length,"assemblies");
+
+	// Atoms
+	int n_atoms = in.readInt();
+	checkSum(assSizes,n_atoms,"atoms");
+	int[]    nameInds = readInts(in,n_atoms);
+	int[]    elemInds = readInts(in,n_atoms);
+	double[] x = readDoubles(in,n_atoms);
+	double[] y = readDoubles(in,n_atoms);
+	double[] z = readDoubles(in,n_atoms);
+	Atom[] atoms = new Atom[n_atoms];
+	for (int i = 0;i < n_atoms;i++) {
+	    Element elem = null;
+	    if (elemInds[i] >= 0)
+		elem = Element.getElementBySign(strings[elemInds[i]]);
+	    atoms[i] = Atom.create(strings[nameInds[i]],x[i],y[i],z[i],elem);
+	}
+	if (in.readBoolean()) { // Derived coordinates differ from original
+	    for (int i = 0;i < n_atoms;i++)
+		atoms[i].setDerivedX(in.readDouble());
+	    for (int i = 0;i < n_atoms;i++)
+		atoms[i].setDerivedY(in.readDouble());
+	    for (int i = 0;i < n_atoms;i++)
+		atoms[i].setDerivedZ(in.readDouble());
+	}
+	for (int i = 0;i < n_atoms;i++) atoms[i].setRadius(in.readDouble());
+	for (int i = 0;i < n_atoms;i++) atoms[i].setSerialNum(in.readInt());
+	for (int i = 0;i < n_atoms;i++) atoms[i].setAlternative(in.readChar());
+	for (int i = 0;i < n_atoms;i++) atoms[i].setOccupancy(in.readDouble());
+	for (int i = 0;i < n_atoms;i++)
+	    atoms[i].setTemperature(in.readDouble());
+	byte[] flags = new byte[n_atoms];
+	in.readFully(flags);
+	for (int i = 0;i < n_atoms;i++) {
+	    int rgb = in.readInt();
+	    atoms[i].setSelected((flags[i] & ATOM_SELECTED) != 0);
+	    if ((flags[i] & ATOM_HAS_COLOR) != 0)
+		atoms[i].setColor(new Color(rgb,true));
+	}
+
+	// Bonds
+	Bond[] bonds = new Bond[in.readInt()];
+	int[] first  = readInts(in,bonds.length);
+	int[] second = readInts(in,bonds.length);
+	for (int i = 0;i < bonds.length;i++)
+	    bonds[i] = Bond.create(first[i]  < 0 ? null : atoms[first[i]],
+				   second[i] < 0 ? null : atoms[second[i]]);
+	for (int i = 0;i < bonds.length;i++) bonds[i].setRadius(in.readDouble());
+	boolean[] hasColor = new boolean[bonds.length];
+	for (int i = 0;i < bonds.length;i++) hasColor[i] = in.readBoolean();
+	for (int i = 0;i < bonds.length;i++) {
+	    int rgb = in.readInt();
+	    if (hasColor[i]) bonds[i].setColor(new Color(rgb,true));
+	}
+	for (int i = 0;i < n_atoms;i++) {
+	    int n = in.readInt();
+	    for (int b = 0;b < n;b++)
+		atoms[i].addNewBond(bonds[in.readInt()]);
+	}
+	for (int i = 0;i < asses.length;i++) {
+	    int n = in.readInt();
+	    for (int b = 0;b < n;b++)
+		asses[i].addNewBond(bonds[in.readInt()]);
+	}
+
+	// Assembling molecule
+	int s_ind = 0, a_ind = 0;
+	for (int c = 0;c < chains.length;c++) {
+	    for (int n = 0;n < chainSizes[c];n++, s_ind++) {
+		Assembly s = asses[s_ind];
+		for (int k = 0;k < assSizes[s_ind];k++) s.addAtom(atoms[a_ind++]);
+		chains[c].addAssembly(s);
+	    }
+	    mol.addChain(chains[c]);
+	}
+
+	mol.setTransformation(rot,trans);
+	mol.setScale(scale);
+	mol.setFrozen(frozen);
+
+	return mol;
+    }
+
+    // Checks that sizes of ranges sum up to the number of objects
+    private void checkSum(int[] sizes,int n,String what) throws IOException
+    {
+	long sum = 0;
+	boolean ok = true;
+	for (int i = 0;i < sizes.length;i++) {
+	    if (sizes[i] < 0) ok = false;
+	    sum += sizes[i];
+	}
+	if (!ok || sum != n)
+	    throw new IOException("Inconsistent number of " + what +
+				  " in project-file.");
+    }
+
+    // Reads array of integers
+    private int[] readInts(DataInputStream in,int n) throws IOException
+    {
+	int[] ret = new int[n];
+	for (int i = 0;i < n;i++) ret[i] = in.readInt();
+	return ret;
+    }
+
+    // Reads array of doubles
+    private double[] readDoubles(DataInputStream in,int n) throws IOException
+    {
+	double[] ret = new double[n];
+	for (int i = 0;i < n;i++) ret[i] = in.readDouble();
+	return ret;
+    }
 }
@@ -0,0 +1,294 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.nio.*;
+
+/**
+ * Object of this class reads text records line by line into a reused byte
+ * buffer and decodes fixed columns of the current line without creating
+ * intermediate strings. Trimmed string fields are interned, so equal names
+ * (atom names, residue names, ...) share one object.
+ *
+ * @author Alexej Abyzov
+ */
+class RecordReader
+{
+    /** Value returned when integer field can not be decoded. */
+    static final int NO_INT = Integer.MIN_VALUE;
+
+    // Powers of ten that are exactly representable by double
+    private static final double[] POW10 = {
+	1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+	1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Maximal number of digits that fits into double mantissa exactly
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    // Source stream
+    private InputStream is_ = null;
+    private byte[] in_      = null;
+    private int    in_pos_  = 0;
+    private int    in_len_  = 0;
+
+    // Source buffer
+    private ByteBuffer buf_ = null;
+    private int pos_ = 0, end_ = 0;
+
+    // Current line
+    private byte[]  line_    = new byte[128];
+    private int     len_     = 0;
+    private boolean skip_lf_ = false;
+
+    // Interned strings
+    private String[] names_   = new String[256];
+    private int      n_names_ = 0;
+
+    /**
+     * Creates reader of records from a stream.
+     *
+     * @param is stream to read records from.
+     */
+    RecordReader(InputStream is)
+    {
+	is_ = is;
+	in_ = new byte[1 << 16];
+    }
+
+    /**
+     * Creates reader of records from a part of a buffer.
+     *
+     * @param buf buffer to read records from.
+     * @param start position of the first byte to read.
+     * @param end position after the last byte to read.
+     */
+    RecordReader(ByteBuffer buf,int start,int end)
+    {
+	buf_ = buf;
+	pos_ = start;
+	end_ = end;
+    }
+
+    // Returns next byte of input or -1 at the end of input
+    private int read() throws IOException
+    {
+	if (buf_ != null) {
+	    if (pos_ >= end_) return -1;
+	    return buf_.get(pos_++) & 0xff;
+	}
+	if (in_pos_ >= in_len_) {
+	    in_len_ = is_.read(in_,0,in_.length);
+	    in_pos_ = 0;
+	    if (in_len_ <= 0) {
+		in_len_ = 0;
+		return -1;
+	    }
+	}
+	return in_[in_pos_++] & 0xff;
+    }
+
+    /**
+     * Reads next line. A line is terminated by '\n', '\r' or "\r\n". The
+     * terminator is not included into the line.
+     *
+     * @return 'true' if line was read, 'false' at the end of input.
+     */
+    boolean next() throws IOException
+    {
+	len_ = 0;
+	int b = read();
+	if (skip_lf_) {
+	    skip_lf_ = false;
+	    if (b == '\n') b = read();
+	}
+	if (b < 0) return false;
+	while (b >= 0 && b != '\n') {
+	    if (b == '\r') {
+		skip_lf_ = true;
+		break;
+	    }
+	    if (len_ == line_.length) {
+		byte[] tmp = new byte[2*len_];
+		System.arraycopy(line_,0,tmp,0,len_);
+		line_ = tmp;
+	    }
+	    line_[len_++] = (byte)b;
+	    b = read();
+	}
+	return true;
+    }
+
+    /**
+     * Returns length of current line.
+     */
+    int length() { return len_; }
+
+    /**
+     * Returns character at the given column of current line. For columns
+     * beyond the end of the line space is returned.
+     */
+    char charAt(int index)
+    {
+	if (index >= len_) return ' ';
+	return (char)(line_[index] & 0xff);
+    }
+
+    /**
+     * Returns 'true' if current line starts with the prefix.
+     */
+    boolean startsWith(String prefix)
+    {
+	int n = prefix.length();
+	if (len_ < n) return false;
+	for (int i = 0;i < n;i++)
+	    if ((line_[i] & 0xff) != prefix.charAt(i)) return false;
+	return true;
+    }
+
+    /**
+     * Returns 'true' if current line is exactly the given string.
+     */
+    boolean is(String str)
+    {
+	return len_ == str.length() && startsWith(str);
+    }
+
+    /**
+     * Returns interned string with trimmed content of columns from 'begin'
+     * to 'end' (exclusive). Null is returned if the line is shorter than
+     * 'end'.
+     */
+    String field(int begin,int end)
+    {
+	if (end > len_) return null;
+	while (begin < end && (line_[begin] & 0xff) <= ' ') begin++;
+	while (end > begin && (line_[end - 1] & 0xff) <= ' ') end--;
+	return intern(begin,end);
+    }
+
+    /**
+     * Returns integer in columns from 'begin' to 'end' (exclusive).
+     * NO_INT is returned if the field can not be decoded.
+     */
+    int intField(int begin,int end)
+    {
+	if (end > len_) return NO_INT;
+	while (begin < end && (line_[begin] & 0xff) <= ' ') begin++;
+	while (end > begin && (line_[end - 1] & 0xff) <= ' ') end--;
+	if (begin == end) return NO_INT;
+
+	boolean neg = false;
+	int i = begin;
+	if      (line_[i] == '-') { neg = true; i++; }
+	else if (line_[i] == '+') i++;
+	if (i == end) return NO_INT;
+
+	long val = 0;
+	for (;i < end;i++) {
+	    int d = line_[i] - '0';
+	    if (d < 0 || d > 9) return NO_INT;
+	    val = val*10 + d;
+	    if (val > Integer.MAX_VALUE) return NO_INT;
+	}
+	return neg ? (int)-val : (int)val;
+    }
+
+    /**
+     * Returns real number in columns from 'begin' to 'end' (exclusive).
+     * The number is equal to the one returned by Double.parseDouble() for
+     * the same text. NaN is returned if the field can not be decoded.
+     */
+    double doubleField(int begin,int end)
+    {
+	if (end > len_) return Double.NaN;
+	while (begin < end && (line_[begin] & 0xff) <= ' ') begin++;
+	while (end > begin && (line_[end - 1] & 0xff) <= ' ') end--;
+	if (begin == end) return Double.NaN;
+
+	boolean neg = false;
+	int i = begin;
+	if      (line_[i] == '-') { neg = true; i++; }
+	else if (line_[i] == '+') i++;
+
+	long mant = 0;
+	int  n_digits = 0, n_frac = -1;
+	for (;i < end;i++) {
+	    int b = line_[i];
+	    if (b >= '0' && b <= '9') {
+		mant = mant*10 + (b - '0');
+		n_digits++;
+		if (n_frac >= 0) n_frac++;
+	    } else if (b == '.' && n_frac < 0) n_frac = 0;
+	    else break;
+	}
+
+	// Both mantissa and power of ten are exact, so the division is
+	// correctly rounded
+	if (i == end && n_digits > 0 && n_digits <= MAX_EXACT_DIGITS) {
+	    double ret = mant;
+	    if (n_frac > 0) ret /= POW10[n_frac];
+	    return neg ? -ret : ret;
+	}
+
+	try {
+	    return Double.parseDouble(string(begin,end));
+	} catch (Exception e) {
+	    return Double.NaN;
+	}
+    }
+
+    /**
+     * Returns new string with content of columns from 'begin' to 'end'
+     * (exclusive). Null is returned if the line is shorter than 'end'.
+     */
+    String string(int begin,int end)
+    {
+	if (end > len_) return null;
+	char[] chars = new char[end - begin];
+	for (int i = begin;i < end;i++)
+	    chars[i - begin] = (char)(line_[i] & 0xff);
+	return new String(chars);
+    }
+
+    /**
+     * Returns current line as a string.
+     */
+    public String toString() { return string(0,len_); }
+
+    // Returns interned string for the given bytes of current line
+    private String intern(int begin,int end)
+    {
+	int hash = 0;
+	for (int i = begin;i < end;i++) hash = 31*hash + (line_[i] & 0xff);
+
+	int mask = names_.length - 1;
+	int ind  = hash & mask;
+	for (String s = names_[ind];s != null;s = names_[ind]) {
+	    if (s.length() == end - begin) {
+		int i = begin;
+		while (i < end && s.charAt(i - begin) == (line_[i] & 0xff)) i++;
+		if (i == end) return s;
+	    }
+	    ind = (ind + 1) & mask;
+	}
+
+	String ret = string(begin,end);
+	if (2*(n_names_ + 1) > names_.length) {
+	    String[] old = names_;
+	    names_ = new String[2*old.length];
+	    mask   = names_.length - 1;
+	    for (int j = 0;j < old.length;j++) {
+		if (old[j] == null) continue;
+		int k = old[j].hashCode() & mask;
+		while (names_[k] != null) k = (k + 1) & mask;
+		names_[k] = old[j];
+	    }
+	    ind = hash & mask;
+	    while (names_[ind] != null) ind = (ind + 1) & mask;
+	}
+	names_[ind] = ret;
+	n_names_++;
+	return ret;
+    }
+}
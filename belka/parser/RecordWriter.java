@@ -0,0 +1,181 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Object of this class formats fixed-width text records into a reused byte
+ * buffer and writes the buffer to a channel when it is full. Numbers are
+ * formatted by hand and give the same text as Formatter with patterns
+ * "%Nd" and "%N.Mf".
+ *
+ * @author Alexej Abyzov
+ */
+class RecordWriter
+{
+    // Line separator as used by PrintWriter
+    private static final String LINE_SEPARATOR =
+	System.getProperty("line.separator");
+
+    // Powers of ten
+    private static final long[] POW10 = {
+	1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L
+    };
+
+    // Numbers with larger magnitude are formatted by Formatter
+    private static final double MAX_FAST_VALUE = 1e6;
+
+    // Numbers this close to a tie after scaling are formatted by Formatter
+    private static final double TIE_EPSILON = 1e-5;
+
+    // Output
+    private WritableByteChannel channel_ = null;
+    private byte[]     buf_   = new byte[1 << 16];
+    private ByteBuffer bbuf_  = ByteBuffer.wrap(buf_);
+    private int        len_   = 0;
+
+    // Digits of a number
+    private byte[] digits_ = new byte[24];
+
+    /**
+     * Creates writer to a channel.
+     *
+     * @param channel channel to write to.
+     */
+    RecordWriter(WritableByteChannel channel)
+    {
+	channel_ = channel;
+    }
+
+    // Makes room for n bytes
+    private void ensure(int n) throws IOException
+    {
+	if (len_ + n > buf_.length) flush();
+	if (n > buf_.length) {
+	    buf_  = new byte[n];
+	    bbuf_ = ByteBuffer.wrap(buf_);
+	}
+    }
+
+    /**
+     * Appends a character.
+     */
+    void append(char c) throws IOException
+    {
+	ensure(1);
+	buf_[len_++] = (byte)(c < 256 ? c : '?');
+    }
+
+    /**
+     * Appends a string.
+     */
+    void append(String str) throws IOException
+    {
+	int n = str.length();
+	ensure(n);
+	for (int i = 0;i < n;i++) {
+	    char c = str.charAt(i);
+	    buf_[len_++] = (byte)(c < 256 ? c : '?');
+	}
+    }
+
+    /**
+     * Appends the character n times.
+     */
+    void pad(char c,int n) throws IOException
+    {
+	if (n <= 0) return;
+	ensure(n);
+	for (int i = 0;i < n;i++) buf_[len_++] = (byte)c;
+    }
+
+    /**
+     * Appends integer right aligned in the field of given width, same as
+     * "%<width>d".
+     */
+    void appendInt(int val,int width) throws IOException
+    {
+	long v = val;
+	boolean neg = v < 0;
+	if (neg) v = -v;
+	int n = 0;
+	do {
+	    digits_[n++] = (byte)('0' + v%10);
+	    v /= 10;
+	} while (v > 0);
+	if (neg) digits_[n++] = '-';
+	pad(' ',width - n);
+	ensure(n);
+	while (n > 0) buf_[len_++] = digits_[--n];
+    }
+
+    /**
+     * Appends real number right aligned in the field of given width with
+     * given number of digits after the point, same as
+     * "%<width>.<prec>f".
+     */
+    void appendFixed(double val,int width,int prec) throws IOException
+    {
+	double mag = Math.abs(val);
+	if (!(mag < MAX_FAST_VALUE) || prec >= POW10.length) {
+	    appendFormatted(val,width,prec);
+	    return;
+	}
+
+	// Formatter rounds shortest decimal representation half up, which
+	// is the same as rounding of the value unless it is close to a tie
+	double scaled = mag*POW10[prec];
+	double floor  = Math.floor(scaled);
+	double frac   = scaled - floor;
+	if (Math.abs(frac - 0.5) < TIE_EPSILON) {
+	    appendFormatted(val,width,prec);
+	    return;
+	}
+	long v = (long)floor;
+	if (frac > 0.5) v++;
+
+	int n = 0;
+	for (int i = 0;i < prec;i++) {
+	    digits_[n++] = (byte)('0' + v%10);
+	    v /= 10;
+	}
+	if (prec > 0) digits_[n++] = '.';
+	do {
+	    digits_[n++] = (byte)('0' + v%10);
+	    v /= 10;
+	} while (v > 0);
+	if (Double.doubleToRawLongBits(val) < 0) digits_[n++] = '-';
+	pad(' ',width - n);
+	ensure(n);
+	while (n > 0) buf_[len_++] = digits_[--n];
+    }
+
+    // Formats number by Formatter
+    private void appendFormatted(double val,int width,int prec)
+	throws IOException
+    {
+	append(String.format(Locale.US,"%" + width + "." + prec + "f",val));
+    }
+
+    /**
+     * Ends current line.
+     */
+    void newLine() throws IOException
+    {
+	append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes buffered bytes to the channel.
+     */
+    void flush() throws IOException
+    {
+	bbuf_.clear();
+	bbuf_.limit(len_);
+	while (bbuf_.hasRemaining()) channel_.write(bbuf_);
+	len_ = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package belka.parser;
+
+//--- Application imports ---
+import belka.mol.*;
+
+/**
+ * Object of this class maps serial numbers of atoms to atoms. Keys are
+ * kept as primitive ints in an open-addressed table, so no objects are
+ * created per atom. If several atoms have the same serial number the first
+ * added atom is kept.
+ *
+ * @author Alexej Abyzov
+ */
+class SerialAtomMap
+{
+    // Keys and values
+    private int[]  keys_ = null;
+    private Atom[] vals_ = null;
+    private int    size_ = 0;
+    private int    mask_ = 0;
+
+    /**
+     * Creates map with room for the given number of atoms.
+     *
+     * @param capacity expected number of atoms.
+     */
+    SerialAtomMap(int capacity)
+    {
+	int n = 16;
+	while (n < 2*capacity) n <<= 1;
+	keys_ = new int[n];
+	vals_ = new Atom[n];
+	mask_ = n - 1;
+    }
+
+    // Returns slot to start search for a key
+    private int slot(int key)
+    {
+	int h = key*0x9E3779B9;
+	return (h ^ (h >>> 16)) & mask_;
+    }
+
+    /**
+     * Adds atom for the serial number unless there is already atom for it.
+     *
+     * @param key serial number.
+     * @param atom atom to add.
+     *
+     * @return 'true' if atom was added, 'false' otherwise.
+     */
+    boolean put(int key,Atom atom)
+    {
+	if (atom == null) return false;
+	int i = slot(key);
+	while (vals_[i] != null) {
+	    if (keys_[i] == key) return false;
+	    i = (i + 1) & mask_;
+	}
+	keys_[i] = key;
+	vals_[i] = atom;
+	if (2*(++size_) > keys_.length) rehash();
+	return true;
+    }
+
+    /**
+     * Returns atom with the serial number or null if there is no such atom.
+     *
+     * @param key serial number.
+     *
+     * @return atom with the serial number.
+     */
+    Atom get(int key)
+    {
+	int i = slot(key);
+	for (Atom a = vals_[i];a != null;a = vals_[i]) {
+	    if (keys_[i] == key) return a;
+	    i = (i + 1) & mask_;
+	}
+	return null;
+    }
+
+    /**
+     * Returns number of atoms in the map.
+     */
+    int size() { return size_; }
+
+    // Doubles the table
+    private void rehash()
+    {
+	int[]  keys = keys_;
+	Atom[] vals = vals_;
+	keys_ = new int[2*keys.length];
+	vals_ = new Atom[2*vals.length];
+	mask_ = keys_.length - 1;
+	for (int j = 0;j < keys.length;j++) {
+	    if (vals[j] == null) continue;
+	    int i = slot(keys[j]);
+	    while (vals_[i] != null) i = (i + 1) & mask_;
+	    keys_[i] = keys[j];
+	    vals_[i] = vals[j];
+	}
+    }
+}
@@ -0,0 +1,393 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+//--- Application imports ---
+import belka.mol.*;
+
+/**
+ * Object of this class fetches structures from the PDB database by their
+ * codes and keeps them in a local directory. Structures are stored in
+ * the pre-parsed form of project-files, so repeated loads do not parse
+ * text. Files are named by the hash of the source URL and the load
+ * filter and are listed in an index file in the order of use. The least
+ * recently used files are deleted when the total size of the cache exceeds
+ * its limit. Structures which are not in the cache are fetched at the same
+ * time.
+ *
+ * @author Alexej Abyzov
+ */
+public class StructureCache
+{
+    /** Default limit for the size of the cache in bytes. */
+    public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+    // Name of the index file
+    private static final String INDEX_FILE_NAME = "index";
+
+    // Extension of cached files
+    private static final String CACHE_FILE_EXTENSION = ".bpj";
+
+    // Maximal number of structures fetched at the same time
+    private static final int MAX_FETCH_THREADS = 4;
+
+    // Entry of the index
+    private static class Entry
+    {
+	String key_  = null;
+	String name_ = null;
+	long   size_ = 0;
+
+	Entry(String key,String name,long size)
+	{
+	    key_ = key; name_ = name; size_ = size;
+	}
+    }
+
+    // Source, directory and limit
+    private String source_  = null;
+    private File   dir_     = null;
+    private long   maxSize_ = DEFAULT_MAX_SIZE;
+
+    // Entries by key in the order of use
+    private LinkedHashMap<String,Entry> index_ =
+	new LinkedHashMap<String,Entry>(16,0.75f,true);
+    private long size_ = 0;
+
+    /**
+     * Creates cache without directory. Structures are fetched from the
+     * source every time until directory is set.
+     *
+     * @param source URL of the database directory with structures divided
+     * by the middle two characters of their codes.
+     */
+    public StructureCache(String source)
+    {
+	source_ = source;
+    }
+
+    /**
+     * Sets the URL of the database. Mirrors with the same layout of
+     * directories, including local ones given by "file:" URLs, can be
+     * used.
+     *
+     * @param source URL of the database.
+     */
+    public void setSource(String source) { source_ = source; }
+
+    /**
+     * Returns the URL of the database.
+     *
+     * @return the URL of the database.
+     */
+    public String getSource() { return source_; }
+
+    /**
+     * Returns the directory of the cache, or null if structures are not
+     * cached.
+     *
+     * @return the directory of the cache.
+     */
+    public File getDirectory() { return dir_; }
+
+    /**
+     * Sets the directory of the cache and reads its index. The directory is
+     * created if it does not exist. Caching is turned off if directory is
+     * null.
+     *
+     * @param dir directory of the cache.
+     *
+     * @return 'true' if the directory can be used, 'false' otherwise.
+     */
+    public synchronized boolean setDirectory(File dir)
+    {
+	index_.clear();
+	size_ = 0;
+	dir_  = null;
+	if (dir == null) return true;
+
+	if (!dir.isDirectory() && !dir.mkdirs()) {
+	    System.err.println("Can't create directory '" + dir.getPath() +
+			       "'.");
+	    return false;
+	}
+	if (!dir.canWrite()) {
+	    System.err.println("Can't write to directory '" + dir.getPath() +
+			       "'.");
+	    return false;
+	}
+	dir_ = dir;
+	readIndex();
+	evict();
+	return true;
+    }
+
+    /**
+     * Returns the limit for the size of the cache in bytes.
+     *
+     * @return the limit for the size of the cache.
+     */
+    public long getMaxSize() { return maxSize_; }
+
+    /**
+     * Sets the limit for the size of the cache in bytes. The least recently
+     * used structures are deleted if the cache is larger.
+     *
+     * @param maxSize the limit for the size of the cache.
+     */
+    public synchronized void setMaxSize(long maxSize)
+    {
+	maxSize_ = maxSize;
+	evict();
+	writeIndex();
+    }
+
+    /**
+     * Returns URL of the file with the structure in the database.
+     *
+     * @param code PDB code of the structure.
+     *
+     * @return URL of the file.
+     */
+    public String getURL(String code)
+    {
+	return source_ + "/" + code.substring(1,3) + "/pdb" + code +
+	    ".ent.gz";
+    }
+
+    /**
+     * Loads structures with given codes. Structures found in the cache are
+     * read from it, the others are fetched from the database at the same
+     * time and put into the cache. Structures loaded with a filter are
+     * cached apart from complete ones.
+     *
+     * @param codes PDB codes of structures.
+     * @param filter filter of atoms to load, null to load all atoms.
+     *
+     * @return molecules for each code. The element is null if structure
+     * was not loaded.
+     */
+    public Molecule[][] load(String[] codes,LoadFilter filter)
+    {
+	if (filter != null && filter.isEmpty()) filter = null;
+	int n_codes = codes.length;
+	Molecule[][] ret = new Molecule[n_codes][];
+
+	// Reading cached structures
+	ArrayList<Integer> missing = new ArrayList<Integer>();
+	for (int c = 0;c < n_codes;c++) {
+	    ret[c] = readCached(getKey(getURL(codes[c]),filter));
+	    if (ret[c] == null) missing.add(c);
+	}
+
+	// Fetching the rest
+	if (missing.size() > 0) fetch(codes,filter,missing,ret);
+
+	synchronized (this) {
+	    evict();
+	    writeIndex();
+	}
+	return ret;
+    }
+
+    // Fetches missing structures at the same time
+    private void fetch(String[] codes,LoadFilter filter,
+		       ArrayList<Integer> missing,Molecule[][] ret)
+    {
+	int n_threads = Math.min(MAX_FETCH_THREADS,missing.size());
+	ExecutorService pool = Executors.newFixedThreadPool(n_threads);
+	try {
+	    ArrayList<Future<Molecule[]>> fetched =
+		new ArrayList<Future<Molecule[]>>();
+	    for (int c : missing)
+		fetched.add(pool.submit(new FetchTask(getURL(codes[c]),
+						      filter)));
+	    for (int i = 0;i < missing.size();i++) {
+		try {
+		    ret[missing.get(i)] = fetched.get(i).get();
+		} catch (Exception e) {
+		    System.err.println(e.toString());
+		}
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    // Key of a structure in the cache is the URL followed by the
+    // description of the filter
+    private String getKey(String url,LoadFilter filter)
+    {
+	if (filter == null) return url;
+	return url + "#" + filter.toString();
+    }
+
+    // Returns molecules from the cache or null if they are not there
+    private Molecule[] readCached(String key)
+    {
+	File file = null;
+	synchronized (this) {
+	    if (dir_ == null) return null;
+	    Entry entry = index_.get(key);
+	    if (entry == null) return null;
+	    file = new File(dir_,entry.name_);
+	}
+	Molecule mols = null;
+	if (file.isFile()) mols = new ProjectSerializer().loadFromFile(file);
+	if (mols == null) {
+	    synchronized (this) { remove(key); }
+	    return null;
+	}
+
+	ArrayList<Molecule> list = new ArrayList<Molecule>();
+	list.add(mols);
+	while (mols.next() != null) list.add(mols.extractAfter());
+	return list.toArray(new Molecule[list.size()]);
+    }
+
+    // Task to fetch one structure and to put it into the cache
+    private class FetchTask implements Callable<Molecule[]>
+    {
+	private String     url_    = null;
+	private LoadFilter filter_ = null;
+
+	FetchTask(String url,LoadFilter filter)
+	{
+	    url_    = url;
+	    filter_ = filter;
+	}
+
+	public Molecule[] call() throws Exception
+	{
+	    PDBParser parser = new PDBParser();
+	    parser.setLoadFilter(filter_);
+	    Molecule[] mols = parser.parseFile(new URL(url_));
+	    if (mols != null) write(getKey(url_,filter_),mols);
+	    return mols;
+	}
+    }
+
+    // Writes molecules into the cache
+    private void write(String key,Molecule[] mols)
+    {
+	File dir = null;
+	synchronized (this) { dir = dir_; }
+	if (dir == null) return;
+
+	String name = fileName(key);
+	File tmp  = new File(dir,name + ".tmp");
+	File file = new File(dir,name);
+
+	// Molecules are linked only while they are written
+	for (int i = 1;i < mols.length;i++) mols[i - 1].addAfter(mols[i]);
+	int n_saved = new ProjectSerializer().saveToFile(mols[0],tmp);
+	while (mols[0].next() != null) mols[0].extractAfter();
+
+	file.delete();
+	if (n_saved < 0 || !tmp.renameTo(file)) {
+	    tmp.delete();
+	    return;
+	}
+
+	synchronized (this) {
+	    if (dir != dir_) return;
+	    Entry old = index_.remove(key); // Same file was replaced
+	    if (old != null) size_ -= old.size_;
+	    index_.put(key,new Entry(key,name,file.length()));
+	    size_ += file.length();
+	}
+    }
+
+    // Name of the cache file is made of the code and the hash of the key
+    private String fileName(String key)
+    {
+	String base = new File(key).getName();
+	int ind = base.indexOf('.');
+	if (ind > 0) base = base.substring(0,ind);
+	StringBuilder ret = new StringBuilder(base);
+	ret.append('_');
+	try {
+	    MessageDigest md = MessageDigest.getInstance("SHA-1");
+	    byte[] hash = md.digest(key.getBytes("UTF-8"));
+	    for (int i = 0;i < 8;i++)
+		ret.append(Integer.toHexString((hash[i] & 0xff) | 0x100),1,3);
+	} catch (Exception e) {
+	    ret.append(Integer.toHexString(key.hashCode()));
+	}
+	return ret.append(CACHE_FILE_EXTENSION).toString();
+    }
+
+    // Removes entry and its file
+    private void remove(String key)
+    {
+	Entry entry = index_.remove(key);
+	if (entry == null) return;
+	size_ -= entry.size_;
+	new File(dir_,entry.name_).delete();
+    }
+
+    // Removes least recently used entries until cache fits into the limit
+    private void evict()
+    {
+	Iterator<Entry> it = index_.values().iterator();
+	while (size_ > maxSize_ && it.hasNext()) {
+	    Entry entry = it.next();
+	    it.remove();
+	    size_ -= entry.size_;
+	    new File(dir_,entry.name_).delete();
+	}
+    }
+
+    // Reads index. Each line has size, file name and key of a structure.
+    // Lines are in the order of use, the least recently used is first.
+    private void readIndex()
+    {
+	File file = new File(dir_,INDEX_FILE_NAME);
+	if (!file.isFile()) return;
+	BufferedReader in = null;
+	try {
+	    in = new BufferedReader(new FileReader(file));
+	    String line = null;
+	    while ((line = in.readLine()) != null) {
+		String[] words = line.split(" ",3);
+		if (words.length != 3) continue;
+		File f = new File(dir_,words[1]);
+		if (!f.isFile()) continue;
+		long size = f.length();
+		Entry old = index_.put(words[2],new Entry(words[2],words[1],
+							   size));
+		if (old != null) size_ -= old.size_;
+		size_ += size;
+	    }
+	} catch (Exception e) {
+	    System.err.println("Exception while reading cache index.");
+	    System.err.println(e.toString());
+	}
+	try { in.close(); } catch (Exception e) {}
+    }
+
+    // Writes index in the order of use
+    private void writeIndex()
+    {
+	if (dir_ == null) return;
+	File tmp  = new File(dir_,INDEX_FILE_NAME + ".tmp");
+	File file = new File(dir_,INDEX_FILE_NAME);
+	try {
+	    PrintWriter out = new PrintWriter(new FileWriter(tmp));
+	    for (Entry entry : index_.values())
+		out.println(entry.size_ + " " + entry.name_ + " " + entry.key_);
+	    out.close();
+	    file.delete();
+	    if (!tmp.renameTo(file))
+		System.err.println("Can't write cache index.");
+	} catch (Exception e) {
+	    System.err.println("Exception while writing cache index.");
+	    System.err.println(e.toString());
+	}
+    }
+}
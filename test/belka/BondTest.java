@@ -0,0 +1,71 @@
+package belka;
+
+//--- Java imports ---
+import java.io.*;
+import java.util.*;
+
+//--- Application imports ---
+import belka.mol.*;
+import belka.parser.*;
+
+/**
+ * Regression test for creating covalent bonds between atoms.
+ *
+ * Usage: java belka.BondTest data_dir
+ *
+ * @author Alexej Abyzov
+ */
+public class BondTest
+{
+    public static void main(String[] args) throws Exception
+    {
+	File dir = new File(args.length > 0 ? args[0] : "test/data");
+
+	// Cyclic tetrapeptide of alanines: 4 bonds in each residue and
+	// 4 peptide bonds including the one closing the cycle
+	Set<String> bonds = connect(new File(dir,"cyclic.pdb"));
+	Check.equal(20,bonds.size(),"bonds in cyclic peptide");
+	Check.isTrue(bonds.contains("A1N-A4C"),"bond closing the cycle");
+
+	// Two chains of ALA-CYS-ALA linked by a disulfide bond
+	bonds = connect(new File(dir,"disulfide.pdb"));
+	Check.equal(31,bonds.size(),"bonds in peptides with disulfide");
+	Check.isTrue(bonds.contains("A2SG-B2SG"),"disulfide bond");
+
+	Check.exit("BondTest");
+    }
+
+    // Connects atoms of the molecule in the file and returns its bonds.
+    // A bond is written as two atoms ordered by name, and an atom is
+    // written as chain id, residue number and atom name.
+    private static Set<String> connect(File file)
+    {
+	Molecule[] mols = new PDBParser().parseFile(file);
+	Set<String> ret = new TreeSet<String>();
+	if (!Check.isTrue(mols != null && mols.length == 1,
+			  "parsing of " + file.getName()))
+	    return ret;
+	BelkaUtil.connect(mols[0]);
+	for (Chain c = mols[0].chainList();c != null;c = c.next())
+	    for (Assembly s = c.assemblyList();s != null;s = s.next())
+		for (Atom a = s.atomList();a != null;a = a.next()) {
+		    Bond[] bonds = a.bondArray();
+		    if (bonds == null) continue;
+		    for (int i = 0;i < bonds.length;i++) {
+			if (bonds[i] == null) continue;
+			String n1 = name(bonds[i].getFAtom());
+			String n2 = name(bonds[i].getSAtom());
+			if (n1.compareTo(n2) < 0) ret.add(n1 + "-" + n2);
+			else                      ret.add(n2 + "-" + n1);
+		    }
+		}
+	return ret;
+    }
+
+    // Returns name of atom
+    private static String name(Atom atom)
+    {
+	Assembly s = atom.assembly();
+	return "" + s.chain().getId() + s.getSerialNum() + atom.getName();
+    }
+}
@@ -0,0 +1,88 @@
+package belka;
+
+/**
+ * The class contains functions to check results in regression tests.
+ * Failed checks are printed to standard error stream, and {@link #exit}
+ * ends the test with non-zero status if any check failed.
+ *
+ * @author Alexej Abyzov
+ */
+public class Check
+{
+    // Number of done and failed checks
+    private static int n_checks_ = 0, n_failed_ = 0;
+
+    /**
+     * Checks that the value is true.
+     *
+     * @param val value to check.
+     * @param what description of the check.
+     *
+     * @return the value.
+     */
+    public static boolean isTrue(boolean val,String what)
+    {
+	n_checks_++;
+	if (!val) {
+	    n_failed_++;
+	    System.err.println("FAILED: " + what);
+	}
+	return val;
+    }
+
+    /**
+     * Checks that two numbers are equal.
+     *
+     * @param expected expected number.
+     * @param actual actual number.
+     * @param what description of the check.
+     *
+     * @return 'true' if numbers are equal.
+     */
+    public static boolean equal(long expected,long actual,String what)
+    {
+	return isTrue(expected == actual,
+		      what + ": expected " + expected + ", got " + actual);
+    }
+
+    /**
+     * Checks that two strings are equal. The first different line is
+     * printed if they are not.
+     *
+     * @param expected expected string.
+     * @param actual actual string.
+     * @param what description of the check.
+     *
+     * @return 'true' if strings are equal.
+     */
+    public static boolean equal(String expected,String actual,String what)
+    {
+	if (expected != null && expected.equals(actual))
+	    return isTrue(true,what);
+	if (expected == null || actual == null)
+	    return isTrue(false,what + ": expected " + expected + ", got " +
+			  actual);
+	String[] exp = expected.split("\n",-1);
+	String[] act = actual.split("\n",-1);
+	int line = 0;
+	while (line < exp.length && line < act.length &&
+	       exp[line].equals(act[line])) line++;
+	String expLine = (line < exp.length) ? exp[line] : "<end>";
+	String actLine = (line < act.length) ? act[line] : "<end>";
+	return isTrue(false,what + ": line " + (line + 1) + "\n  expected: " +
+		      expLine + "\n  got:      " + actLine);
+    }
+
+    /**
+     * Prints number of checks and exits. Exit status is 1 if any check
+     * failed.
+     *
+     * @param test name of the test.
+     */
+    public static void exit(String test)
+    {
+	System.out.println(test + ": " + n_checks_ + " checks, " +
+			   n_failed_ + " failed.");
+	System.exit(n_failed_ > 0 ? 1 : 0);
+    }
+}
@@ -0,0 +1,147 @@
+package belka;
+
+//--- Java imports ---
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+
+//--- Application imports ---
+import belka.mol.*;
+import belka.parser.*;
+
+/**
+ * Regression test for selection commands. Numbers of selected atoms are
+ * compared with numbers found by checking every atom of the molecule.
+ *
+ * Usage: java belka.SelectionTest data_dir
+ *
+ * @author Alexej Abyzov
+ */
+public class SelectionTest
+{
+    // Atoms of the molecule and numbers of their residues
+    private static Atom[] atoms_   = null;
+    private static int[]  resNums_ = null;
+
+    // Manager running commands
+    private static BelkaManager manager_ = null;
+
+    // Message about number of selected atoms
+    private static final Pattern SELECTED =
+	Pattern.compile("(\\d+) atoms? selected\\.");
+
+    public static void main(String[] args) throws Exception
+    {
+	File dir  = new File(args.length > 0 ? args[0] : "test/data");
+	File file = new File(dir,"peptides.pdb");
+	readAtoms(file);
+	manager_ = new BelkaManager(null,null);
+	run("load " + file.getPath());
+
+	boolean[] all = range(Integer.MIN_VALUE,Integer.MAX_VALUE);
+	check("all",all);
+	check("5",range(5,5));
+	check("not 5",not(range(5,5)));
+	check("not 999",all);
+	check("2-4",range(2,4));
+	check("4-2",range(2,4));
+	check("not 2-4",not(range(2,4)));
+	check("2-4 or 7",or(range(2,4),range(7,7)));
+	check("not 2-4 and not 10",and(not(range(2,4)),not(range(10,10))));
+	check("not 5 or 5",all);
+	check("not 5 and 5",not(all));
+
+	check("within 3.0 of 5",within(3.0,range(5,5)));
+	check("within 0 of 5",range(5,5));
+	check("within 5 of 201",within(5,range(201,201)));
+	check("within 4.5 of 301-306",within(4.5,range(301,306)));
+	check("not within 4 of 5",not(within(4,range(5,5))));
+	check("within 4 of not 2-8",within(4,not(range(2,8))));
+	check("within 4 of 2-4 and not 2-4",
+	      and(within(4,range(2,4)),not(range(2,4))));
+	check("within 100 of 999",not(all));
+
+	Check.exit("SelectionTest");
+    }
+
+    // Checks number of atoms selected by the expression
+    private static void check(String expr,boolean[] expected)
+    {
+	String mess = run("select " + expr);
+	Matcher m = SELECTED.matcher(mess);
+	int n = 0;
+	for (int i = 0;i < expected.length;i++) if (expected[i]) n++;
+	if (Check.isTrue(m.find(),"select " + expr + ": " + mess.trim()))
+	    Check.equal(n,Integer.parseInt(m.group(1)),"select " + expr);
+    }
+
+    // Runs script without printing its messages
+    private static String run(String script)
+    {
+	PrintStream out = System.out;
+	System.setOut(new PrintStream(new ByteArrayOutputStream()));
+	try {
+	    return manager_.runScript(script);
+	} finally {
+	    System.setOut(out);
+	}
+    }
+
+    // Reads atoms of the molecule
+    private static void readAtoms(File file)
+    {
+	Molecule[] mols = new PDBParser().parseFile(file);
+	ArrayList<Atom>    atoms = new ArrayList<Atom>();
+	ArrayList<Integer> nums  = new ArrayList<Integer>();
+	for (Chain c = mols[0].chainList();c != null;c = c.next())
+	    for (Assembly s = c.assemblyList();s != null;s = s.next())
+		for (Atom a = s.atomList();a != null;a = a.next()) {
+		    atoms.add(a);
+		    nums.add(s.getSerialNum());
+		}
+	atoms_   = atoms.toArray(new Atom[atoms.size()]);
+	resNums_ = new int[nums.size()];
+	for (int i = 0;i < resNums_.length;i++) resNums_[i] = nums.get(i);
+    }
+
+    // Returns atoms of residues with numbers from 'start' to 'end'
+    private static boolean[] range(int start,int end)
+    {
+	boolean[] ret = new boolean[atoms_.length];
+	for (int i = 0;i < ret.length;i++)
+	    ret[i] = resNums_[i] >= start && resNums_[i] <= end;
+	return ret;
+    }
+
+    // Returns atoms within the radius of atoms in the set
+    private static boolean[] within(double radius,boolean[] a)
+    {
+	boolean[] ret = new boolean[a.length];
+	double r2 = radius*radius;
+	for (int i = 0;i < ret.length;i++)
+	    for (int j = 0;j < a.length && !ret[i];j++)
+		ret[i] = a[j] && atoms_[i].distance2To(atoms_[j]) <= r2;
+	return ret;
+    }
+
+    private static boolean[] not(boolean[] a)
+    {
+	boolean[] ret = new boolean[a.length];
+	for (int i = 0;i < ret.length;i++) ret[i] = !a[i];
+	return ret;
+    }
+
+    private static boolean[] and(boolean[] a,boolean[] b)
+    {
+	boolean[] ret = new boolean[a.length];
+	for (int i = 0;i < ret.length;i++) ret[i] = a[i] && b[i];
+	return ret;
+    }
+
+    private static boolean[] or(boolean[] a,boolean[] b)
+    {
+	boolean[] ret = new boolean[a.length];
+	for (int i = 0;i < ret.length;i++) ret[i] = a[i] || b[i];
+	return ret;
+    }
+}
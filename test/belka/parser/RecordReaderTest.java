@@ -0,0 +1,121 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+//--- Application imports ---
+import belka.*;
+
+/**
+ * Regression test for decoding numbers by RecordReader. Decoded numbers
+ * must be the same as given by Integer.parseInt() and Double.parseDouble().
+ *
+ * Usage: java belka.parser.RecordReaderTest
+ *
+ * @author Alexej Abyzov
+ */
+public class RecordReaderTest
+{
+    // Real numbers to decode in 8 columns
+    private static final String[] DOUBLES = {
+	"0.000", "-0.000", "-0.0", "0", "-0", "+1.5", "   1.5  ", "1.",
+	".5", "-.5", "0.125", "-0.125", "2.675", "0.1", "0.3", "-12.345",
+	"999.999", "1000000", "1234567.", "1e6", "1.5E+03", "-2.5e-3",
+	"12345678", "1.234567"
+    };
+
+    // Real numbers with more digits than fit into double mantissa exactly
+    private static final String[] LONG_DOUBLES = {
+	"0.1234567890123456789", "12345678901234567890",
+	"9007199254740993", "-9007199254740993.5", "1234567.891011121314"
+    };
+
+    // Fields which are not numbers
+    private static final String[] NOT_NUMBERS = {
+	"", "     ", "-", "+", ".", "1.2.3", "1-2", "abc", "1,5", "--1"
+    };
+
+    // Integers to decode in 6 columns
+    private static final String[] INTS = {
+	"0", "-0", "+7", "  42  ", "-99999", "999999", "100000"
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+	for (int i = 0;i < DOUBLES.length;i++)
+	    checkDouble(DOUBLES[i],8);
+	for (int i = 0;i < LONG_DOUBLES.length;i++)
+	    checkDouble(LONG_DOUBLES[i],LONG_DOUBLES[i].length());
+	for (int i = 0;i < NOT_NUMBERS.length;i++) {
+	    RecordReader rr = reader(pad(NOT_NUMBERS[i],8));
+	    Check.isTrue(Double.isNaN(rr.doubleField(0,8)),
+			 "'" + NOT_NUMBERS[i] + "' is not a real number");
+	    Check.equal(RecordReader.NO_INT,rr.intField(0,8),
+			"'" + NOT_NUMBERS[i] + "' is not an integer");
+	}
+
+	// Coordinates as written in PDB-files
+	Random rand = new Random(1);
+	for (int i = 0;i < 100000;i++) {
+	    double val = (rand.nextInt(2000000) - 1000000)/1000.;
+	    checkDouble(String.format(Locale.US,"%8.3f",val),8);
+	}
+
+	for (int i = 0;i < INTS.length;i++) {
+	    RecordReader rr = reader(pad(INTS[i],6));
+	    Check.equal(Integer.parseInt(INTS[i].trim().replace("+","")),
+			rr.intField(0,6),"integer '" + INTS[i] + "'");
+	}
+	Check.equal(RecordReader.NO_INT,reader("99999999999").intField(0,11),
+		    "integer overflow");
+
+	// Fields beyond the end of line
+	RecordReader rr = reader("ATOM  1.5");
+	Check.isTrue(Double.isNaN(rr.doubleField(6,12)),"real beyond line");
+	Check.equal(RecordReader.NO_INT,rr.intField(6,12),
+		    "integer beyond line");
+
+	// Line terminators
+	byte[] text = "a\r\nb\rc\n\nd".getBytes();
+	rr = new RecordReader(new ByteArrayInputStream(text));
+	String lines = "";
+	while (rr.next()) lines += "[" + rr + "]";
+	Check.equal("[a][b][c][][d]",lines,"line terminators");
+
+	Check.exit("RecordReaderTest");
+    }
+
+    // Checks decoding of real number in the field of given width
+    private static void checkDouble(String str,int width) throws IOException
+    {
+	double expected = Double.parseDouble(str.trim());
+	double actual   = reader(pad(str,width)).doubleField(0,width);
+	Check.equal(Double.doubleToRawLongBits(expected),
+		    Double.doubleToRawLongBits(actual),"real '" + str + "'");
+    }
+
+    // Returns string padded by spaces from the left to given width
+    private static String pad(String str,int width)
+    {
+	while (str.length() < width) str = " " + str;
+	return str;
+    }
+
+    // Returns reader for the text from both stream and buffer, positioned
+    // at the first line. Both must give the same line.
+    private static RecordReader reader(String text) throws IOException
+    {
+	byte[] bytes = text.getBytes("ISO-8859-1");
+	RecordReader fromStream =
+	    new RecordReader(new ByteArrayInputStream(bytes));
+	RecordReader fromBuffer =
+	    new RecordReader(ByteBuffer.wrap(bytes),0,bytes.length);
+	fromStream.next();
+	fromBuffer.next();
+	Check.equal(fromStream.toString(),fromBuffer.toString(),
+		    "line of '" + text + "'");
+	return fromStream;
+    }
+}
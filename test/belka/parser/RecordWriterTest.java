@@ -0,0 +1,129 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.nio.channels.*;
+import java.util.*;
+
+//--- Application imports ---
+import belka.*;
+
+/**
+ * Regression test for formatting numbers by RecordWriter. Formatted
+ * numbers must be the same as given by String.format().
+ *
+ * Usage: java belka.parser.RecordWriterTest
+ *
+ * @author Alexej Abyzov
+ */
+public class RecordWriterTest
+{
+    // Real numbers to format
+    private static final double[] DOUBLES = {
+	0, -0., -0.0001, -0.0005, 0.0005, 0.125, -0.125, 0.375, 2.675,
+	1.005, 1.0005, 0.5, -0.5, 1.5, 2.5, 0.05, 0.15, 0.25, 0.35,
+	999.9995, 99999.9995, 999999.9994, 999999.9996, 1e6, -1e6,
+	1000000.0005, 1234567.891, -98765432.1, 1e20,
+	Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+	Double.MIN_VALUE, -Double.MIN_VALUE
+    };
+
+    // Integers to format
+    private static final int[] INTS = {
+	0, 1, -1, 99999, 100000, -99999, -100000,
+	Integer.MAX_VALUE, Integer.MIN_VALUE
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+	int[][] formats = { {8,3}, {6,2}, {6,0}, {10,5}, {3,6}, {12,7} };
+	for (int f = 0;f < formats.length;f++)
+	    for (int i = 0;i < DOUBLES.length;i++)
+		checkFixed(DOUBLES[i],formats[f][0],formats[f][1]);
+
+	// Coordinates, occupancies and temperature factors
+	Random rand = new Random(1);
+	for (int i = 0;i < 100000;i++) {
+	    checkFixed((rand.nextDouble() - 0.5)*2000,8,3);
+	    checkFixed((rand.nextInt(2000001) - 1000000)/1000.,8,3);
+	    checkFixed((rand.nextInt(20001) - 10000)/2000.,6,2);
+	    checkFixed(rand.nextInt(20001)/200.,6,2);
+	}
+
+	for (int w = 1;w < 12;w += 5)
+	    for (int i = 0;i < INTS.length;i++)
+		check(String.format(Locale.US,"%" + w + "d",INTS[i]),
+		      new IntFormat(INTS[i],w));
+
+	// Buffer is flushed when full
+	final int n = 20000;
+	StringBuffer expected = new StringBuffer();
+	for (int i = 0;i < n;i++)
+	    expected.append(String.format(Locale.US,"ATOM  %5d",i))
+		.append(System.getProperty("line.separator"));
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	RecordWriter rw = new RecordWriter(Channels.newChannel(out));
+	for (int i = 0;i < n;i++) {
+	    rw.append("ATOM  ");
+	    rw.appendInt(i,5);
+	    rw.newLine();
+	}
+	rw.flush();
+	Check.equal(expected.toString(),out.toString("ISO-8859-1"),
+		    "long output");
+
+	Check.exit("RecordWriterTest");
+    }
+
+    // Appends a value to a writer
+    private interface Format
+    {
+	void write(RecordWriter rw) throws IOException;
+    }
+
+    // Appends real number
+    private static class FixedFormat implements Format
+    {
+	double val_;
+	int width_, prec_;
+	FixedFormat(double val,int width,int prec)
+	{
+	    val_ = val; width_ = width; prec_ = prec;
+	}
+	public void write(RecordWriter rw) throws IOException
+	{
+	    rw.appendFixed(val_,width_,prec_);
+	}
+    }
+
+    // Appends integer
+    private static class IntFormat implements Format
+    {
+	int val_, width_;
+	IntFormat(int val,int width) { val_ = val; width_ = width; }
+	public void write(RecordWriter rw) throws IOException
+	{
+	    rw.appendInt(val_,width_);
+	}
+    }
+
+    // Checks formatting of real number
+    private static void checkFixed(double val,int width,int prec)
+	throws IOException
+    {
+	check(String.format(Locale.US,"%" + width + "." + prec + "f",val),
+	      new FixedFormat(val,width,prec));
+    }
+
+    // Checks that writer gives expected text
+    private static void check(String expected,Format format)
+	throws IOException
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	RecordWriter rw = new RecordWriter(Channels.newChannel(out));
+	format.write(rw);
+	rw.flush();
+	Check.equal(expected,out.toString("ISO-8859-1"),
+		    "formatting '" + expected + "'");
+    }
+}
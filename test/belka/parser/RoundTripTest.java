@@ -0,0 +1,132 @@
+package belka.parser;
+
+//--- Java imports ---
+import java.io.*;
+import java.net.*;
+import java.util.zip.*;
+
+//--- Application imports ---
+import belka.*;
+import belka.mol.*;
+
+/**
+ * Regression test for parsing and saving PDB-files. Results are compared
+ * with output made by the version before parsing was optimized.
+ *
+ * Usage: java belka.parser.RoundTripTest data_dir
+ *
+ * @author Alexej Abyzov
+ */
+public class RoundTripTest
+{
+    // Copies of models in generated file. Makes it large enough to be
+    // parsed through memory mapping.
+    private static final int N_COPIES = 200;
+
+    // CRC of printed generated file as made by the original parser
+    private static final long BIG_CRC = 2667537428L;
+
+    public static void main(String[] args) throws Exception
+    {
+	File dir  = new File(args.length > 0 ? args[0] : "test/data");
+	File file = new File(dir,"peptides.pdb");
+	String expected = read(new File(dir,"peptides.print"));
+
+	PDBParser parser = new PDBParser();
+	String printed = printAll(parser,parser.parseFile(file));
+	Check.equal(expected,printed,"print after parsing file");
+
+	URL url = file.toURI().toURL();
+	Check.equal(expected,printAll(parser,parser.parseFile(url)),
+		    "print after parsing URL");
+
+	// Save, parse saved file and print again
+	File saved = File.createTempFile("belka_test",".pdb");
+	saved.deleteOnExit();
+	Molecule[] mols = parser.parseFile(file);
+	Check.equal(1,mols.length,"number of molecules");
+	Check.equal(file.getName(),mols[0].getName(),"name of molecule");
+	Check.isTrue(parser.saveToFile(mols[0],saved,null) >= 0,"saving");
+	Check.equal(expected,printAll(parser,parser.parseFile(saved)),
+		    "print after saving");
+
+	// Large file is parsed in chunks through memory mapping
+	File big = File.createTempFile("belka_test_big",".pdb");
+	big.deleteOnExit();
+	makeBig(file,big);
+	Check.isTrue(big.length() >= 4 << 20,"size of generated file");
+	String bigFile = printAll(parser,parser.parseFile(big));
+	URL bigURL = big.toURI().toURL();
+	Check.equal(printAll(parser,parser.parseFile(bigURL)),bigFile,
+		    "chunked versus streamed parsing");
+	CRC32 crc = new CRC32();
+	crc.update(bigFile.getBytes());
+	Check.equal(BIG_CRC,crc.getValue(),"CRC of printed large file");
+
+	Check.exit("RoundTripTest");
+    }
+
+    // Prints all molecules in array. Names of molecules are not printed.
+    private static String printAll(Parser parser,Molecule[] mols)
+    {
+	StringBuffer ret = new StringBuffer();
+	if (mols == null) return null;
+	for (int i = 0;i < mols.length;i++) {
+	    ret.append(parser.print(mols[i],null));
+	}
+	return ret.toString();
+    }
+
+    // Reads file into string
+    private static String read(File file) throws IOException
+    {
+	StringBuffer ret = new StringBuffer();
+	BufferedReader in = new BufferedReader(new FileReader(file));
+	try {
+	    String line;
+	    while ((line = in.readLine()) != null)
+		ret.append(line).append("\n");
+	} finally {
+	    in.close();
+	}
+	return ret.toString();
+    }
+
+    // Writes file with models from the source file copied many times.
+    // Lines outside of models are dropped.
+    private static void makeBig(File src,File dest) throws IOException
+    {
+	StringBuffer models = new StringBuffer();
+	BufferedReader in = new BufferedReader(new FileReader(src));
+	try {
+	    String line;
+	    boolean inModel = false;
+	    while ((line = in.readLine()) != null) {
+		if (line.startsWith("MODEL")) inModel = true;
+		else if (line.startsWith("ENDMDL")) inModel = false;
+		else if (inModel) models.append(line).append("\n");
+		else continue;
+		if (!inModel) models.append("ENDMDL\n");
+	    }
+	} finally {
+	    in.close();
+	}
+
+	// Each copy of models is numbered as next model
+	String[] blocks = models.toString().split("ENDMDL\n");
+	PrintWriter out =
+	    new PrintWriter(new BufferedWriter(new FileWriter(dest)));
+	try {
+	    int model = 1;
+	    for (int c = 0;c < N_COPIES;c++)
+		for (int b = 0;b < blocks.length;b++) {
+		    out.printf("MODEL     %4d\n",model++);
+		    out.print(blocks[b]);
+		    out.print("ENDMDL\n");
+		}
+	    out.print("END\n");
+	} finally {
+	    out.close();
+	}
+    }
+}